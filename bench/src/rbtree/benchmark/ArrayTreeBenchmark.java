@@ -0,0 +1,105 @@
+package rbtree.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rbtree.ArrayRBTree;
+import rbtree.RBNode;
+import rbtree.RBTree;
+
+/**
+ * ArrayRBTree against the node-per-object RBTree over the same keys. Run with
+ * -prof gc, and compare the heap after setUp, to see the difference in
+ * footprint as well as speed.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class ArrayTreeBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    RBTree<Integer, Integer> nodes;
+    ArrayRBTree<Integer, Integer> arrays;
+    Integer[] present;
+    Integer[] absent;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        nodes = new RBTree<Integer, Integer>();
+        arrays = new ArrayRBTree<Integer, Integer>(size);
+        for (Integer key : TreeFixture.insertionKeys(size, distribution)) {
+            nodes.insertNode(key, key);
+            arrays.insertNode(key, key);
+        }
+        present = TreeFixture.presentKeys(size, distribution);
+        absent = TreeFixture.absentKeys(size, distribution);
+    }
+
+    private int nextIndex() {
+        return next++ & TreeFixture.STREAM_MASK;
+    }
+
+    @Benchmark
+    public RBNode<Integer, Integer> nodeSearch() {
+        return nodes.search(present[this.nextIndex()]);
+    }
+
+    @Benchmark
+    public int arraySearch() {
+        return arrays.search(present[this.nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean nodeInsertThenDelete() {
+        Integer key = absent[this.nextIndex()];
+        nodes.insertNode(key, key);
+        return nodes.deleteNode(key);
+    }
+
+    @Benchmark
+    public boolean arrayInsertThenDelete() {
+        Integer key = absent[this.nextIndex()];
+        arrays.insertNode(key, key);
+        return arrays.deleteNode(key);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public long nodeScan() {
+        long sum = 0;
+        for (RBNode<Integer, Integer> node = nodes.select(0);
+                node != null; node = nodes.successor(node)) {
+            sum += node.getValue();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public long arrayScan() {
+        long sum = 0;
+        for (int slot = arrays.first(); slot != ArrayRBTree.NIL; slot = arrays.successor(slot)) {
+            sum += arrays.valueAt(slot);
+        }
+        return sum;
+    }
+}
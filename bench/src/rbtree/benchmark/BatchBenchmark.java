@@ -0,0 +1,87 @@
+package rbtree.benchmark;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rbtree.RBTree;
+
+/**
+ * Inserting and then deleting a sorted batch of absent keys, one key at a
+ * time or through insertAll and deleteAll. Each invocation leaves the tree as
+ * it found it, so the scores are per batch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class BatchBenchmark {
+
+    @Param({"1000000", "10000000"})
+    int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    @Param({"100", "10000", "50000"})
+    int batchSize;
+
+    RBTree<Integer, Integer> tree;
+    List<Map.Entry<Integer, Integer>> batch;
+    List<Integer> batchKeys;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tree = TreeFixture.build(size, distribution);
+        //a sorted run of the absent keys, drawn from the same distribution
+        Integer[] absent = TreeFixture.absentKeys(size, distribution);
+        Integer[] keys = Arrays.copyOf(absent, Math.min(batchSize, absent.length));
+        Arrays.sort(keys);
+        batch = new ArrayList<Map.Entry<Integer, Integer>>(keys.length);
+        batchKeys = new ArrayList<Integer>(keys.length);
+        Integer previous = null;
+        for (Integer key : keys) {
+            if (!key.equals(previous)) {
+                batch.add(new AbstractMap.SimpleImmutableEntry<Integer, Integer>(key, key));
+                batchKeys.add(key);
+            }
+            previous = key;
+        }
+    }
+
+    @Benchmark
+    public int oneAtATime() {
+        for (Map.Entry<Integer, Integer> entry : batch) {
+            tree.insertNode(entry.getKey(), entry.getValue());
+        }
+        int deleted = 0;
+        for (Integer key : batchKeys) {
+            if (tree.deleteNode(key)) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    @Benchmark
+    public int batched() {
+        tree.insertAll(batch.iterator());
+        return tree.deleteAll(batchKeys.iterator());
+    }
+}
@@ -0,0 +1,86 @@
+package rbtree.benchmark;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rbtree.RBTree;
+
+/**
+ * Filling an empty tree with insertNode or the bulk builders, and draining a
+ * full one with deleteNode, one key at a time. Each invocation touches every
+ * key, so the scores are per tree, not per key.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class BuildBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    Integer[] keys;
+    List<Map.Entry<Integer, Integer>> sorted;
+    RBTree<Integer, Integer> full;
+
+    @Setup(Level.Trial)
+    public void setUpKeys() {
+        keys = TreeFixture.insertionKeys(size, distribution);
+        sorted = new ArrayList<Map.Entry<Integer, Integer>>(size);
+        for (int i = 0; i < size; i++) {
+            Integer key = i * 2;
+            sorted.add(new AbstractMap.SimpleImmutableEntry<Integer, Integer>(key, key));
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpTree() {
+        full = TreeFixture.build(size, distribution);
+    }
+
+    @Benchmark
+    public RBTree<Integer, Integer> insertAll() {
+        RBTree<Integer, Integer> tree = new RBTree<Integer, Integer>();
+        for (Integer key : keys) {
+            tree.insertNode(key, key);
+        }
+        return tree;
+    }
+
+    @Benchmark
+    public RBTree<Integer, Integer> fromSorted() {
+        return RBTree.fromSorted(sorted.iterator(), size);
+    }
+
+    @Benchmark
+    public RBTree<Integer, Integer> fromUnsorted() {
+        return RBTree.fromUnsorted(keys, keys);
+    }
+
+    @Benchmark
+    public RBTree<Integer, Integer> deleteAll() {
+        for (Integer key : keys) {
+            full.deleteNode(key);
+        }
+        return full;
+    }
+}
@@ -0,0 +1,76 @@
+package rbtree.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rbtree.CacheStore;
+import rbtree.RBNode;
+import rbtree.RBTree;
+import rbtree.RBTreeCache;
+
+/**
+ * Zipfian gets through an RBTreeCache holding a small part of a larger store,
+ * under each eviction policy. The store is an RBTree in memory, so a miss
+ * costs a second lookup and the cost of replacing an entry, not a disk read.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class CacheBenchmark {
+
+    @Param({"1000000"})
+    int size;
+
+    @Param({"1000", "10000"})
+    int capacity;
+
+    @Param({"LRU", "LFU"})
+    RBTreeCache.Eviction eviction;
+
+    RBTreeCache<Integer, Integer> cache;
+    Integer[] keys;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final RBTree<Integer, Integer> backing = TreeFixture.build(size, KeyDistribution.RANDOM);
+        CacheStore<Integer, Integer> store = new CacheStore<Integer, Integer>() {
+            @Override
+            public Integer load(Integer key) {
+                RBNode<Integer, Integer> node = backing.search(key);
+                return node == null ? null : node.getValue();
+            }
+
+            @Override
+            public void writeAll(List<Map.Entry<Integer, Integer>> entries) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        cache = new RBTreeCache<Integer, Integer>(capacity, eviction, store);
+        keys = TreeFixture.presentKeys(size, KeyDistribution.ZIPFIAN);
+        for (Integer key : keys) {
+            cache.get(key);
+        }
+    }
+
+    @Benchmark
+    public Integer get() throws IOException {
+        return cache.get(keys[next++ & TreeFixture.STREAM_MASK]);
+    }
+}
@@ -0,0 +1,93 @@
+package rbtree.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rbtree.ConcurrentRBTree;
+import rbtree.RBNode;
+import rbtree.RBTree;
+
+/**
+ * Readers and one writer sharing a tree, at a read:write ratio of about 50:1,
+ * through ConcurrentRBTree or through an RBTree behind one global lock.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Group)
+public class ConcurrentBenchmark {
+
+    @Param({"100000", "10000000"})
+    int size;
+
+    @Param({"RANDOM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    @Param({"ConcurrentRBTree", "synchronized"})
+    String implementation;
+
+    ConcurrentRBTree<Integer, Integer> concurrent;
+    RBTree<Integer, Integer> locked;
+    Integer[] present;
+    Integer[] absent;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RBTree<Integer, Integer> tree = TreeFixture.build(size, distribution);
+        if ("synchronized".equals(implementation)) {
+            locked = tree;
+        } else {
+            concurrent = new ConcurrentRBTree<Integer, Integer>(tree);
+        }
+        present = TreeFixture.presentKeys(size, distribution);
+        absent = TreeFixture.absentKeys(size, distribution);
+    }
+
+    private static int nextIndex() {
+        return ThreadLocalRandom.current().nextInt() & TreeFixture.STREAM_MASK;
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(50)
+    public Integer read() {
+        Integer key = present[nextIndex()];
+        if (concurrent != null) {
+            return concurrent.get(key);
+        }
+        synchronized (locked) {
+            RBNode<Integer, Integer> node = locked.search(key);
+            return node == null ? null : node.getValue();
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public boolean write() {
+        Integer key = absent[nextIndex()];
+        if (concurrent != null) {
+            concurrent.insertNode(key, key);
+            return concurrent.deleteNode(key);
+        }
+        synchronized (locked) {
+            locked.insertNode(key, key);
+            return locked.deleteNode(key);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package rbtree.benchmark;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import rbtree.InorderTreeIterator;
+import rbtree.RBNode;
+import rbtree.RBTree;
+import rbtree.RangeTreeIterator;
+import rbtree.ThreadedInorderTreeIterator;
+
+/**
+ * A seeded random run of tree operations, applied in lockstep to an RBTree
+ * and to a java.util.TreeMap and checked against it after every step, with
+ * RBTree.verify and a full in order traversal at regular intervals. A run
+ * with the same arguments always performs the same operations, so a failure
+ * is reproduced by its seed. The whole run is timed, so the same run before
+ * and after a change to the tree shows both that the change is still correct
+ * and how much faster it is.
+ * <p>
+ * Not a JMH benchmark; run it with the stress target of bench/build.xml or
+ * directly, with the arguments [operations [key range [seed [node pool capacity]]]].
+ */
+public final class DifferentialStress {
+
+    /**
+     * The longest run a range iteration or a batch covers.
+     */
+    private static final int RUN_LENGTH = 64;
+
+    //replaced by the joined tree after every split and join
+    private RBTree<Integer, Integer> tree = new RBTree<Integer, Integer>();
+    private final TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+    private final Random random;
+    private final int keyRange;
+    private long operation;
+
+    private DifferentialStress(long seed, int keyRange, int poolCapacity) {
+        this.random = new Random(seed);
+        this.keyRange = keyRange;
+        tree.setNodePoolCapacity(poolCapacity);
+    }
+
+    public static void main(String[] args) {
+        long operations = args.length > 0 ? Long.parseLong(args[0]) : 10000000L;
+        int keyRange = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+        int poolCapacity = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+        //check the whole tree about a hundred times a run, but not more often than every 10000 steps
+        long verifyEvery = Math.max(operations / 100, 10000);
+
+        DifferentialStress stress = new DifferentialStress(seed, keyRange, poolCapacity);
+        long start = System.nanoTime();
+        try {
+            for (stress.operation = 1; stress.operation <= operations; stress.operation++) {
+                stress.step();
+                if (stress.operation % verifyEvery == 0) {
+                    stress.checkAll();
+                }
+            }
+            stress.checkAll();
+        } catch (RuntimeException e) {
+            System.err.println("Failed at operation " + stress.operation + " of seed " + seed
+                    + ", key range " + keyRange);
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%d operations on keys below %d, seed %d: %.3f s, %.0f operations/s, %d nodes at the end%n",
+                operations, keyRange, seed, elapsed / 1e9, operations / (elapsed / 1e9), stress.tree.size());
+    }
+
+    /**
+     * Performs one random operation on both maps and compares the results.
+     */
+    private void step() {
+        Integer key = random.nextInt(keyRange);
+        int choice = random.nextInt(100);
+        if (choice < 25) {
+            boolean inserted = tree.insertNode(key, key);
+            check(inserted == !expected.containsKey(key), "insertNode", key);
+            if (inserted) {
+                expected.put(key, key);
+            }
+        } else if (choice < 35) {
+            Integer value = random.nextInt();
+            check(equal(tree.put(key, value), expected.put(key, value)), "put", key);
+        } else if (choice < 55) {
+            check(tree.deleteNode(key) == (expected.remove(key) != null), "deleteNode", key);
+        } else if (choice < 75) {
+            RBNode<Integer, Integer> node = tree.search(key);
+            check(equal(node == null ? null : node.getValue(), expected.get(key)), "search", key);
+        } else if (choice < 85) {
+            check(equal(keyOf(tree.floor(key)), expected.floorKey(key)), "floor", key);
+            check(equal(keyOf(tree.ceiling(key)), expected.ceilingKey(key)), "ceiling", key);
+            check(equal(keyOf(tree.lower(key)), expected.lowerKey(key)), "lower", key);
+            check(equal(keyOf(tree.higher(key)), expected.higherKey(key)), "higher", key);
+        } else if (choice < 89) {
+            //the size of a TreeMap view is counted node by node, so check rank by its neighbours
+            int rank = tree.rank(key);
+            check(equal(rank == 0 ? null : tree.select(rank - 1).getKey(), expected.lowerKey(key)), "rank", key);
+            check(equal(rank == tree.size() ? null : tree.select(rank).getKey(), expected.ceilingKey(key)), "rank", key);
+        } else if (choice < 92) {
+            //a short range, through a view of the tree
+            Integer hi = key + random.nextInt(RUN_LENGTH);
+            RangeTreeIterator<Integer, Integer> range = tree.subMap(key, hi).inorderTraverse();
+            for (Map.Entry<Integer, Integer> entry : expected.subMap(key, hi).entrySet()) {
+                check(range.hasMore(), "subMap iterator ended early", key);
+                checkEntry(range.next(), entry, "subMap iterator");
+            }
+            check(!range.hasMore(), "subMap iterator ran past", key);
+        } else if (choice < 95) {
+            //a short run resumed from a node
+            RBNode<Integer, Integer> from = tree.ceiling(key);
+            if (from != null) {
+                ThreadedInorderTreeIterator resumed = tree.inorderTraverseFrom(from);
+                Iterator<Map.Entry<Integer, Integer>> entries = expected.tailMap(key, true).entrySet().iterator();
+                for (int i = 0; i < RUN_LENGTH && entries.hasNext(); i++) {
+                    check(resumed.hasMore(), "resumed iterator ended early", key);
+                    checkEntry(resumed.next(), entries.next(), "resumed iterator");
+                }
+            }
+        } else if (choice < 97) {
+            //a sorted batch of puts
+            List<Map.Entry<Integer, Integer>> batch = new ArrayList<Map.Entry<Integer, Integer>>();
+            int before = expected.size();
+            for (int next = key; batch.size() < RUN_LENGTH && next < keyRange; next += 1 + random.nextInt(4)) {
+                Integer value = random.nextInt();
+                batch.add(new AbstractMap.SimpleImmutableEntry<Integer, Integer>(next, value));
+                expected.put(next, value);
+            }
+            check(tree.insertAll(batch.iterator()) == expected.size() - before, "insertAll", key);
+        } else if (choice < 99) {
+            //a sorted batch of deletes
+            List<Integer> batch = new ArrayList<Integer>();
+            int removed = 0;
+            for (int next = key; batch.size() < RUN_LENGTH && next < keyRange; next += 1 + random.nextInt(4)) {
+                batch.add(next);
+                if (expected.remove(next) != null) {
+                    removed++;
+                }
+            }
+            check(tree.deleteAll(batch.iterator()) == removed, "deleteAll", key);
+        } else {
+            //cut the tree in two and put it back together
+            RBTree<Integer, Integer> upper = tree.split(key);
+            check(tree.size() + upper.size() == expected.size(), "split", key);
+            check(equal(tree.size() == 0 ? null : tree.select(tree.size() - 1).getKey(), expected.lowerKey(key)), "split", key);
+            check(equal(upper.size() == 0 ? null : upper.select(0).getKey(), expected.ceilingKey(key)), "split", key);
+            tree = RBTree.join(tree, upper);
+        }
+    }
+
+    /**
+     * Verifies the tree and compares a full traversal with the TreeMap.
+     */
+    private void checkAll() {
+        tree.verify();
+        check(tree.size() == expected.size(), "size", null);
+        InorderTreeIterator nodes = tree.inorderTraverse();
+        for (Map.Entry<Integer, Integer> entry : expected.entrySet()) {
+            check(nodes.hasMore(), "traversal ended early", entry.getKey());
+            checkEntry((RBNode<?, ?>) nodes.next(), entry, "traversal");
+        }
+        check(!nodes.hasMore(), "traversal ran past the end", null);
+    }
+
+    private static void checkEntry(Object node, Map.Entry<Integer, Integer> entry, String what) {
+        RBNode<?, ?> rbNode = (RBNode<?, ?>) node;
+        check(rbNode.getKey().equals(entry.getKey()) && equal(rbNode.getValue(), entry.getValue()),
+                what + " returned " + rbNode.getKey() + "=" + rbNode.getValue() + " instead of " + entry, entry.getKey());
+    }
+
+    private static void check(boolean condition, String what, Integer key) {
+        if (!condition) {
+            throw new IllegalStateException("Mismatch in " + what + (key == null ? "" : " for key " + key));
+        }
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static Integer keyOf(RBNode<Integer, Integer> node) {
+        return node == null ? null : node.getKey();
+    }
+}
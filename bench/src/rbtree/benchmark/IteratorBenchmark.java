@@ -0,0 +1,104 @@
+package rbtree.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import rbtree.RBTree;
+import rbtree.TreeIterator;
+
+/**
+ * Full scans of a tree through each of the TreeIterator implementations, and
+ * narrow range scans through sub-map views. Each full scan visits every node,
+ * so divide the scores by size for per-node figures.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class IteratorBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    RBTree<Integer, Integer> tree;
+    Integer[] windowStarts;
+    int window;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tree = TreeFixture.build(size, distribution);
+        windowStarts = TreeFixture.presentKeys(size, distribution);
+        //a time-window query touches about 0.1% of the keys
+        window = Math.max(size / 1000, 1) * 2;
+    }
+
+    @Benchmark
+    public int inorder(Blackhole blackhole) {
+        return drain(tree.inorderTraverse(), blackhole);
+    }
+
+    @Benchmark
+    public int threadedInorder(Blackhole blackhole) {
+        return drain(tree.threadedInorderTraverse(), blackhole);
+    }
+
+    @Benchmark
+    public int preorder(Blackhole blackhole) {
+        return drain(tree.preorderTraverse(), blackhole);
+    }
+
+    @Benchmark
+    public int postorder(Blackhole blackhole) {
+        return drain(tree.postorderTraverse(), blackhole);
+    }
+
+    @Benchmark
+    public int levelorder(Blackhole blackhole) {
+        return drain(tree.levelorderTraverse(), blackhole);
+    }
+
+    @Benchmark
+    public long streamSum() {
+        return tree.stream().mapToLong(node -> node.getValue()).sum();
+    }
+
+    @Benchmark
+    public long parallelStreamSum() {
+        return tree.parallelStream().mapToLong(node -> node.getValue()).sum();
+    }
+
+    /**
+     * Scans a window of 0.1% of the keys through a lazy sub-map view.
+     */
+    @Benchmark
+    public int subMapWindow(Blackhole blackhole) {
+        Integer lo = windowStarts[next++ & TreeFixture.STREAM_MASK];
+        return drain(tree.subMap(lo, lo + window).inorderTraverse(), blackhole);
+    }
+
+    private static int drain(TreeIterator iterator, Blackhole blackhole) {
+        int count = 0;
+        while (iterator.hasMore()) {
+            blackhole.consume(iterator.next());
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,106 @@
+package rbtree.benchmark;
+
+import java.util.Random;
+
+/**
+ * The key distributions the benchmarks are run against. Every distribution
+ * produces keys in the range [0, n), so a tree filled with 0..n-1 answers
+ * every lookup.
+ */
+public enum KeyDistribution {
+
+    /**
+     * Keys in ascending order, wrapping around at n.
+     */
+    SEQUENTIAL {
+        @Override
+        int[] keys(int count, int n, Random random) {
+            int[] keys = new int[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = i % n;
+            }
+            return keys;
+        }
+    },
+
+    /**
+     * Keys drawn uniformly at random.
+     */
+    RANDOM {
+        @Override
+        int[] keys(int count, int n, Random random) {
+            int[] keys = new int[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = random.nextInt(n);
+            }
+            return keys;
+        }
+    },
+
+    /**
+     * Keys drawn from a Zipfian distribution over popularity ranks. The ranks
+     * are mapped through a random permutation so the hot keys are scattered
+     * over the tree instead of clustered at the left edge.
+     */
+    ZIPFIAN {
+        @Override
+        int[] keys(int count, int n, Random random) {
+            int[] permutation = permutation(n, random);
+            ZipfianGenerator zipf = new ZipfianGenerator(n, ZIPF_SKEW);
+            int[] keys = new int[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = permutation[zipf.next(random)];
+            }
+            return keys;
+        }
+    };
+
+    /**
+     * The skew used by YCSB and most published Zipfian workloads.
+     */
+    static final double ZIPF_SKEW = 0.99;
+
+    /**
+     * Generates a stream of keys.
+     * @param count the number of keys to generate
+     * @param n the number of distinct keys; every key lies in [0, n)
+     * @param random the source of randomness
+     * @return the generated keys
+     */
+    abstract int[] keys(int count, int n, Random random);
+
+    /**
+     * The order in which n distinct keys are inserted to build a tree for this
+     * distribution. Sequential trees are built in ascending order, which is the
+     * worst case for rotations; the others are built in random order.
+     * @param n the number of keys
+     * @param random the source of randomness
+     * @return a permutation of 0..n-1
+     */
+    int[] insertionOrder(int n, Random random) {
+        if (this == SEQUENTIAL) {
+            return SEQUENTIAL.keys(n, n, random);
+        }
+        return permutation(n, random);
+    }
+
+    /**
+     * A random permutation of 0..n-1.
+     * @param n the length of the permutation
+     * @param random the source of randomness
+     * @return the permutation
+     */
+    static int[] permutation(int n, Random random) {
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = keys[i];
+            keys[i] = keys[j];
+            keys[j] = swap;
+        }
+        return keys;
+    }
+}
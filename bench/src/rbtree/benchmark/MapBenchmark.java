@@ -0,0 +1,91 @@
+package rbtree.benchmark;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import rbtree.RBTreeMap;
+
+/**
+ * RBTreeMap and java.util.TreeMap side by side through the NavigableMap
+ * interface, so either can be swapped in wherever it is faster.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class MapBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    @Param({"RBTreeMap", "TreeMap"})
+    String implementation;
+
+    NavigableMap<Integer, Integer> map;
+    Integer[] present;
+    Integer[] absent;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = "TreeMap".equals(implementation)
+                ? new TreeMap<Integer, Integer>()
+                : new RBTreeMap<Integer, Integer>();
+        for (Integer key : TreeFixture.insertionKeys(size, distribution)) {
+            map.put(key, key);
+        }
+        present = TreeFixture.presentKeys(size, distribution);
+        absent = TreeFixture.absentKeys(size, distribution);
+    }
+
+    private int nextIndex() {
+        return next++ & TreeFixture.STREAM_MASK;
+    }
+
+    @Benchmark
+    public Integer get() {
+        return map.get(present[this.nextIndex()]);
+    }
+
+    @Benchmark
+    public Integer ceilingKey() {
+        return map.ceilingKey(absent[this.nextIndex()]);
+    }
+
+    @Benchmark
+    public Integer putRemove() {
+        Integer key = absent[this.nextIndex()];
+        map.put(key, key);
+        return map.remove(key);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int entryScan(Blackhole blackhole) {
+        int count = 0;
+        for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+            blackhole.consume(entry.getValue());
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,73 @@
+package rbtree.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rbtree.RBTree;
+
+/**
+ * Steady-state churn: every operation deletes one key and inserts another, so
+ * the size of the tree never changes, with and without a node pool. The keys
+ * are boxed up front, so with the pool an operation allocates nothing; run with
+ * -prof gc to see the allocation rate of each.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class NodePoolBenchmark {
+
+    @Param({"100000", "1000000"})
+    int size;
+
+    @Param({"0", "1024"})
+    int poolCapacity;
+
+    RBTree<Integer, Integer> tree;
+    //a shuffled run of 2 * size keys; the tree holds the size keys after next
+    Integer[] keys;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(TreeFixture.SEED);
+        keys = new Integer[2 * size];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i;
+        }
+        for (int i = keys.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Integer swap = keys[i];
+            keys[i] = keys[j];
+            keys[j] = swap;
+        }
+        tree = new RBTree<Integer, Integer>();
+        tree.setNodePoolCapacity(poolCapacity);
+        for (int i = 0; i < size; i++) {
+            tree.insertNode(keys[i], keys[i]);
+        }
+        next = 0;
+    }
+
+    @Benchmark
+    public boolean deleteThenInsert() {
+        Integer gone = keys[next];
+        Integer added = keys[(next + size) % keys.length];
+        next = next + 1 == keys.length ? 0 : next + 1;
+        tree.deleteNode(gone);
+        return tree.insertNode(added, added);
+    }
+}
@@ -0,0 +1,65 @@
+package rbtree.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rbtree.KeyNormalizers;
+import rbtree.RBNode;
+import rbtree.RBTree;
+
+/**
+ * Searching a tree of long String keys by their natural order, with and
+ * without normalized prefixes in the nodes. The keys are 40 hex digits, so
+ * they differ early and almost every comparison is settled by the prefixes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class NormalizedKeyBenchmark {
+
+    @Param({"100000", "1000000"})
+    int size;
+
+    @Param({"false", "true"})
+    boolean normalized;
+
+    RBTree<String, Integer> tree;
+    String[] present;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(TreeFixture.SEED);
+        String[] keys = new String[size];
+        tree = normalized
+                ? new RBTree<String, Integer>(null, KeyNormalizers.STRING)
+                : new RBTree<String, Integer>();
+        for (int i = 0; i < size; i++) {
+            keys[i] = String.format("%016x%016x%08x", random.nextLong(), random.nextLong(), i);
+            tree.insertNode(keys[i], i);
+        }
+        present = new String[TreeFixture.STREAM_LENGTH];
+        for (int i = 0; i < present.length; i++) {
+            present[i] = keys[random.nextInt(size)];
+        }
+    }
+
+    @Benchmark
+    public RBNode<String, Integer> search() {
+        return tree.search(present[next++ & TreeFixture.STREAM_MASK]);
+    }
+}
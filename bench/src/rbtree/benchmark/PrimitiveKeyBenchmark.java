@@ -0,0 +1,93 @@
+package rbtree.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rbtree.LongRBNode;
+import rbtree.LongRBTree;
+import rbtree.RBNode;
+import rbtree.RBTree;
+
+/**
+ * LongRBTree against RBTree&lt;Long, Long&gt; over the same keys. Run with
+ * -prof gc to compare the allocation rates of the write paths.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class PrimitiveKeyBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    int size;
+
+    @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    RBTree<Long, Long> boxed;
+    LongRBTree<Long> primitive;
+    long[] present;
+    long[] absent;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        boxed = new RBTree<Long, Long>();
+        primitive = new LongRBTree<Long>();
+        for (Integer key : TreeFixture.insertionKeys(size, distribution)) {
+            Long value = Long.valueOf(key);
+            boxed.insertNode(value, value);
+            primitive.insertNode(key, value);
+        }
+        present = toLongs(TreeFixture.presentKeys(size, distribution));
+        absent = toLongs(TreeFixture.absentKeys(size, distribution));
+    }
+
+    private static long[] toLongs(Integer[] keys) {
+        long[] longs = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            longs[i] = keys[i];
+        }
+        return longs;
+    }
+
+    private int nextIndex() {
+        return next++ & TreeFixture.STREAM_MASK;
+    }
+
+    @Benchmark
+    public RBNode<Long, Long> boxedSearch() {
+        return boxed.search(present[this.nextIndex()]);
+    }
+
+    @Benchmark
+    public LongRBNode<Long> primitiveSearch() {
+        return primitive.search(present[this.nextIndex()]);
+    }
+
+    @Benchmark
+    public boolean boxedInsertThenDelete() {
+        Long key = absent[this.nextIndex()];
+        boxed.insertNode(key, null);
+        return boxed.deleteNode(key);
+    }
+
+    @Benchmark
+    public boolean primitiveInsertThenDelete() {
+        long key = absent[this.nextIndex()];
+        primitive.insertNode(key, null);
+        return primitive.deleteNode(key);
+    }
+}
@@ -0,0 +1,153 @@
+package rbtree.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rbtree.RBNode;
+import rbtree.RBTree;
+
+/**
+ * Steady-state point operations on a tree of a fixed size: search, successor,
+ * predecessor, and insert/delete pairs that leave the size unchanged.
+ * Throughput mode reports ops/sec and SampleTime mode reports the latency
+ * percentiles; run with -prof gc for the allocation rate.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class RBTreeBenchmark {
+
+    /**
+     * A tree that is only read, with nodes sampled for successor and
+     * predecessor.
+     */
+    @State(Scope.Thread)
+    public static class ReadState {
+
+        @Param({"1000", "10000", "100000", "1000000", "10000000"})
+        int size;
+
+        @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN"})
+        KeyDistribution distribution;
+
+        RBTree<Integer, Integer> tree;
+        Integer[] present;
+        Integer[] absent;
+        RBNode<Integer, Integer>[] nodes;
+        int next;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unchecked")
+        public void setUp() {
+            tree = TreeFixture.build(size, distribution);
+            present = TreeFixture.presentKeys(size, distribution);
+            absent = TreeFixture.absentKeys(size, distribution);
+            nodes = new RBNode[TreeFixture.STREAM_LENGTH];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = tree.search(present[i]);
+            }
+        }
+
+        int nextIndex() {
+            return next++ & TreeFixture.STREAM_MASK;
+        }
+    }
+
+    /**
+     * A tree that is mutated; every benchmark leaves it the size it started.
+     */
+    @State(Scope.Thread)
+    public static class WriteState {
+
+        @Param({"1000", "10000", "100000", "1000000", "10000000"})
+        int size;
+
+        @Param({"SEQUENTIAL", "RANDOM", "ZIPFIAN"})
+        KeyDistribution distribution;
+
+        RBTree<Integer, Integer> tree;
+        Integer[] present;
+        Integer[] absent;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            tree = TreeFixture.build(size, distribution);
+            present = TreeFixture.presentKeys(size, distribution);
+            absent = TreeFixture.absentKeys(size, distribution);
+        }
+
+        int nextIndex() {
+            return next++ & TreeFixture.STREAM_MASK;
+        }
+    }
+
+    @Benchmark
+    public RBNode<Integer, Integer> searchHit(ReadState state) {
+        return state.tree.search(state.present[state.nextIndex()]);
+    }
+
+    @Benchmark
+    public RBNode<Integer, Integer> searchMiss(ReadState state) {
+        return state.tree.search(state.absent[state.nextIndex()]);
+    }
+
+    @Benchmark
+    public RBNode<Integer, Integer> successor(ReadState state) {
+        return state.tree.successor(state.nodes[state.nextIndex()]);
+    }
+
+    @Benchmark
+    public RBNode<Integer, Integer> predecessor(ReadState state) {
+        return state.tree.predecessor(state.nodes[state.nextIndex()]);
+    }
+
+    @Benchmark
+    public int rank(ReadState state) {
+        return state.tree.rank(state.present[state.nextIndex()]);
+    }
+
+    @Benchmark
+    public RBNode<Integer, Integer> select(ReadState state) {
+        return state.tree.select(state.present[state.nextIndex()] >> 1);
+    }
+
+    /**
+     * Inserts an absent key and deletes it again.
+     */
+    @Benchmark
+    public boolean insertThenDelete(WriteState state) {
+        Integer key = state.absent[state.nextIndex()];
+        return state.tree.insertNode(key, key) & state.tree.deleteNode(key);
+    }
+
+    /**
+     * Replaces the value of a present key.
+     */
+    @Benchmark
+    public Integer putPresent(WriteState state) {
+        Integer key = state.present[state.nextIndex()];
+        return state.tree.put(key, key);
+    }
+
+    /**
+     * Deletes a present key and inserts it again.
+     */
+    @Benchmark
+    public boolean deleteThenInsert(WriteState state) {
+        Integer key = state.present[state.nextIndex()];
+        return state.tree.deleteNode(key) & state.tree.insertNode(key, key);
+    }
+}
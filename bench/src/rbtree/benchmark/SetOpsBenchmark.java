@@ -0,0 +1,84 @@
+package rbtree.benchmark;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rbtree.RBTree;
+
+/**
+ * Merging a smaller tree into a larger one, by inserting its entries with
+ * insertAll or with union, and partitioning a tree with split and join. The set
+ * operations consume their inputs, so both trees are rebuilt before every
+ * invocation; a single invocation takes long enough for that to be harmless.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class SetOpsBenchmark {
+
+    @Param({"1000000"})
+    int size;
+
+    @Param({"1000", "100000", "1000000"})
+    int otherSize;
+
+    List<Map.Entry<Integer, Integer>> entries;
+    List<Map.Entry<Integer, Integer>> otherEntries;
+
+    RBTree<Integer, Integer> tree;
+    RBTree<Integer, Integer> other;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        //the larger tree holds the even keys, the smaller one odd keys spread over the same range
+        entries = new ArrayList<Map.Entry<Integer, Integer>>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<Integer, Integer>(i * 2, i));
+        }
+        otherEntries = new ArrayList<Map.Entry<Integer, Integer>>(otherSize);
+        int stride = Math.max(1, size * 2 / otherSize);
+        for (int i = 0; i < otherSize; i++) {
+            otherEntries.add(new AbstractMap.SimpleImmutableEntry<Integer, Integer>(i * stride + 1, i));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        tree = RBTree.fromSorted(entries.iterator(), entries.size());
+        other = RBTree.fromSorted(otherEntries.iterator(), otherEntries.size());
+    }
+
+    @Benchmark
+    public int insertAll() {
+        tree.insertAll(otherEntries.iterator());
+        return tree.size();
+    }
+
+    @Benchmark
+    public int union() {
+        return RBTree.union(tree, other).size();
+    }
+
+    @Benchmark
+    public int splitAndJoin() {
+        RBTree<Integer, Integer> upper = tree.split(size);
+        return RBTree.join(tree, upper).size();
+    }
+}
@@ -0,0 +1,82 @@
+package rbtree.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import rbtree.ConcurrentRBTree;
+import rbtree.ShardedRBTree;
+
+/**
+ * Writers on every core inserting and deleting absent keys, through one
+ * ConcurrentRBTree or through a ShardedRBTree routing by range or by hash.
+ * The range boundaries are placed at even steps over the key range.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class ShardedBenchmark {
+
+    @Param({"1000000"})
+    int size;
+
+    @Param({"RANDOM", "ZIPFIAN"})
+    KeyDistribution distribution;
+
+    @Param({"single", "range", "hash"})
+    String routing;
+
+    @Param({"16", "64"})
+    int shards;
+
+    ConcurrentRBTree<Integer, Integer> single;
+    ShardedRBTree<Integer, Integer> sharded;
+    Integer[] absent;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("single".equals(routing)) {
+            single = new ConcurrentRBTree<Integer, Integer>(TreeFixture.build(size, distribution));
+        } else {
+            if ("range".equals(routing)) {
+                Integer[] boundaries = new Integer[shards - 1];
+                for (int i = 1; i < shards; i++) {
+                    boundaries[i - 1] = (int) (2L * size * i / shards);
+                }
+                sharded = ShardedRBTree.byRange(boundaries);
+            } else {
+                sharded = ShardedRBTree.byHash(shards);
+            }
+            for (Integer key : TreeFixture.insertionKeys(size, distribution)) {
+                sharded.insertNode(key, key);
+            }
+        }
+        absent = TreeFixture.absentKeys(size, distribution);
+    }
+
+    @Benchmark
+    public boolean write() {
+        Integer key = absent[ThreadLocalRandom.current().nextInt() & TreeFixture.STREAM_MASK];
+        if (single != null) {
+            single.insertNode(key, key);
+            return single.deleteNode(key);
+        }
+        sharded.insertNode(key, key);
+        return sharded.deleteNode(key);
+    }
+}
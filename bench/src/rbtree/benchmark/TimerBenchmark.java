@@ -0,0 +1,92 @@
+package rbtree.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import rbtree.RBTree;
+
+/**
+ * A deadline index in steady state: every operation schedules batch new
+ * deadlines past the last one and expires the batch earliest, by deleting the
+ * smallest key one search at a time, by pollFirst, or by one removeHeadUntil.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class TimerBenchmark {
+
+    @Param({"1000000"})
+    int size;
+
+    @Param({"16", "1024"})
+    int batch;
+
+    RBTree<Long, Long> deadlines;
+    //the earliest deadline in the tree and the one after the latest
+    long first;
+    long next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        deadlines = new RBTree<Long, Long>();
+        for (next = 0; next < size; next++) {
+            deadlines.insertNode(next, next);
+        }
+        first = 0;
+    }
+
+    @Benchmark
+    public int deleteSmallest() {
+        this.schedule();
+        for (int i = 0; i < batch; i++) {
+            deadlines.deleteNode(deadlines.select(0).getKey());
+        }
+        first += batch;
+        return deadlines.size();
+    }
+
+    @Benchmark
+    public int pollFirst() {
+        this.schedule();
+        for (int i = 0; i < batch; i++) {
+            deadlines.pollFirst();
+        }
+        first += batch;
+        return deadlines.size();
+    }
+
+    @Benchmark
+    public List<Map.Entry<Long, Long>> pollFirstN() {
+        this.schedule();
+        first += batch;
+        return deadlines.pollFirstN(batch);
+    }
+
+    @Benchmark
+    public RBTree<Long, Long> removeHeadUntil() {
+        this.schedule();
+        first += batch;
+        return deadlines.removeHeadUntil(first - 1);
+    }
+
+    private void schedule() {
+        for (int i = 0; i < batch; i++, next++) {
+            deadlines.insertNode(next, next);
+        }
+    }
+}
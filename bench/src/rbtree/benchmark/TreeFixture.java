@@ -0,0 +1,88 @@
+package rbtree.benchmark;
+
+import java.util.Random;
+import rbtree.RBTree;
+
+/**
+ * Builds the trees and key streams shared by the benchmarks. Trees hold the
+ * even keys 0, 2, ..., 2(n-1), so even keys from a stream are hits and odd
+ * keys are misses. Keys are boxed up front so the measured loops do not
+ * allocate on their own account.
+ */
+final class TreeFixture {
+
+    /**
+     * The number of keys in every precomputed stream. A power of two so the
+     * benchmarks can wrap around with a mask.
+     */
+    static final int STREAM_LENGTH = 1 << 16;
+
+    static final int STREAM_MASK = STREAM_LENGTH - 1;
+
+    /**
+     * Seed for every random source, so runs are comparable.
+     */
+    static final long SEED = 0x5DEECE66DL;
+
+    private TreeFixture() {
+    }
+
+    /**
+     * Builds a tree of n entries by inserting keys in the insertion order of
+     * the distribution.
+     * @param n the number of entries
+     * @param distribution the key distribution
+     * @return the new tree
+     */
+    static RBTree<Integer, Integer> build(int n, KeyDistribution distribution) {
+        RBTree<Integer, Integer> tree = new RBTree<Integer, Integer>();
+        for (Integer key : insertionKeys(n, distribution)) {
+            tree.insertNode(key, key);
+        }
+        return tree;
+    }
+
+    /**
+     * The boxed keys of a tree of n entries, in the insertion order of the
+     * distribution.
+     * @param n the number of entries
+     * @param distribution the key distribution
+     * @return the keys to insert
+     */
+    static Integer[] insertionKeys(int n, KeyDistribution distribution) {
+        int[] order = distribution.insertionOrder(n, new Random(SEED));
+        Integer[] keys = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = order[i] * 2;
+        }
+        return keys;
+    }
+
+    /**
+     * A stream of keys that are present in a tree of n entries.
+     * @param n the number of entries in the tree
+     * @param distribution the key distribution
+     * @return STREAM_LENGTH boxed keys
+     */
+    static Integer[] presentKeys(int n, KeyDistribution distribution) {
+        return boxed(distribution.keys(STREAM_LENGTH, n, new Random(SEED + 1)), 0);
+    }
+
+    /**
+     * A stream of keys that are absent from a tree of n entries.
+     * @param n the number of entries in the tree
+     * @param distribution the key distribution
+     * @return STREAM_LENGTH boxed keys
+     */
+    static Integer[] absentKeys(int n, KeyDistribution distribution) {
+        return boxed(distribution.keys(STREAM_LENGTH, n, new Random(SEED + 2)), 1);
+    }
+
+    private static Integer[] boxed(int[] ranks, int offset) {
+        Integer[] keys = new Integer[ranks.length];
+        for (int i = 0; i < ranks.length; i++) {
+            keys[i] = ranks[i] * 2 + offset;
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,57 @@
+package rbtree.benchmark;
+
+import java.util.Random;
+
+/**
+ * Draws ranks in [0, n) from a Zipfian distribution, using the rejection-free
+ * method of Gray et al. ("Quickly Generating Billion-Record Synthetic
+ * Databases") that YCSB also uses. Rank 0 is the most popular.
+ */
+final class ZipfianGenerator {
+
+    private final int n;
+    private final double theta;
+    private final double alpha;
+    private final double zetaN;
+    private final double eta;
+
+    /**
+     * Constructor with two parameters
+     * @param n the number of ranks
+     * @param theta the skew, between 0 (exclusive) and 1 (exclusive)
+     */
+    ZipfianGenerator(int n, double theta) {
+        this.n = n;
+        this.theta = theta;
+        this.alpha = 1.0 / (1.0 - theta);
+        this.zetaN = zeta(n, theta);
+        double zeta2 = zeta(2, theta);
+        this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta2 / zetaN);
+    }
+
+    /**
+     * Draws the next rank.
+     * @param random the source of randomness
+     * @return a rank in [0, n)
+     */
+    int next(Random random) {
+        double u = random.nextDouble();
+        double uz = u * zetaN;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            return Math.min(1, n - 1);
+        }
+        int rank = (int) (n * Math.pow(eta * u - eta + 1, alpha));
+        return Math.min(rank, n - 1);
+    }
+
+    private static double zeta(int n, double theta) {
+        double sum = 0;
+        for (int i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}
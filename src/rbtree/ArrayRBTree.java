@@ -0,0 +1,612 @@
+package rbtree;
+
+import java.util.Arrays;
+
+/**
+ * Red Black Tree that keeps its nodes in parallel arrays instead of one object
+ * per node. A node is an int slot: its key, value, parent and children are the
+ * entries at that slot of the keys, values, parent, left and right arrays, and
+ * its color is one bit of a bitset. Slot 0 is the nil sentinel, so a child or
+ * parent of NIL means there is none. Deleted slots go on a free-list threaded
+ * through the left array and are reused by later inserts.
+ * <p>
+ * The tree itself is a handful of arrays however many nodes it holds, so the
+ * garbage collector has nothing per node to trace apart from the keys and
+ * values, and the links of neighbouring slots share cache lines.
+ * <p>
+ * Nodes are addressed by slot: search, first, last, successor and predecessor
+ * return slots, and keyAt and valueAt read them. A slot stays valid until the
+ * node in it is deleted; deleting a node with two children moves the key and
+ * value of its successor into its slot and frees the successor's slot.
+ * @param <K> the data type of the key for the nodes in the red black tree
+ * @param <V> the data type of the data stored in each node in the red black tree
+ */
+public class ArrayRBTree<K extends Comparable<K>,V> {
+
+    /**
+     * The slot of the nil sentinel, returned when there is no such node.
+     */
+    public static final int NIL = 0;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private Object[] keys;
+    private Object[] values;
+    private int[] parent, left, right;
+    //bit i is set if slot i is red; nil is always black
+    private long[] red;
+    private int root = NIL;
+    private int size;
+    //the first slot never used, and the head of the list of freed slots
+    private int top = 1;
+    private int freeHead = NIL;
+    //the key's comparison with the slot returned by the last call to descend
+    private int descentCompare;
+
+    /**
+     * A new empty red black tree
+     */
+    public ArrayRBTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * A new empty red black tree with room for capacity nodes before its arrays grow
+     * @param capacity the number of nodes to allocate room for
+     */
+    public ArrayRBTree(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity: " + capacity);
+        }
+        int slots = capacity + 1;
+        keys = new Object[slots];
+        values = new Object[slots];
+        parent = new int[slots];
+        left = new int[slots];
+        right = new int[slots];
+        red = new long[(slots + 63) >>> 6];
+    }
+
+    /**
+     * The number of nodes in the tree.
+     * @return the number of nodes in the tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every node from the tree. The arrays keep their capacity.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0, top, null);
+        Arrays.fill(values, 0, top, null);
+        Arrays.fill(red, 0);
+        root = NIL;
+        size = 0;
+        top = 1;
+        freeHead = NIL;
+    }
+
+    /**
+     * The key of the node in a slot.
+     * @param slot the slot of the node
+     * @return the key of the node
+     */
+    @SuppressWarnings("unchecked")
+    public K keyAt(int slot) {
+        return (K) keys[slot];
+    }
+
+    /**
+     * The data of the node in a slot.
+     * @param slot the slot of the node
+     * @return the data of the node
+     */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int slot) {
+        return (V) values[slot];
+    }
+
+    /**
+     * Replaces the data of the node in a slot.
+     * @param slot the slot of the node
+     * @param value the new data of the node
+     */
+    public void setValueAt(int slot, V value) {
+        values[slot] = value;
+    }
+
+    /**
+     * The color of the node in a slot.
+     * @param slot the slot of the node
+     * @return the color of the node, Color.Black for NIL
+     */
+    public Color colorAt(int slot) {
+        return this.isRed(slot) ? Color.Red : Color.Black;
+    }
+
+    /**
+     * The slot of the root node.
+     * @return the slot of the root, or NIL if the tree is empty
+     */
+    public int root() {
+        return root;
+    }
+
+    /**
+     * The slot of the parent of a node.
+     * @param slot the slot of the node
+     * @return the slot of the parent, or NIL for the root
+     */
+    public int parentOf(int slot) {
+        return parent[slot];
+    }
+
+    /**
+     * The slot of the left child of a node.
+     * @param slot the slot of the node
+     * @return the slot of the left child, or NIL if there is none
+     */
+    public int leftOf(int slot) {
+        return left[slot];
+    }
+
+    /**
+     * The slot of the right child of a node.
+     * @param slot the slot of the node
+     * @return the slot of the right child, or NIL if there is none
+     */
+    public int rightOf(int slot) {
+        return right[slot];
+    }
+
+    /**
+     * Searches the red black tree for node with the key key.
+     * @param key The key of the node you wish to search for.
+     * @return The slot of the node with key key, or NIL if there is none
+     */
+    public int search(K key) {
+        int traverse = root;
+        while (traverse != NIL) {
+            int compare = key.compareTo(this.keyAt(traverse));
+            if (compare == 0) {
+                return traverse;
+            }
+            traverse = compare < 0 ? left[traverse] : right[traverse];
+        }
+        return NIL;
+    }
+
+    /**
+     * The value of the node with key key.
+     * @param key The key of the node
+     * @return The data of the node with key key, or null if there is none
+     */
+    public V get(K key) {
+        return this.valueAt(this.search(key));
+    }
+
+    /**
+     * The slot of the node with the smallest key.
+     * @return the slot of the first node, or NIL if the tree is empty
+     */
+    public int first() {
+        return root == NIL ? NIL : this.minimum(root);
+    }
+
+    /**
+     * The slot of the node with the largest key.
+     * @return the slot of the last node, or NIL if the tree is empty
+     */
+    public int last() {
+        return root == NIL ? NIL : this.maximum(root);
+    }
+
+    /**
+     * Find the node with the minimum key at sub-tree with root slot
+     * @param slot The slot of the root of the sub-tree
+     * @return the slot of the node with the minimum key in the sub-tree
+     */
+    public int minimum(int slot) {
+        while (left[slot] != NIL) {
+            slot = left[slot];
+        }
+        return slot;
+    }
+
+    /**
+     * Find the node with the maximum key at sub-tree with root slot
+     * @param slot The slot of the root of the sub-tree
+     * @return the slot of the node with the maximum key in the sub-tree
+     */
+    public int maximum(int slot) {
+        while (right[slot] != NIL) {
+            slot = right[slot];
+        }
+        return slot;
+    }
+
+    /**
+     * Find the node with the smallest key larger than the key of the node in slot
+     * @param slot The slot of the node you wish to find the successor of
+     * @return The slot of the successor, or NIL if a successor does not exist
+     */
+    public int successor(int slot) {
+        if (right[slot] != NIL) {
+            return this.minimum(right[slot]);
+        }
+        int up = parent[slot];
+        while (up != NIL && slot == right[up]) {
+            slot = up;
+            up = parent[slot];
+        }
+        return up;
+    }
+
+    /**
+     * Find the node with the largest key smaller than the key of the node in slot
+     * @param slot The slot of the node you wish to find the predecessor of
+     * @return The slot of the predecessor, or NIL if a predecessor does not exist
+     */
+    public int predecessor(int slot) {
+        if (left[slot] != NIL) {
+            return this.maximum(left[slot]);
+        }
+        int up = parent[slot];
+        while (up != NIL && slot == left[up]) {
+            slot = up;
+            up = parent[slot];
+        }
+        return up;
+    }
+
+    /**
+     * Insert a node with a key of value key and data with the value value.
+     * @param key The key of the new node
+     * @param value The data the new node contains
+     * @return true if the node was inserted, false if a node with key key already exists
+     */
+    public boolean insertNode(K key, V value) {
+        int y = this.descend(key);
+        if (y != NIL && descentCompare == 0) {
+            return false;
+        }
+        this.insert(y, key, value, descentCompare);
+        return true;
+    }
+
+    /**
+     * Associates value with key, replacing the value of an existing node with an identical key.
+     * @param key The key of the node
+     * @param value The data the node should contain
+     * @return The previous value of the node with key key, or null if no such node existed
+     */
+    public V put(K key, V value) {
+        int y = this.descend(key);
+        if (y != NIL && descentCompare == 0) {
+            V oldValue = this.valueAt(y);
+            values[y] = value;
+            return oldValue;
+        }
+        this.insert(y, key, value, descentCompare);
+        return null;
+    }
+
+    /**
+     * Delete a node from the red black tree with the key key
+     * @param key the key that is contained in the node you wish to delete from in the tree
+     * @return true if a node was deleted, false if no node has key key
+     */
+    public boolean deleteNode(K key) {
+        int remove = this.search(key);
+        if (remove == NIL) {
+            return false;
+        }
+        this.delete(remove);
+        return true;
+    }
+
+    /**
+     * Walks down the tree once looking for key.
+     * @param key The key to look for
+     * @return The slot with key key if one exists, otherwise the slot that would become the parent
+     * of a new node with key key, or NIL if the tree is empty. descentCompare holds the key's
+     * comparison with that slot, so callers need not compare again.
+     */
+    private int descend(K key) {
+        int x = root;
+        int y = NIL;
+        int compare = 0;
+        while (x != NIL) {
+            y = x;
+            compare = key.compareTo(this.keyAt(x));
+            if (compare == 0) {
+                break;
+            }
+            x = compare < 0 ? left[x] : right[x];
+        }
+        descentCompare = compare;
+        return y;
+    }
+
+    /**
+     * Takes a slot off the free-list, or the next unused slot, growing the arrays if they are full.
+     * @return a free slot
+     */
+    private int allocate() {
+        int slot = freeHead;
+        if (slot != NIL) {
+            freeHead = left[slot];
+            return slot;
+        }
+        if (top == keys.length) {
+            int capacity = top + (top >> 1) + 1;
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+            parent = Arrays.copyOf(parent, capacity);
+            left = Arrays.copyOf(left, capacity);
+            right = Arrays.copyOf(right, capacity);
+            red = Arrays.copyOf(red, (capacity + 63) >>> 6);
+        }
+        return top++;
+    }
+
+    /**
+     * Puts a slot on the free-list and drops its key and value.
+     * @param slot the slot to free
+     */
+    private void free(int slot) {
+        keys[slot] = null;
+        values[slot] = null;
+        this.setBlack(slot);
+        left[slot] = freeHead;
+        freeHead = slot;
+    }
+
+    /**
+     * Insert a new node below the location found by descend and re-balance the tree
+     * @param y the slot returned by descend for key
+     * @param key the key of the new node
+     * @param value the data of the new node
+     * @param compare the comparison of key with y, as descend left it
+     */
+    private void insert(int y, K key, V value, int compare) {
+        int newNode = this.allocate();
+        keys[newNode] = key;
+        values[newNode] = value;
+        parent[newNode] = y;
+        left[newNode] = NIL;
+        right[newNode] = NIL;
+        this.setRed(newNode);
+        if (y == NIL) {
+            root = newNode;
+        } else if (compare < 0) {
+            left[y] = newNode;
+        } else {
+            right[y] = newNode;
+        }
+        size++;
+        this.insertFixUp(newNode);
+    }
+
+    private boolean isRed(int slot) {
+        return (red[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private void setRed(int slot) {
+        red[slot >>> 6] |= 1L << slot;
+    }
+
+    private void setBlack(int slot) {
+        red[slot >>> 6] &= ~(1L << slot);
+    }
+
+    private void setColor(int slot, boolean isRed) {
+        if (isRed) {
+            this.setRed(slot);
+        } else {
+            this.setBlack(slot);
+        }
+    }
+
+    /**
+     * Performs a left rotation on a sub-tree
+     * @param rotatePoint The slot of the node you wish to do a left rotation on
+     */
+    private void rotateLeft(int rotatePoint) {
+        int rightChild = right[rotatePoint];
+        int grandParent = parent[rotatePoint];
+        parent[rightChild] = grandParent;
+        if (grandParent == NIL) {
+            root = rightChild;
+        } else if (left[grandParent] == rotatePoint) {
+            left[grandParent] = rightChild;
+        } else {
+            right[grandParent] = rightChild;
+        }
+        int inner = left[rightChild];
+        right[rotatePoint] = inner;
+        //leave the parent of nil alone, deleteFixUp may be relying on it
+        if (inner != NIL) {
+            parent[inner] = rotatePoint;
+        }
+        left[rightChild] = rotatePoint;
+        parent[rotatePoint] = rightChild;
+    }
+
+    /**
+     * Performs a right rotation on a sub-tree
+     * @param rotatePoint The slot of the node you wish to do a right rotation on
+     */
+    private void rotateRight(int rotatePoint) {
+        int leftChild = left[rotatePoint];
+        int grandParent = parent[rotatePoint];
+        parent[leftChild] = grandParent;
+        if (grandParent == NIL) {
+            root = leftChild;
+        } else if (left[grandParent] == rotatePoint) {
+            left[grandParent] = leftChild;
+        } else {
+            right[grandParent] = leftChild;
+        }
+        int inner = right[leftChild];
+        left[rotatePoint] = inner;
+        //leave the parent of nil alone, deleteFixUp may be relying on it
+        if (inner != NIL) {
+            parent[inner] = rotatePoint;
+        }
+        right[leftChild] = rotatePoint;
+        parent[rotatePoint] = leftChild;
+    }
+
+    /**
+     * Balance the tree after a new insertion
+     * @param insertedNode The slot of the node that was inserted
+     */
+    private void insertFixUp(int insertedNode) {
+        int uncle, grand, up = parent[insertedNode];
+        while (this.isRed(up)) {
+            grand = parent[up];
+            if (up == left[grand]) {
+                uncle = right[grand];
+                if (this.isRed(uncle)) {
+                    //if the uncle of insertedNode is red
+                    this.setBlack(up);
+                    this.setBlack(uncle);
+                    this.setRed(grand);
+                    insertedNode = grand;
+                    up = parent[insertedNode];
+                } else {
+                    if (insertedNode == right[up]) {
+                        //if insertedNode is the right child, make it a left child
+                        insertedNode = up;
+                        this.rotateLeft(insertedNode);
+                        up = parent[insertedNode];
+                    }
+                    this.setBlack(up);
+                    this.setRed(grand);
+                    this.rotateRight(grand);
+                }
+            } else {
+                uncle = left[grand];
+                if (this.isRed(uncle)) {
+                    //if the uncle of insertedNode is red
+                    this.setBlack(up);
+                    this.setBlack(uncle);
+                    this.setRed(grand);
+                    insertedNode = grand;
+                    up = parent[insertedNode];
+                } else {
+                    if (insertedNode == left[up]) {
+                        //if insertedNode is the left child, make it a right child
+                        insertedNode = up;
+                        this.rotateRight(insertedNode);
+                        up = parent[insertedNode];
+                    }
+                    this.setBlack(up);
+                    this.setRed(grand);
+                    this.rotateLeft(grand);
+                }
+            }
+        }
+        this.setBlack(root);
+    }
+
+    /**
+     * Deletes a node from the tree, re-balances the tree and frees the slot spliced out
+     * @param remove the slot of the node you wish to remove from the tree
+     */
+    private void delete(int remove) {
+        int x, y;
+        //the node spliced out is remove itself, or its successor if remove has two children
+        if (left[remove] == NIL || right[remove] == NIL) {
+            y = remove;
+        } else {
+            y = this.minimum(right[remove]);
+        }
+        x = left[y] != NIL ? left[y] : right[y];
+        //set the parent of x even if it is nil, deleteFixUp climbs from it
+        int up = parent[y];
+        parent[x] = up;
+        if (up == NIL) {
+            root = x;
+        } else if (y == left[up]) {
+            left[up] = x;
+        } else {
+            right[up] = x;
+        }
+        if (y != remove) {
+            keys[remove] = keys[y];
+            values[remove] = values[y];
+        }
+        boolean wasBlack = !this.isRed(y);
+        this.free(y);
+        size--;
+        if (wasBlack) {
+            this.deleteFixUp(x);
+        }
+        parent[NIL] = NIL;
+    }
+
+    /**
+     * Re-balance the tree after a deletion
+     * @param childOfRemovedNode The slot of the child of the node removed
+     */
+    private void deleteFixUp(int childOfRemovedNode) {
+        int up, sibling;
+        while (childOfRemovedNode != root && !this.isRed(childOfRemovedNode)) {
+            up = parent[childOfRemovedNode];
+            if (childOfRemovedNode == left[up]) {
+                sibling = right[up];
+                if (this.isRed(sibling)) {
+                    this.setRed(up);
+                    this.setBlack(sibling);
+                    this.rotateLeft(up);
+                    sibling = right[up];
+                }
+                if (!this.isRed(left[sibling]) && !this.isRed(right[sibling])) {
+                    this.setRed(sibling);
+                    childOfRemovedNode = up;
+                } else {
+                    if (!this.isRed(right[sibling])) {
+                        this.setRed(sibling);
+                        this.setBlack(left[sibling]);
+                        this.rotateRight(sibling);
+                        sibling = right[up];
+                    }
+                    this.setColor(sibling, this.isRed(up));
+                    this.setBlack(up);
+                    this.setBlack(right[sibling]);
+                    this.rotateLeft(up);
+                    childOfRemovedNode = root;
+                }
+            } else {
+                sibling = left[up];
+                if (this.isRed(sibling)) {
+                    this.setRed(up);
+                    this.setBlack(sibling);
+                    this.rotateRight(up);
+                    sibling = left[up];
+                }
+                if (!this.isRed(left[sibling]) && !this.isRed(right[sibling])) {
+                    this.setRed(sibling);
+                    childOfRemovedNode = up;
+                } else {
+                    if (!this.isRed(left[sibling])) {
+                        this.setRed(sibling);
+                        this.setBlack(right[sibling]);
+                        this.rotateLeft(sibling);
+                        sibling = left[up];
+                    }
+                    this.setColor(sibling, this.isRed(up));
+                    this.setBlack(up);
+                    this.setBlack(left[sibling]);
+                    this.rotateRight(up);
+                    childOfRemovedNode = root;
+                }
+            }
+        }
+        this.setBlack(childOfRemovedNode);
+    }
+}
@@ -0,0 +1,34 @@
+package rbtree;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The slower store behind an RBTreeCache. The cache loads the keys it misses
+ * from the store, and writes the entries put or removed since its last flush
+ * back to it in batches sorted by key, so a store that keeps its data in key
+ * order sees runs of neighbouring keys rather than scattered writes.
+ * FileCacheStore is a store kept in a local file.
+ * @param <K> the data type of the keys
+ * @param <V> the data type of the values
+ */
+public interface CacheStore<K,V> {
+
+    /**
+     * Reads the value of key, called by the cache on a miss.
+     * @param key the key to read
+     * @return the value of key, or null if the store has none
+     * @throws IOException if the store cannot be read
+     */
+    V load(K key) throws IOException;
+
+    /**
+     * Writes a batch of changes, in strictly increasing key order. An entry with a null value
+     * removes its key.
+     * @param entries the changes to write
+     * @throws IOException if the store cannot be written; the cache then keeps the batch and
+     * writes it again with the next flush
+     */
+    void writeAll(List<Map.Entry<K,V>> entries) throws IOException;
+}
@@ -0,0 +1,34 @@
+package rbtree;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Writes and reads the keys or values of a tree snapshot. Entries are written
+ * in key order and each one is handed the one written before it, so a key
+ * codec can write only what changed since the previous key. Codecs holding no
+ * state can be shared between snapshots and threads; the standard ones are in
+ * Codecs.
+ * @param <T> the data type the codec writes and reads
+ */
+public interface Codec<T> {
+
+    /**
+     * Writes value.
+     * @param previous the value written just before, or null for the first one
+     * @param value the value to write
+     * @param out where to write it
+     * @throws IOException if out cannot be written
+     */
+    void write(T previous, T value, DataOutput out) throws IOException;
+
+    /**
+     * Reads a value written by write.
+     * @param previous the value read just before, or null for the first one
+     * @param in where to read it from
+     * @return the value
+     * @throws IOException if in cannot be read or does not hold a value
+     */
+    T read(T previous, DataInput in) throws IOException;
+}
@@ -0,0 +1,210 @@
+package rbtree;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The standard codecs for tree snapshots. The key codecs rely on the keys
+ * arriving in increasing order: LONG_DELTA and INTEGER_DELTA write the
+ * difference from the previous key as a variable-length integer, so dense
+ * keys take a byte or two each, and STRING_PREFIX writes only the part of
+ * each string after the prefix it shares with the previous one. The value
+ * codecs write each value on its own.
+ */
+public final class Codecs {
+
+    private Codecs() {
+    }
+
+    /**
+     * Sorted Long keys, as the zig-zag varint of the difference from the previous key.
+     */
+    public static final Codec<Long> LONG_DELTA = new Codec<Long>() {
+        @Override
+        public void write(Long previous, Long value, DataOutput out) throws IOException {
+            writeVarLong(out, zigZag(value - (previous == null ? 0 : previous)));
+        }
+
+        @Override
+        public Long read(Long previous, DataInput in) throws IOException {
+            return (previous == null ? 0 : previous) + unZigZag(readVarLong(in));
+        }
+    };
+
+    /**
+     * Sorted Integer keys, as the zig-zag varint of the difference from the previous key.
+     */
+    public static final Codec<Integer> INTEGER_DELTA = new Codec<Integer>() {
+        @Override
+        public void write(Integer previous, Integer value, DataOutput out) throws IOException {
+            writeVarLong(out, zigZag((long) value - (previous == null ? 0 : previous)));
+        }
+
+        @Override
+        public Integer read(Integer previous, DataInput in) throws IOException {
+            return (int) ((previous == null ? 0 : previous) + unZigZag(readVarLong(in)));
+        }
+    };
+
+    /**
+     * Sorted String keys, as the length of the prefix shared with the previous key and the UTF-8
+     * bytes of the rest.
+     */
+    public static final Codec<String> STRING_PREFIX = new Codec<String>() {
+        @Override
+        public void write(String previous, String value, DataOutput out) throws IOException {
+            int shared = 0;
+            if (previous != null) {
+                int limit = Math.min(previous.length(), value.length());
+                while (shared < limit && previous.charAt(shared) == value.charAt(shared)) {
+                    shared++;
+                }
+                //never split a surrogate pair between the prefix and the suffix
+                if (shared > 0 && Character.isHighSurrogate(value.charAt(shared - 1))) {
+                    shared--;
+                }
+            }
+            writeVarLong(out, shared);
+            writeBytes(out, value.substring(shared).getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public String read(String previous, DataInput in) throws IOException {
+            long shared = readVarLong(in);
+            int previousLength = previous == null ? 0 : previous.length();
+            if (shared < 0 || shared > previousLength) {
+                throw new IOException("Shared prefix of " + shared + " chars after a key of " + previousLength);
+            }
+            String suffix = new String(readBytes(in), StandardCharsets.UTF_8);
+            return shared == 0 ? suffix : previous.substring(0, (int) shared).concat(suffix);
+        }
+    };
+
+    /**
+     * Long values, as zig-zag varints. Values must not be null.
+     */
+    public static final Codec<Long> LONG = new Codec<Long>() {
+        @Override
+        public void write(Long previous, Long value, DataOutput out) throws IOException {
+            writeVarLong(out, zigZag(value));
+        }
+
+        @Override
+        public Long read(Long previous, DataInput in) throws IOException {
+            return unZigZag(readVarLong(in));
+        }
+    };
+
+    /**
+     * Integer values, as zig-zag varints. Values must not be null.
+     */
+    public static final Codec<Integer> INTEGER = new Codec<Integer>() {
+        @Override
+        public void write(Integer previous, Integer value, DataOutput out) throws IOException {
+            writeVarLong(out, zigZag(value));
+        }
+
+        @Override
+        public Integer read(Integer previous, DataInput in) throws IOException {
+            return (int) unZigZag(readVarLong(in));
+        }
+    };
+
+    /**
+     * String values, or null, as UTF-8 bytes.
+     */
+    public static final Codec<String> STRING = new Codec<String>() {
+        @Override
+        public void write(String previous, String value, DataOutput out) throws IOException {
+            writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public String read(String previous, DataInput in) throws IOException {
+            byte[] bytes = readBytes(in);
+            return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * byte[] values, or null.
+     */
+    public static final Codec<byte[]> BYTES = new Codec<byte[]>() {
+        @Override
+        public void write(byte[] previous, byte[] value, DataOutput out) throws IOException {
+            writeBytes(out, value);
+        }
+
+        @Override
+        public byte[] read(byte[] previous, DataInput in) throws IOException {
+            return readBytes(in);
+        }
+    };
+
+    /**
+     * Writes an unsigned variable-length integer, seven bits to a byte, low bits first.
+     * @param out where to write it
+     * @param value the value, taken as unsigned
+     * @throws IOException if out cannot be written
+     */
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * Reads an unsigned variable-length integer written by writeVarLong.
+     * @param in where to read it from
+     * @return the value
+     * @throws IOException if in cannot be read or the integer is longer than 64 bits
+     */
+    public static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Writes a byte array or null as its length plus one, then its bytes.
+     */
+    private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        long length = readVarLong(in);
+        if (length == 0) {
+            return null;
+        }
+        if (length < 0 || length - 1 > Integer.MAX_VALUE - 8) {
+            throw new IOException("Malformed length " + length);
+        }
+        byte[] bytes = new byte[(int) (length - 1)];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,361 @@
+package rbtree;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+/**
+ * A thread-safe red black tree for workloads that read far more than they
+ * write. It guards an RBTree with a StampedLock: writers take the write lock,
+ * and point reads first walk the tree without any lock at all, then check that
+ * no writer ran in the meantime, and only take the read lock if one did.
+ * <p>
+ * A lock-free walk can see the tree half-way through a rotation, so it may
+ * chase a stale link, throw, or go round in circles. None of that escapes: a
+ * walk is cut off after MAX_OPTIMISTIC_STEPS nodes, any exception it throws is
+ * dropped, and in both cases, as when the stamp fails to validate, the read is
+ * done again under the read lock. Nothing read without the lock is returned
+ * unless the stamp validates afterwards.
+ * <p>
+ * There are no live iterators. forEachInRange holds the read lock for the
+ * whole scan, so it sees one consistent state of the tree and holds writers
+ * off until it returns; its action must not modify this tree, since the lock is
+ * not reentrant. nextBatch copies a bounded run of entries under the read
+ * lock; each batch is consistent on its own, but a scan made of several
+ * batches is weakly consistent and may or may not see updates made between
+ * batches.
+ * @param <K> the data type of the key for the nodes in the red black tree
+ * @param <V> the data type of the data stored in each node in the red black tree
+ */
+public class ConcurrentRBTree<K,V> {
+
+    /**
+     * The most nodes a lock-free walk visits before it gives up and takes the read lock. A red
+     * black tree of up to 2^31 nodes is at most 62 nodes deep, so only a walk led astray by a
+     * writer gets this far.
+     */
+    static final int MAX_OPTIMISTIC_STEPS = 128;
+
+    //returned by optimisticSearch, through retry, when the walk was cut off
+    private static final RBNode<Object,Object> RETRY = new RBNode<Object,Object>(null, null, Color.Black);
+
+    //replaced only under the write lock, by ShardedRBTree moving nodes between shards
+    private RBTree<K,V> tree;
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * A new empty tree
+     */
+    public ConcurrentRBTree() {
+        this(new RBTree<K,V>());
+    }
+
+    /**
+     * A tree guarding an existing tree, which must not be used directly afterwards.
+     * @param tree the tree to guard
+     */
+    public ConcurrentRBTree(RBTree<K,V> tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * The value of the node with key key.
+     * @param key The key of the node
+     * @return The data of the node with key key, or null if there is none
+     */
+    public V get(K key) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                RBNode<K,V> node = this.optimisticSearch(key);
+                if (node != this.retry()) {
+                    V value = node == null ? null : node.getValue();
+                    if (lock.validate(stamp)) {
+                        return value;
+                    }
+                }
+            } catch (RuntimeException e) {
+                //a writer moved the nodes under the walk; retry under the read lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            RBNode<K,V> node = tree.search(key);
+            return node == null ? null : node.getValue();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Checks if the tree has a node with key key.
+     * @param key the key to look for
+     * @return true if a node has key key
+     */
+    public boolean containsKey(K key) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                RBNode<K,V> node = this.optimisticSearch(key);
+                if (node != this.retry() && lock.validate(stamp)) {
+                    return node != null;
+                }
+            } catch (RuntimeException e) {
+                //a writer moved the nodes under the walk; retry under the read lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return tree.search(key) != null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * The smallest key in the tree.
+     * @return the smallest key, or null if the tree is empty
+     */
+    public K firstKey() {
+        return this.edgeKey(true);
+    }
+
+    /**
+     * The largest key in the tree.
+     * @return the largest key, or null if the tree is empty
+     */
+    public K lastKey() {
+        return this.edgeKey(false);
+    }
+
+    /**
+     * The number of nodes in the tree.
+     * @return the number of nodes in the tree
+     */
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int size = tree.size();
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                size = tree.size();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Checks if the tree has no nodes.
+     * @return true if the tree is empty
+     */
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    /**
+     * Insert a node with a key of value key and data with the value value.
+     * @param key The key of the new node
+     * @param value The data the new node contains
+     * @return true if the node was inserted, false if a node with key key already exists
+     */
+    public boolean insertNode(K key, V value) {
+        long stamp = lock.writeLock();
+        try {
+            return tree.insertNode(key, value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Associates value with key, replacing the value of an existing node with an identical key.
+     * @param key The key of the node
+     * @param value The data the node should contain
+     * @return The previous value of the node with key key, or null if no such node existed
+     */
+    public V put(K key, V value) {
+        long stamp = lock.writeLock();
+        try {
+            return tree.put(key, value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Insert a node with key key and data value only if no node with an identical key exists.
+     * @param key The key of the new node
+     * @param value The data the new node contains
+     * @return The value of the existing node with key key, or null if the new node was inserted
+     */
+    public V putIfAbsent(K key, V value) {
+        long stamp = lock.writeLock();
+        try {
+            return tree.putIfAbsent(key, value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Delete a node from the red black tree with the key key
+     * @param key the key that is contained in the node you wish to delete from in the tree
+     * @return true if a node was deleted, false if no node has key key
+     */
+    public boolean deleteNode(K key) {
+        long stamp = lock.writeLock();
+        try {
+            return tree.deleteNode(key);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes every node from the tree.
+     */
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            tree.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Hands every entry with a key from lo to hi, both inclusive, to action in key order, holding
+     * the read lock throughout. action must not modify this tree.
+     * @param lo the smallest key to visit, or null for no lower bound
+     * @param hi the largest key to visit, or null for no upper bound
+     * @param action called with the key and value of each entry
+     */
+    public void forEachInRange(K lo, K hi, BiConsumer<? super K, ? super V> action) {
+        long stamp = lock.readLock();
+        try {
+            RBNode<K,V> node = lo == null ? tree.firstNode() : tree.above(lo, true);
+            while (node != null && (hi == null || tree.compare(node.getKey(), hi) <= 0)) {
+                action.accept(node.getKey(), node.getValue());
+                node = tree.successor(node);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Copies up to max entries in key order, starting after from, under the read lock. Passing
+     * the last key of one batch, not inclusive, to the next call continues a scan.
+     * @param from the key to start at, or null to start at the smallest key
+     * @param inclusive whether an entry with key from may be copied
+     * @param max the most entries to copy
+     * @return the entries, as immutable copies; fewer than max only at the end of the tree
+     */
+    public List<Map.Entry<K,V>> nextBatch(K from, boolean inclusive, int max) {
+        List<Map.Entry<K,V>> batch = new ArrayList<Map.Entry<K,V>>(Math.min(max, 1024));
+        long stamp = lock.readLock();
+        try {
+            RBNode<K,V> node = from == null ? tree.firstNode() : tree.above(from, inclusive);
+            while (node != null && batch.size() < max) {
+                batch.add(new AbstractMap.SimpleImmutableEntry<K,V>(node.getKey(), node.getValue()));
+                node = tree.successor(node);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return batch;
+    }
+
+    /**
+     * The lock guarding the tree, for callers in the package that must act on several trees at once.
+     * @return the lock
+     */
+    StampedLock lock() {
+        return lock;
+    }
+
+    /**
+     * The guarded tree. Callers must hold the lock.
+     * @return the tree
+     */
+    RBTree<K,V> tree() {
+        return tree;
+    }
+
+    /**
+     * Replaces the guarded tree. Callers must hold the write lock.
+     * @param tree the new tree
+     */
+    void setTree(RBTree<K,V> tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * Searches for key without a lock, giving up after MAX_OPTIMISTIC_STEPS nodes. The result is
+     * only meaningful if the stamp it was read under still validates.
+     * @param key the key to search for
+     * @return the node with key key, null if there is none, or retry() if the walk was cut off
+     */
+    private RBNode<K,V> optimisticSearch(K key) {
+        //order the walk as the tree orders its keys, which may be by a comparator
+        RBTree<K,V> walked = tree;
+        RBNode<K,V> traverse = walked.rootNode();
+        for (int steps = 0; steps < MAX_OPTIMISTIC_STEPS; steps++) {
+            K traverseKey = traverse.getKey();
+            if (traverseKey == null) {
+                return null;
+            }
+            int compare = walked.compare(key, traverseKey);
+            if (compare == 0) {
+                return traverse;
+            }
+            traverse = compare < 0 ? traverse.getLeftChild() : traverse.getRightChild();
+        }
+        return this.retry();
+    }
+
+    /**
+     * RETRY as a node of this tree's types, safe as it holds nothing and is only compared by
+     * identity.
+     */
+    @SuppressWarnings("unchecked")
+    private RBNode<K,V> retry() {
+        return (RBNode<K,V>) (RBNode<?,?>) RETRY;
+    }
+
+    /**
+     * The smallest or largest key, read without a lock if no writer gets in the way.
+     * @param smallest true for the smallest key, false for the largest
+     * @return the key, or null if the tree is empty
+     */
+    private K edgeKey(boolean smallest) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                RBNode<K,V> traverse = tree.rootNode();
+                K key = null;
+                for (int steps = 0; steps < MAX_OPTIMISTIC_STEPS && traverse.getKey() != null; steps++) {
+                    key = traverse.getKey();
+                    traverse = smallest ? traverse.getLeftChild() : traverse.getRightChild();
+                }
+                if (traverse.getKey() == null && lock.validate(stamp)) {
+                    return key;
+                }
+            } catch (RuntimeException e) {
+                //a writer moved the nodes under the walk; retry under the read lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            RBNode<K,V> node = smallest ? tree.firstNode() : tree.lastNode();
+            return node == null ? null : node.getKey();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package rbtree;
+
+import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks at deadlines, for services holding many timers or session
+ * expirations. The pending timers are the keys of an RBTree ordered by
+ * deadline. A single daemon thread sleeps until the earliest deadline, cuts
+ * every timer that is due off the front of the tree with one
+ * RBTree.removeHeadUntil, and hands their tasks to an Executor, so a burst of
+ * timers falling due together costs one split rather than a search and a
+ * delete for each. Scheduling and cancelling a timer cost O(log n).
+ * <p>
+ * Tasks run on the executor, never on the scheduler's thread, so a slow task
+ * does not hold up the others. A task the executor rejects is reported to the
+ * uncaught exception handler of the scheduler's thread and dropped, and the
+ * scheduler carries on with the others. withVirtualThreads runs each task on
+ * a virtual thread of its own where the Java runtime has them.
+ */
+public class DeadlineScheduler implements Closeable {
+
+    //the pending timers, each mapped to its task; guarded by this
+    private final RBTree<Timer,Runnable> timers = new RBTree<Timer,Runnable>();
+    private final Executor executor;
+    //shut down by close if the scheduler created it
+    private final ExecutorService ownedExecutor;
+    private final Thread dispatcher;
+    //orders timers with equal deadlines by when they were scheduled; guarded by this
+    private long scheduled;
+    private boolean closed;
+
+    private DeadlineScheduler(Executor executor, ExecutorService ownedExecutor) {
+        this.executor = executor;
+        this.ownedExecutor = ownedExecutor;
+        this.dispatcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                DeadlineScheduler.this.dispatchLoop();
+            }
+        }, "rbtree-deadline-scheduler");
+        this.dispatcher.setDaemon(true);
+    }
+
+    /**
+     * Starts a scheduler running its tasks on executor, which close leaves running.
+     * @param executor runs the tasks that fall due
+     * @return the scheduler
+     */
+    public static DeadlineScheduler start(Executor executor) {
+        DeadlineScheduler scheduler = new DeadlineScheduler(executor, null);
+        scheduler.dispatcher.start();
+        return scheduler;
+    }
+
+    /**
+     * Starts a scheduler running every task on a virtual thread of its own, or, on a Java runtime
+     * without virtual threads, on a cached pool of daemon threads. close shuts the executor down.
+     * @return the scheduler
+     */
+    public static DeadlineScheduler withVirtualThreads() {
+        ExecutorService executor = virtualThreadExecutor();
+        DeadlineScheduler scheduler = new DeadlineScheduler(executor, executor);
+        scheduler.dispatcher.start();
+        return scheduler;
+    }
+
+    /**
+     * Executors.newVirtualThreadPerTaskExecutor, looked up by reflection so this compiles for and
+     * runs on runtimes that predate it.
+     */
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            //no virtual threads, or they are a preview feature that is not enabled
+            return Executors.newCachedThreadPool(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "rbtree-deadline-task");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs task once delay has passed.
+     * @param task the task to run
+     * @param delay how long to wait, 0 or less to run it as soon as possible
+     * @param unit the unit of delay
+     * @return the timer, which can cancel the task until it falls due
+     * @throws IllegalStateException if the scheduler is closed
+     */
+    public synchronized Timer schedule(Runnable task, long delay, TimeUnit unit) {
+        if (closed) {
+            throw new IllegalStateException("Scheduler is closed");
+        }
+        long now = System.nanoTime();
+        long nanos = unit.toNanos(Math.max(0, delay));
+        if (nanos >= (Long.MAX_VALUE >> 1)) {
+            //keep every deadline within Long.MAX_VALUE of an overdue first one, as
+            //ScheduledThreadPoolExecutor does, so compareTo's differences cannot overflow
+            RBNode<Timer,Runnable> first = timers.firstNode();
+            if (first != null) {
+                long firstDelay = first.getKey().deadline - now;
+                if (firstDelay < 0 && nanos - firstDelay < 0) {
+                    nanos = Long.MAX_VALUE + firstDelay;
+                }
+            }
+        }
+        Timer timer = new Timer(this, now + nanos, ++scheduled);
+        timers.insertNode(timer, task);
+        if (timers.firstNode().getKey() == timer) {
+            //the dispatcher is sleeping until a later deadline
+            this.notifyAll();
+        }
+        return timer;
+    }
+
+    /**
+     * The number of timers not yet due or cancelled.
+     * @return the number of pending timers
+     */
+    public synchronized int size() {
+        return timers.size();
+    }
+
+    private synchronized boolean cancel(Timer timer) {
+        return timers.deleteNode(timer);
+    }
+
+    /**
+     * Stops the scheduler and drops every pending timer. Tasks already handed to the executor
+     * keep running.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            timers.clear();
+            this.notifyAll();
+        }
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (ownedExecutor != null) {
+            ownedExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Checks if no more tasks can run: the scheduler is closed or the executor it owns is shut down.
+     */
+    private synchronized boolean stopped() {
+        return closed || (ownedExecutor != null && ownedExecutor.isShutdown());
+    }
+
+    /**
+     * The dispatcher thread: waits for the earliest deadline, then takes every timer that is due
+     * in one split and runs their tasks.
+     */
+    @SuppressWarnings("unchecked")
+    private void dispatchLoop() {
+        while (true) {
+            RBTree<Timer,Runnable> due;
+            synchronized (this) {
+                long now;
+                while (true) {
+                    if (closed) {
+                        return;
+                    }
+                    RBNode<Timer,Runnable> first = timers.firstNode();
+                    now = System.nanoTime();
+                    try {
+                        if (first == null) {
+                            this.wait();
+                        } else if (first.getKey().deadline - now > 0) {
+                            TimeUnit.NANOSECONDS.timedWait(this, first.getKey().deadline - now);
+                        } else {
+                            break;
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                //sorts after every timer due by now
+                due = timers.removeHeadUntil(new Timer(null, now, Long.MAX_VALUE));
+            }
+            ThreadedInorderTreeIterator nodes = due.threadedInorderTraverse();
+            while (nodes.hasMore()) {
+                try {
+                    executor.execute(((RBNode<Timer,Runnable>) nodes.next()).getValue());
+                } catch (RejectedExecutionException e) {
+                    if (this.stopped()) {
+                        return;
+                    }
+                    //a saturated executor drops this task only; report it and run the rest
+                    Thread current = Thread.currentThread();
+                    current.getUncaughtExceptionHandler().uncaughtException(current, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A scheduled task, ordered by deadline and then by when it was scheduled.
+     */
+    public static final class Timer implements Comparable<Timer> {
+        private final DeadlineScheduler scheduler;
+        //in System.nanoTime terms
+        private final long deadline;
+        private final long sequence;
+
+        private Timer(DeadlineScheduler scheduler, long deadline, long sequence) {
+            this.scheduler = scheduler;
+            this.deadline = deadline;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Cancels the task if it has not fallen due.
+         * @return true if the task was cancelled, false if it has fallen due or was already cancelled
+         */
+        public boolean cancel() {
+            return scheduler.cancel(this);
+        }
+
+        /**
+         * The time left until the deadline.
+         * @param unit the unit of the result
+         * @return the time left, negative once the deadline has passed
+         */
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Timer other) {
+            //compare the difference, as System.nanoTime values may wrap around
+            long difference = deadline - other.deadline;
+            if (difference != 0) {
+                return difference < 0 ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
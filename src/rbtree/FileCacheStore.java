@@ -0,0 +1,197 @@
+package rbtree;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A CacheStore kept in one local file, standing in for a slower store behind an
+ * RBTreeCache. Every batch the cache writes is appended to the end of the file
+ * with a single write, so the file only ever grows sequentially, and an
+ * RBTree in memory maps every key to the offset of its latest record, so a
+ * load is one positional read.
+ * <p>
+ * Each record is framed as its length and its bytes: an operation code, the
+ * key and, for a put, the value, written by the codecs given with no previous
+ * value, so that every record can be read on its own. On open the file is
+ * scanned to rebuild the offsets, and a torn record at the end is cut off. The
+ * file is never compacted.
+ * @param <K> the data type of the keys
+ * @param <V> the data type of the values
+ */
+public class FileCacheStore<K,V> implements CacheStore<K,V>, Closeable {
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    //a record larger than this cannot be valid, so it is taken as corruption
+    private static final int MAX_RECORD_BYTES = 1 << 28;
+
+    private final FileChannel file;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    //the offset of the latest record of every key that has a value; guarded by this
+    private final RBTree<K,Long> offsets;
+    private long end;
+
+    private FileCacheStore(FileChannel file, Codec<K> keyCodec, Codec<V> valueCodec,
+            RBTree<K,Long> offsets, long end) {
+        this.file = file;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.offsets = offsets;
+        this.end = end;
+    }
+
+    /**
+     * Opens a store kept in file, creating the file if it does not exist.
+     * @param <K> the data type of the keys
+     * @param <V> the data type of the values
+     * @param file the file holding the store
+     * @param keyCodec writes and reads the keys
+     * @param valueCodec writes and reads the values
+     * @param comparator the order of the keys, or null for their natural order
+     * @return the store
+     * @throws IOException if the file cannot be read or holds an unknown record
+     */
+    public static <K,V> FileCacheStore<K,V> open(File file, Codec<K> keyCodec, Codec<V> valueCodec,
+            Comparator<? super K> comparator) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            RBTree<K,Long> offsets = new RBTree<K,Long>(comparator);
+            long end = scan(channel, offsets, keyCodec);
+            //cut off a torn tail so new records follow the last whole one
+            channel.truncate(end);
+            return new FileCacheStore<K,V>(channel, keyCodec, valueCodec, offsets, end);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Records the offset of every whole record of the file in offsets.
+     * @return the offset just past the last whole record
+     */
+    private static <K> long scan(FileChannel channel, RBTree<K,Long> offsets, Codec<K> keyCodec) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(0)), 1 << 16));
+        long end = 0;
+        while (true) {
+            byte[] record;
+            try {
+                int length = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    return end;
+                }
+                record = new byte[length];
+                in.readFully(record);
+            } catch (EOFException e) {
+                return end;
+            }
+            DataInputStream fields = new DataInputStream(new ByteArrayInputStream(record));
+            byte op = fields.readByte();
+            K key = keyCodec.read(null, fields);
+            if (op == PUT) {
+                offsets.put(key, end);
+            } else if (op == DELETE) {
+                offsets.deleteNode(key);
+            } else {
+                throw new IOException("Unknown operation " + op + " at offset " + end);
+            }
+            end += 4 + record.length;
+        }
+    }
+
+    /**
+     * The number of keys with a value.
+     * @return the number of keys in the store
+     */
+    public synchronized int size() {
+        return offsets.size();
+    }
+
+    @Override
+    public synchronized V load(K key) throws IOException {
+        RBNode<K,Long> node = offsets.search(key);
+        if (node == null) {
+            return null;
+        }
+        long offset = node.getValue();
+        ByteBuffer length = ByteBuffer.allocate(4);
+        this.readFully(length, offset);
+        ByteBuffer record = ByteBuffer.allocate(length.getInt(0));
+        this.readFully(record, offset + 4);
+        DataInputStream fields = new DataInputStream(new ByteArrayInputStream(record.array()));
+        fields.readByte();
+        keyCodec.read(null, fields);
+        return valueCodec.read(null, fields);
+    }
+
+    /**
+     * Appends the batch to the file with one write and then points the offsets of its keys at
+     * their new records, finding each key from the one before it.
+     */
+    @Override
+    public synchronized void writeAll(List<Map.Entry<K,V>> entries) throws IOException {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream(1 << 16);
+        ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        DataOutputStream framesOut = new DataOutputStream(frames);
+        DataOutputStream recordOut = new DataOutputStream(record);
+        List<Map.Entry<K,Long>> puts = new ArrayList<Map.Entry<K,Long>>();
+        List<K> deletes = new ArrayList<K>();
+        for (Map.Entry<K,V> entry : entries) {
+            record.reset();
+            if (entry.getValue() == null) {
+                recordOut.writeByte(DELETE);
+                keyCodec.write(null, entry.getKey(), recordOut);
+                deletes.add(entry.getKey());
+            } else {
+                recordOut.writeByte(PUT);
+                keyCodec.write(null, entry.getKey(), recordOut);
+                valueCodec.write(null, entry.getValue(), recordOut);
+                puts.add(new AbstractMap.SimpleImmutableEntry<K,Long>(entry.getKey(), end + frames.size()));
+            }
+            framesOut.writeInt(record.size());
+            record.writeTo(framesOut);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(frames.toByteArray());
+        long position = end;
+        while (buffer.hasRemaining()) {
+            position += file.write(buffer, position);
+        }
+        end = position;
+        offsets.insertAll(puts.iterator());
+        offsets.deleteAll(deletes.iterator());
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = file.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Record at offset " + position + " runs past the end of the file");
+            }
+            position += read;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+}
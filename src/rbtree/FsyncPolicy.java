@@ -0,0 +1,21 @@
+package rbtree;
+
+/**
+ * When a JournaledRBTree forces its log to disk.
+ */
+public enum FsyncPolicy {
+    /**
+     * Every mutation waits until its record is on disk. Mutations from several threads that
+     * arrive together share one fsync.
+     */
+    PER_OP,
+    /**
+     * The log is forced at most once per interval; a crash can lose the mutations of the last
+     * interval.
+     */
+    INTERVAL,
+    /**
+     * The log is only forced by snapshot and close; the operating system decides the rest.
+     */
+    NEVER;
+}
@@ -5,8 +5,6 @@
  */
 package rbtree;
 
-import java.util.Stack;
-
 /**
  * An iterator that traverses a tree in order
  *
@@ -14,7 +12,7 @@ import java.util.Stack;
  */
 public class InorderTreeIterator implements TreeIterator {
 
-    private Stack<Node> traversalStack;
+    private final NodeStack traversalStack;
 
     /**
      * Constructor with one perimeter
@@ -22,7 +20,7 @@ public class InorderTreeIterator implements TreeIterator {
      * @param root the root node of the tree
      */
     public InorderTreeIterator(Node root) {
-        traversalStack = new Stack<Node>();
+        traversalStack = new NodeStack(root);
         leftMostLeafPath(root);
     }
 
@@ -46,7 +44,7 @@ public class InorderTreeIterator implements TreeIterator {
      */
     @Override
     public boolean hasMore() {
-        return !traversalStack.empty();
+        return !traversalStack.isEmpty();
     }
 
     /**
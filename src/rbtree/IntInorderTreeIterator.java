@@ -0,0 +1,48 @@
+package rbtree;
+
+/**
+ * An iterator that traverses a IntRBTree in order. Like
+ * ThreadedInorderTreeIterator it keeps only the next node and finds the one
+ * after it through the parent pointers, so it needs no stack.
+ * @param <V> the data type of the data stored in each node in the red black tree
+ */
+public class IntInorderTreeIterator<V> {
+
+    private final IntRBTree<V> tree;
+    private IntRBNode<V> nextNode;
+
+    /**
+     * Constructor with two parameters
+     *
+     * @param tree the tree to traverse
+     * @param start the first node to return, or null for an empty traversal
+     */
+    IntInorderTreeIterator(IntRBTree<V> tree, IntRBNode<V> start) {
+        this.tree = tree;
+        this.nextNode = start;
+    }
+
+    /**
+     * Checks if there are any more nodes to traverse to
+     *
+     * @return Returns true if there are more nodes to traverse to. Returns
+     * false if there are no more nodes to traverse to
+     */
+    public boolean hasMore() {
+        return nextNode != null;
+    }
+
+    /**
+     * Retrieves the next node in the in order traversal
+     *
+     * @return The next node in the in order traversal, or if there are no more
+     * nodes to traverse to, it returns null
+     */
+    public IntRBNode<V> next() {
+        IntRBNode<V> returnNode = nextNode;
+        if (returnNode != null) {
+            nextNode = tree.successor(returnNode);
+        }
+        return returnNode;
+    }
+}
@@ -0,0 +1,122 @@
+package rbtree;
+
+/**
+ * A node of an IntRBTree. It contains a pointer to its parent, left child, and
+ * right child, a primitive int key and a value. The key is stored unboxed, so
+ * comparing it costs no Comparable dispatch and storing it costs no Integer.
+ * @param <V> The data type of the value or data.
+ */
+public class IntRBNode<V> {
+    private IntRBNode<V> parent, left, right;
+    private int key;
+    private V value;
+    private Color color;
+
+    /**
+     * Constructor for the node with three arguments.
+     * @param key The key of the node. Used to compare with keys of other nodes.
+     * @param value The data with data type of <V>.
+     * @param color The color of the node. Can be either Color.Black or Color.Red
+     */
+    public IntRBNode(int key, V value, Color color) {
+        this.key = key;
+        this.value = value;
+        this.color = color;
+    }
+
+    /**
+     * Setter for the parent node.
+     * @param newParent The parent node for this node.
+     */
+    public void setParent(IntRBNode<V> newParent) {
+        this.parent = newParent;
+    }
+
+    /**
+     * Setter for the left child.
+     * @param newChild The left child node for this node.
+     */
+    public void setLeftChild(IntRBNode<V> newChild) {
+        this.left = newChild;
+    }
+
+    /**
+     * Setter for the right child.
+     * @param newChild The right child node for this node.
+     */
+    public void setRightChild(IntRBNode<V> newChild) {
+        this.right = newChild;
+    }
+
+    /**
+     * Setter for the color
+     * @param newColor One of the Color enum. The color of this node.
+     */
+    public void setColor(Color newColor) {
+        this.color = newColor;
+    }
+
+    /**
+     * Setter for the key.
+     * @param newKey The new key.
+     */
+    public void setKey(int newKey) {
+        this.key = newKey;
+    }
+
+    /**
+     * Setter for the value or data.
+     * @param newValue The new value of type <V>
+     */
+    public void setValue(V newValue) {
+        this.value = newValue;
+    }
+
+    /**
+     * Getter for the parent node
+     * @return The node of the parent to this node.
+     */
+    public IntRBNode<V> getParent() {
+        return this.parent;
+    }
+
+    /**
+     * Getter for the left child node.
+     * @return The node to the left child for this node.
+     */
+    public IntRBNode<V> getLeftChild() {
+        return this.left;
+    }
+
+    /**
+     * Getter for the right child node.
+     * @return The node to the right child of this node.
+     */
+    public IntRBNode<V> getRightChild() {
+        return this.right;
+    }
+
+    /**
+     * Getter for the color.
+     * @return The color of type Color.
+     */
+    public Color getColor() {
+        return this.color;
+    }
+
+    /**
+     * Getter for the key.
+     * @return The key of this node
+     */
+    public int getKey() {
+        return this.key;
+    }
+
+    /**
+     * Getter for the value
+     * @return The data value of data type <V>
+     */
+    public V getValue() {
+        return this.value;
+    }
+}
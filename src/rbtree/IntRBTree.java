@@ -0,0 +1,487 @@
+package rbtree;
+
+/**
+ * Red Black Tree keyed by primitive ints, with the same insert, delete and
+ * re-balancing logic as RBTree. Keys are compared with &lt; and &gt; instead of
+ * compareTo, and are never boxed, so searches make no virtual calls and
+ * inserts allocate nothing but the node.
+ * @param <V> the data type of the data stored in each node in the red black tree
+ */
+public class IntRBTree<V> {
+
+    private final IntRBNode<V> nil = new IntRBNode<V>(0, null, Color.Black);
+    private IntRBNode<V> root;
+    private int size;
+
+    /**
+     * A new empty red black tree
+     */
+    public IntRBTree() {
+        root = nil;
+    }
+
+    /**
+     * The number of nodes in the tree.
+     * @return the number of nodes in the tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Removes every node from the tree.
+     */
+    public void clear() {
+        root = nil;
+        size = 0;
+    }
+
+    /**
+     * Searches the red black tree for node with the key key.
+     * @param key The key of the node you wish to search for.
+     * @return The Node with key key, or if there is no node with identical key,
+     * null is returned
+     */
+    public IntRBNode<V> search(int key) {
+        IntRBNode<V> traverse = root;
+        while (traverse != nil) {
+            int traverseKey = traverse.getKey();
+            if (key < traverseKey) {
+                traverse = traverse.getLeftChild();
+            } else if (key > traverseKey) {
+                traverse = traverse.getRightChild();
+            } else {
+                return traverse;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The value of the node with key key.
+     * @param key The key of the node
+     * @return The data of the node with key key, or null if there is none
+     */
+    public V get(int key) {
+        IntRBNode<V> node = this.search(key);
+        return node == null ? null : node.getValue();
+    }
+
+    /**
+     * Find the node with the smallest key in the tree.
+     * @return the node with the smallest key, or null if the tree is empty
+     */
+    public IntRBNode<V> first() {
+        return root == nil ? null : this.minimum(root);
+    }
+
+    /**
+     * Find the node with the largest key in the tree.
+     * @return the node with the largest key, or null if the tree is empty
+     */
+    public IntRBNode<V> last() {
+        return root == nil ? null : this.maximum(root);
+    }
+
+    /**
+     * Find the node with the minimum key at sub-tree with root of tree
+     * @param tree The root node of the tree you wish to find the minimum of
+     * @return the Node with the minimum key in the sub-tree
+     */
+    public IntRBNode<V> minimum(IntRBNode<V> tree) {
+        IntRBNode<V> traverse = tree;
+        while (traverse.getLeftChild() != nil) {
+            traverse = traverse.getLeftChild();
+        }
+        return traverse;
+    }
+
+    /**
+     * Find the node with the maximum key at sub-tree with root of tree
+     * @param tree The root node of the tree you wish to find the maximum of
+     * @return the Node with the maximum key in the sub-tree
+     */
+    public IntRBNode<V> maximum(IntRBNode<V> tree) {
+        IntRBNode<V> traverse = tree;
+        while (traverse.getRightChild() != nil) {
+            traverse = traverse.getRightChild();
+        }
+        return traverse;
+    }
+
+    /**
+     * Find the Node with the key that has the smallest key larger than the key of nodeToFind
+     * @param nodeToFind The node you wish to find the successor of
+     * @return The successor, or null if a successor does not exist
+     */
+    public IntRBNode<V> successor(IntRBNode<V> nodeToFind) {
+        IntRBNode<V> traverse = nodeToFind;
+        if (traverse.getRightChild() != nil) {
+            return this.minimum(traverse.getRightChild());
+        }
+        IntRBNode<V> parent = traverse.getParent();
+        while (parent != null && traverse == parent.getRightChild()) {
+            traverse = parent;
+            parent = traverse.getParent();
+        }
+        return parent;
+    }
+
+    /**
+     * Find the Node with the key that has the largest key smaller than the key of nodeToFind
+     * @param nodeToFind The node you wish to find the predecessor of
+     * @return The predecessor, or null if a predecessor does not exist
+     */
+    public IntRBNode<V> predecessor(IntRBNode<V> nodeToFind) {
+        IntRBNode<V> traverse = nodeToFind;
+        if (traverse.getLeftChild() != nil) {
+            return this.maximum(traverse.getLeftChild());
+        }
+        IntRBNode<V> parent = traverse.getParent();
+        while (parent != null && traverse == parent.getLeftChild()) {
+            traverse = parent;
+            parent = traverse.getParent();
+        }
+        return parent;
+    }
+
+    /**
+     * Find the node with the largest key smaller than or equal to key.
+     * @param key the key to search below
+     * @return the node with the largest key &lt;= key, or null if there is none
+     */
+    public IntRBNode<V> floor(int key) {
+        IntRBNode<V> traverse = root;
+        IntRBNode<V> best = null;
+        while (traverse != nil) {
+            int traverseKey = traverse.getKey();
+            if (key < traverseKey) {
+                traverse = traverse.getLeftChild();
+            } else if (key > traverseKey) {
+                best = traverse;
+                traverse = traverse.getRightChild();
+            } else {
+                return traverse;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Find the node with the smallest key larger than or equal to key.
+     * @param key the key to search above
+     * @return the node with the smallest key &gt;= key, or null if there is none
+     */
+    public IntRBNode<V> ceiling(int key) {
+        IntRBNode<V> traverse = root;
+        IntRBNode<V> best = null;
+        while (traverse != nil) {
+            int traverseKey = traverse.getKey();
+            if (key < traverseKey) {
+                best = traverse;
+                traverse = traverse.getLeftChild();
+            } else if (key > traverseKey) {
+                traverse = traverse.getRightChild();
+            } else {
+                return traverse;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Insert a node with a key of value key and data with the value value.
+     * @param key The key of the new node
+     * @param value The data the new node contains
+     * @return true if the node was inserted, false if a node with key key already exists
+     */
+    public boolean insertNode(int key, V value) {
+        IntRBNode<V> slot = this.descend(key);
+        if (slot != nil && slot.getKey() == key) {
+            return false;
+        }
+        this.insert(slot, new IntRBNode<V>(key, value, Color.Red));
+        return true;
+    }
+
+    /**
+     * Associates value with key, replacing the value of an existing node with an identical key.
+     * @param key The key of the node
+     * @param value The data the node should contain
+     * @return The previous value of the node with key key, or null if no such node existed
+     */
+    public V put(int key, V value) {
+        IntRBNode<V> slot = this.descend(key);
+        if (slot != nil && slot.getKey() == key) {
+            V oldValue = slot.getValue();
+            slot.setValue(value);
+            return oldValue;
+        }
+        this.insert(slot, new IntRBNode<V>(key, value, Color.Red));
+        return null;
+    }
+
+    /**
+     * Delete a node from the red black tree with the key key
+     * @param key the key that is contained in the node you wish to delete from in the tree
+     * @return true if a node was deleted, false if no node has key key
+     */
+    public boolean deleteNode(int key) {
+        IntRBNode<V> remove = this.search(key);
+        if (remove == null) {
+            return false;
+        }
+        this.delete(remove);
+        return true;
+    }
+
+    /**
+     * Returns a iterator that performs an in order traversal
+     * @return IntInorderTreeIterator object that will perform an in order traversal
+     */
+    public IntInorderTreeIterator<V> inorderTraverse() {
+        return new IntInorderTreeIterator<V>(this, this.first());
+    }
+
+    /**
+     * Returns a iterator that resumes an in order traversal at a node of this tree
+     * @param start the first node the traversal returns
+     * @return IntInorderTreeIterator object that will perform an in order traversal from start
+     */
+    public IntInorderTreeIterator<V> inorderTraverseFrom(IntRBNode<V> start) {
+        return new IntInorderTreeIterator<V>(this, start);
+    }
+
+    /**
+     * Walks down the tree once looking for key.
+     * @param key The key to look for
+     * @return The node with key key if one exists, otherwise the node that would become the parent
+     * of a new node with key key, or nil if the tree is empty
+     */
+    private IntRBNode<V> descend(int key) {
+        IntRBNode<V> x = root;
+        IntRBNode<V> y = nil;
+        while (x != nil) {
+            y = x;
+            int xKey = x.getKey();
+            if (key < xKey) {
+                x = x.getLeftChild();
+            } else if (key > xKey) {
+                x = x.getRightChild();
+            } else {
+                return x;
+            }
+        }
+        return y;
+    }
+
+    /**
+     * Insert new node into the tree below the location found by descend and re-balance the tree
+     * @param y the node returned by descend for the key of newNode
+     * @param newNode the new red node to be inserted into the tree
+     */
+    private void insert(IntRBNode<V> y, IntRBNode<V> newNode) {
+        if (y == nil) {
+            root = newNode;
+        } else {
+            newNode.setParent(y);
+            if (newNode.getKey() < y.getKey()) {
+                y.setLeftChild(newNode);
+            } else {
+                y.setRightChild(newNode);
+            }
+        }
+        newNode.setLeftChild(nil);
+        newNode.setRightChild(nil);
+        size++;
+        this.insertFixUp(newNode);
+    }
+
+    /**
+     * Performs a left rotation on a sub-tree
+     * @param rotatePoint The node you wish to do a left rotation on
+     */
+    private void rotateLeft(IntRBNode<V> rotatePoint) {
+        IntRBNode<V> rightChild = rotatePoint.getRightChild();
+        IntRBNode<V> grandParent = rotatePoint.getParent();
+        rightChild.setParent(grandParent);
+        if (grandParent == null) {
+            root = rightChild;
+        } else if (grandParent.getLeftChild() == rotatePoint) {
+            grandParent.setLeftChild(rightChild);
+        } else {
+            grandParent.setRightChild(rightChild);
+        }
+        rotatePoint.setRightChild(rightChild.getLeftChild());
+        rightChild.getLeftChild().setParent(rotatePoint);
+        rightChild.setLeftChild(rotatePoint);
+        rotatePoint.setParent(rightChild);
+    }
+
+    /**
+     * Performs a right rotation on a sub-tree
+     * @param rotatePoint The node you wish to do a right rotation on
+     */
+    private void rotateRight(IntRBNode<V> rotatePoint) {
+        IntRBNode<V> leftChild = rotatePoint.getLeftChild();
+        IntRBNode<V> grandParent = rotatePoint.getParent();
+        leftChild.setParent(grandParent);
+        if (grandParent == null) {
+            root = leftChild;
+        } else if (grandParent.getLeftChild() == rotatePoint) {
+            grandParent.setLeftChild(leftChild);
+        } else {
+            grandParent.setRightChild(leftChild);
+        }
+        rotatePoint.setLeftChild(leftChild.getRightChild());
+        leftChild.getRightChild().setParent(rotatePoint);
+        leftChild.setRightChild(rotatePoint);
+        rotatePoint.setParent(leftChild);
+    }
+
+    /**
+     * Balance the tree after a new insertion
+     * @param insertedNode The node that was inserted
+     */
+    private void insertFixUp(IntRBNode<V> insertedNode) {
+        IntRBNode<V> uncle, grand, parent = insertedNode.getParent();
+        while (parent != null && parent.getColor() == Color.Red) {
+            grand = parent.getParent();
+            if (parent == grand.getLeftChild()) {
+                uncle = grand.getRightChild();
+                if (uncle.getColor() == Color.Red) {
+                    //if the uncle of insertedNode is red
+                    parent.setColor(Color.Black);
+                    uncle.setColor(Color.Black);
+                    grand.setColor(Color.Red);
+                    insertedNode = grand;
+                    parent = insertedNode.getParent();
+                } else {
+                    if (insertedNode == parent.getRightChild()) {
+                        //if insertedNode is the right child, make it a left child
+                        insertedNode = parent;
+                        this.rotateLeft(insertedNode);
+                        parent = insertedNode.getParent();
+                    }
+                    parent.setColor(Color.Black);
+                    grand.setColor(Color.Red);
+                    this.rotateRight(grand);
+                }
+            } else {
+                uncle = grand.getLeftChild();
+                if (uncle.getColor() == Color.Red) {
+                    //if the uncle of insertedNode is red
+                    parent.setColor(Color.Black);
+                    uncle.setColor(Color.Black);
+                    grand.setColor(Color.Red);
+                    insertedNode = grand;
+                    parent = insertedNode.getParent();
+                } else {
+                    if (insertedNode == parent.getLeftChild()) {
+                        //if insertedNode is the left child, make it a right child
+                        insertedNode = parent;
+                        this.rotateRight(insertedNode);
+                        parent = insertedNode.getParent();
+                    }
+                    parent.setColor(Color.Black);
+                    grand.setColor(Color.Red);
+                    this.rotateLeft(grand);
+                }
+            }
+        }
+        root.setColor(Color.Black);
+    }
+
+    /**
+     * Deletes a node from the tree and re-balances the tree
+     * @param remove the node you wish to remove from the tree
+     */
+    private void delete(IntRBNode<V> remove) {
+        IntRBNode<V> x, y;
+        //the node spliced out is remove itself, or its successor if remove has two children
+        if (remove.getLeftChild() == nil || remove.getRightChild() == nil) {
+            y = remove;
+        } else {
+            y = this.minimum(remove.getRightChild());
+        }
+        x = y.getLeftChild() != nil ? y.getLeftChild() : y.getRightChild();
+        //set the parents of x even if its a nil
+        x.setParent(y.getParent());
+        if (y.getParent() == null) {
+            root = x;
+        } else if (y == y.getParent().getLeftChild()) {
+            y.getParent().setLeftChild(x);
+        } else {
+            y.getParent().setRightChild(x);
+        }
+        if (y != remove) {
+            remove.setKey(y.getKey());
+            remove.setValue(y.getValue());
+        }
+        size--;
+        if (y.getColor() == Color.Black) {
+            this.deleteFixUp(x);
+        }
+    }
+
+    /**
+     * Re-balance the tree after a deletion
+     * @param childOfRemovedNode The node child of the node removed
+     */
+    private void deleteFixUp(IntRBNode<V> childOfRemovedNode) {
+        IntRBNode<V> parent, sibling;
+        while (childOfRemovedNode != root && childOfRemovedNode.getColor() == Color.Black) {
+            parent = childOfRemovedNode.getParent();
+            if (childOfRemovedNode == parent.getLeftChild()) {
+                sibling = parent.getRightChild();
+                if (sibling.getColor() == Color.Red) {
+                    parent.setColor(Color.Red);
+                    sibling.setColor(Color.Black);
+                    this.rotateLeft(parent);
+                    sibling = parent.getRightChild();
+                }
+                if (sibling.getLeftChild().getColor() == Color.Black && sibling.getRightChild().getColor() == Color.Black) {
+                    sibling.setColor(Color.Red);
+                    childOfRemovedNode = parent;
+                } else {
+                    if (sibling.getRightChild().getColor() == Color.Black) {
+                        sibling.setColor(Color.Red);
+                        sibling.getLeftChild().setColor(Color.Black);
+                        this.rotateRight(sibling);
+                        sibling = sibling.getParent();
+                    }
+                    sibling.setColor(parent.getColor());
+                    parent.setColor(Color.Black);
+                    sibling.getRightChild().setColor(Color.Black);
+                    this.rotateLeft(parent);
+                    childOfRemovedNode = root;
+                }
+            } else {
+                sibling = parent.getLeftChild();
+                if (sibling.getColor() == Color.Red) {
+                    parent.setColor(Color.Red);
+                    sibling.setColor(Color.Black);
+                    this.rotateRight(parent);
+                    sibling = parent.getLeftChild();
+                }
+                if (sibling.getLeftChild().getColor() == Color.Black && sibling.getRightChild().getColor() == Color.Black) {
+                    sibling.setColor(Color.Red);
+                    childOfRemovedNode = parent;
+                } else {
+                    if (sibling.getLeftChild().getColor() == Color.Black) {
+                        sibling.setColor(Color.Red);
+                        sibling.getRightChild().setColor(Color.Black);
+                        this.rotateLeft(sibling);
+                        sibling = sibling.getParent();
+                    }
+                    sibling.setColor(parent.getColor());
+                    parent.setColor(Color.Black);
+                    sibling.getLeftChild().setColor(Color.Black);
+                    this.rotateRight(parent);
+                    childOfRemovedNode = root;
+                }
+            }
+        }
+        childOfRemovedNode.setColor(Color.Black);
+    }
+}
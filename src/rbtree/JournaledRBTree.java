@@ -0,0 +1,589 @@
+package rbtree;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A red black tree whose mutations are recorded in a write-ahead log, so that
+ * it survives a crash. On open, the tree is restored from the last snapshot and
+ * the log written since is replayed over it.
+ * <p>
+ * A mutation is encoded, applied to the tree and queued for the log while
+ * holding the tree's lock, so the log holds the mutations in the order they
+ * were applied, and a key or value the codecs reject throws before the tree
+ * changes. A single writer thread drains the queue, writes the waiting records
+ * with one system call and forces the log according to the FsyncPolicy.
+ * Under PER_OP a mutation then waits, without holding the lock, until its record
+ * is on disk, so concurrent mutations are committed as a group; the other
+ * policies return as soon as the record is queued. A reader can see a mutation
+ * before it is durable.
+ * <p>
+ * Each log record is framed as its length, the CRC32 of its bytes, and the
+ * bytes: an operation code, the key and, for a put, the value, written by the
+ * codecs given. Replay stops at the first torn or corrupt record and cuts the
+ * log there. snapshot writes the whole tree with RBTree.writeTo, replaces the
+ * snapshot file, and then empties the log. If a crash leaves the log behind a
+ * newer snapshot, replaying it is harmless: the log is a sequence of puts and
+ * deletes, and replaying them over a state that already includes them leaves
+ * that state unchanged.
+ * @param <K> the data type of the key for the nodes in the red black tree
+ * @param <V> the data type of the data stored in each node in the red black tree
+ */
+public class JournaledRBTree<K extends Comparable<K>,V> implements Closeable {
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    //requests to the writer thread, queued with the records but never written
+    private static final byte FORCE = 3;
+    private static final byte TRUNCATE = 4;
+    //a record larger than this cannot be valid, so it is taken as corruption
+    private static final int MAX_RECORD_BYTES = 1 << 28;
+
+    private final RBTree<K,V> tree;
+    private final File snapshotFile;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final FsyncPolicy policy;
+    private final long intervalNanos;
+    private final FileChannel log;
+    private final LinkedBlockingQueue<Record> queue = new LinkedBlockingQueue<Record>();
+    private final Thread writer;
+    //encode records on the caller's thread, so a codec failure leaves the tree unchanged; guarded by this
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 crc = new CRC32();
+
+    //the sequence number of the last record queued; guarded by this
+    private long queuedSeq;
+    private boolean closed;
+    //the last records written to the log and forced to disk, and the writer's failure; guarded by progress
+    private final Object progress = new Object();
+    private long writtenSeq;
+    private long syncedSeq;
+    //the number of times the writer has emptied the log for snapshot
+    private long truncations;
+    private IOException failure;
+
+    private JournaledRBTree(RBTree<K,V> tree, File snapshotFile, File logFile, FileChannel log,
+            Codec<K> keyCodec, Codec<V> valueCodec, FsyncPolicy policy, long intervalMillis) {
+        this.tree = tree;
+        this.snapshotFile = snapshotFile;
+        this.log = log;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+        this.policy = policy;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                JournaledRBTree.this.writeLoop();
+            }
+        }, "rbtree-journal-" + logFile.getName());
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Opens a journaled tree, restoring it from snapshotFile if that exists and replaying logFile
+     * over it. Both files are created as needed.
+     * @param <K> the data type of the keys
+     * @param <V> the data type of the values
+     * @param snapshotFile the file holding the last snapshot
+     * @param logFile the file holding the log of mutations since the last snapshot
+     * @param keyCodec writes and reads the keys
+     * @param valueCodec writes and reads the values
+     * @param policy when the log is forced to disk
+     * @param intervalMillis the longest time between forces under FsyncPolicy.INTERVAL
+     * @return the tree
+     * @throws IOException if the files cannot be read, or the snapshot is not a snapshot
+     */
+    public static <K extends Comparable<K>,V> JournaledRBTree<K,V> open(File snapshotFile, File logFile,
+            Codec<K> keyCodec, Codec<V> valueCodec, FsyncPolicy policy, long intervalMillis) throws IOException {
+        if (policy == FsyncPolicy.INTERVAL && intervalMillis <= 0) {
+            throw new IllegalArgumentException("Interval must be positive: " + intervalMillis);
+        }
+        RBTree<K,V> tree;
+        if (snapshotFile.exists()) {
+            InputStream in = new FileInputStream(snapshotFile);
+            try {
+                tree = RBTree.readFrom(in, keyCodec, valueCodec);
+            } finally {
+                in.close();
+            }
+        } else {
+            tree = new RBTree<K,V>();
+        }
+        FileChannel log = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long end = replay(log, tree, keyCodec, valueCodec);
+            //cut off a torn or corrupt tail so new records follow the last good one
+            log.truncate(end);
+            log.position(end);
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+        JournaledRBTree<K,V> journaled = new JournaledRBTree<K,V>(tree, snapshotFile, logFile, log,
+                keyCodec, valueCodec, policy, intervalMillis);
+        journaled.writer.start();
+        return journaled;
+    }
+
+    /**
+     * Applies every whole, intact record of the log to tree.
+     * @return the offset just past the last record applied
+     */
+    private static <K extends Comparable<K>,V> long replay(FileChannel log, RBTree<K,V> tree,
+            Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(log.position(0)), 1 << 16));
+        long end = 0;
+        CRC32 crc = new CRC32();
+        while (true) {
+            int length;
+            int checksum;
+            byte[] record;
+            try {
+                length = in.readInt();
+                checksum = in.readInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    return end;
+                }
+                record = new byte[length];
+                in.readFully(record);
+            } catch (EOFException e) {
+                return end;
+            }
+            crc.reset();
+            crc.update(record, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                return end;
+            }
+            DataInputStream fields = new DataInputStream(new ByteArrayInputStream(record));
+            byte op = fields.readByte();
+            K key = keyCodec.read(null, fields);
+            if (op == PUT) {
+                tree.put(key, valueCodec.read(null, fields));
+            } else if (op == DELETE) {
+                tree.deleteNode(key);
+            } else {
+                throw new IOException("Unknown operation " + op + " at offset " + end + " of the log");
+            }
+            end += 8 + length;
+        }
+    }
+
+    /**
+     * The number of nodes in the tree.
+     * @return the number of nodes in the tree
+     */
+    public synchronized int size() {
+        return tree.size();
+    }
+
+    /**
+     * The value of the node with key key.
+     * @param key The key of the node
+     * @return The data of the node with key key, or null if there is none
+     */
+    public synchronized V get(K key) {
+        RBNode<K,V> node = tree.search(key);
+        return node == null ? null : node.getValue();
+    }
+
+    /**
+     * Checks if the tree has a node with key key.
+     * @param key the key to look for
+     * @return true if a node has key key
+     */
+    public synchronized boolean containsKey(K key) {
+        return tree.search(key) != null;
+    }
+
+    /**
+     * Insert a node with a key of value key and data with the value value, and log it.
+     * @param key The key of the new node
+     * @param value The data the new node contains
+     * @return true if the node was inserted, false if a node with key key already exists
+     * @throws IOException if the log has failed, or under PER_OP, if the record could not be forced
+     */
+    public boolean insertNode(K key, V value) throws IOException {
+        long seq;
+        synchronized (this) {
+            this.checkOpen();
+            byte[] frame = this.encode(PUT, key, value);
+            if (!tree.insertNode(key, value)) {
+                return false;
+            }
+            seq = this.append(PUT, frame);
+        }
+        this.awaitDurable(seq);
+        return true;
+    }
+
+    /**
+     * Associates value with key, replacing the value of an existing node with an identical key,
+     * and log it.
+     * @param key The key of the node
+     * @param value The data the node should contain
+     * @return The previous value of the node with key key, or null if no such node existed
+     * @throws IOException if the log has failed, or under PER_OP, if the record could not be forced
+     */
+    public V put(K key, V value) throws IOException {
+        long seq;
+        V oldValue;
+        synchronized (this) {
+            this.checkOpen();
+            byte[] frame = this.encode(PUT, key, value);
+            oldValue = tree.put(key, value);
+            seq = this.append(PUT, frame);
+        }
+        this.awaitDurable(seq);
+        return oldValue;
+    }
+
+    /**
+     * Delete a node from the red black tree with the key key, and log it.
+     * @param key the key that is contained in the node you wish to delete from in the tree
+     * @return true if a node was deleted, false if no node has key key
+     * @throws IOException if the log has failed, or under PER_OP, if the record could not be forced
+     */
+    public boolean deleteNode(K key) throws IOException {
+        long seq;
+        synchronized (this) {
+            this.checkOpen();
+            byte[] frame = this.encode(DELETE, key, null);
+            if (!tree.deleteNode(key)) {
+                return false;
+            }
+            seq = this.append(DELETE, frame);
+        }
+        this.awaitDurable(seq);
+        return true;
+    }
+
+    /**
+     * Waits until every mutation made so far is forced to disk, whatever the policy.
+     * @throws IOException if the log has failed
+     */
+    public void sync() throws IOException {
+        long seq;
+        synchronized (this) {
+            this.checkOpen();
+            seq = queuedSeq;
+            //the writer forces the log, as an interrupt during a force on this thread would close it
+            queue.add(new Record(seq, FORCE, null));
+        }
+        this.await(seq, true);
+    }
+
+    /**
+     * Writes a snapshot of the tree, replacing the last one, and empties the log. Mutations wait
+     * until the snapshot is written.
+     * @throws IOException if the snapshot cannot be written or the log has failed
+     */
+    public synchronized void snapshot() throws IOException {
+        this.checkOpen();
+        //let the writer catch up, so it is idle while the log is emptied
+        this.awaitWritten(queuedSeq);
+        File temp = new File(snapshotFile.getPath() + ".tmp");
+        FileOutputStream file = new FileOutputStream(temp);
+        try {
+            OutputStream out = new BufferedOutputStream(file, 1 << 16);
+            tree.writeTo(out, keyCodec, valueCodec, false);
+            out.flush();
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+        Files.move(temp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        //the rename must be on disk before the log it replaces is emptied
+        syncDirectory(snapshotFile);
+        long target;
+        synchronized (progress) {
+            target = truncations + 1;
+        }
+        queue.add(new Record(queuedSeq, TRUNCATE, null));
+        boolean interrupted = false;
+        synchronized (progress) {
+            while (truncations < target) {
+                if (failure != null) {
+                    throw new IOException("Journal failed", failure);
+                }
+                try {
+                    progress.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Forces the directory holding file, so a rename into it survives a crash.
+     */
+    private static void syncDirectory(File file) throws IOException {
+        FileChannel directory = FileChannel.open(file.getAbsoluteFile().getParentFile().toPath(),
+                StandardOpenOption.READ);
+        try {
+            directory.force(true);
+        } finally {
+            directory.close();
+        }
+    }
+
+    /**
+     * Writes every queued record, forces the log, stops the writer thread and closes the log.
+     * Mutations after close throw an IOException.
+     * @throws IOException if the log has failed or cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        long seq;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            seq = queuedSeq;
+            queue.add(new Record(seq, FORCE, null));
+        }
+        try {
+            this.await(seq, true);
+        } finally {
+            writer.interrupt();
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            log.close();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Journal is closed");
+        }
+        synchronized (progress) {
+            if (failure != null) {
+                throw new IOException("Journal failed", failure);
+            }
+        }
+    }
+
+    /**
+     * Frames a record as its length, its CRC32 and its bytes; called while holding the lock of the
+     * tree and before changing it, so a key or value the codecs reject leaves the tree unchanged.
+     * @return the framed record
+     */
+    private byte[] encode(byte op, K key, V value) throws IOException {
+        record.reset();
+        recordOut.writeByte(op);
+        keyCodec.write(null, key, recordOut);
+        if (op == PUT) {
+            valueCodec.write(null, value, recordOut);
+        }
+        byte[] bytes = record.toByteArray();
+        crc.reset();
+        crc.update(bytes, 0, bytes.length);
+        ByteBuffer frame = ByteBuffer.allocate(8 + bytes.length);
+        frame.putInt(bytes.length);
+        frame.putInt((int) crc.getValue());
+        frame.put(bytes);
+        return frame.array();
+    }
+
+    /**
+     * Queues a record framed by encode; called while holding the lock of the tree.
+     * @return the sequence number of the record
+     */
+    private long append(byte op, byte[] frame) {
+        long seq = ++queuedSeq;
+        queue.add(new Record(seq, op, frame));
+        return seq;
+    }
+
+    private void awaitDurable(long seq) throws IOException {
+        if (policy == FsyncPolicy.PER_OP) {
+            this.await(seq, true);
+        } else {
+            synchronized (progress) {
+                if (failure != null) {
+                    throw new IOException("Journal failed", failure);
+                }
+            }
+        }
+    }
+
+    private void awaitWritten(long seq) throws IOException {
+        this.await(seq, false);
+    }
+
+    private void await(long seq, boolean synced) throws IOException {
+        boolean interrupted = false;
+        synchronized (progress) {
+            while ((synced ? syncedSeq : writtenSeq) < seq) {
+                if (failure != null) {
+                    throw new IOException("Journal failed", failure);
+                }
+                try {
+                    progress.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Forces the log if the records up to seq are not yet known to be on disk.
+     */
+    private void force(long seq) throws IOException {
+        synchronized (progress) {
+            if (syncedSeq >= seq) {
+                return;
+            }
+        }
+        synchronized (log) {
+            log.force(false);
+        }
+        synchronized (progress) {
+            syncedSeq = Math.max(syncedSeq, seq);
+            progress.notifyAll();
+        }
+    }
+
+    /**
+     * The writer thread: drains the queue in batches, writes each batch with one call, and forces
+     * the log as the policy, sync or close asks, and empties it for snapshot. Only this thread
+     * touches the channel after open, so an interrupted caller cannot close it.
+     */
+    private void writeLoop() {
+        List<Record> batch = new ArrayList<Record>();
+        ByteArrayOutputStream frames = new ByteArrayOutputStream(1 << 16);
+        long lastForce = System.nanoTime();
+        long unsynced = 0;
+        try {
+            while (true) {
+                Record first;
+                try {
+                    first = policy == FsyncPolicy.INTERVAL
+                            ? queue.poll(intervalNanos, TimeUnit.NANOSECONDS)
+                            : queue.take();
+                } catch (InterruptedException e) {
+                    //close has already waited for every record to be written
+                    return;
+                }
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                    frames.reset();
+                    boolean forceRequested = false;
+                    boolean truncateRequested = false;
+                    for (Record r : batch) {
+                        if (r.op == FORCE) {
+                            forceRequested = true;
+                            continue;
+                        }
+                        if (r.op == TRUNCATE) {
+                            truncateRequested = true;
+                            continue;
+                        }
+                        frames.write(r.frame, 0, r.frame.length);
+                    }
+                    long seq = batch.get(batch.size() - 1).seq;
+                    batch.clear();
+                    if (frames.size() > 0) {
+                        synchronized (log) {
+                            ByteBuffer buffer = ByteBuffer.wrap(frames.toByteArray());
+                            while (buffer.hasRemaining()) {
+                                log.write(buffer);
+                            }
+                        }
+                        unsynced = seq;
+                    }
+                    synchronized (progress) {
+                        writtenSeq = Math.max(writtenSeq, seq);
+                        progress.notifyAll();
+                    }
+                    if (truncateRequested) {
+                        //snapshot holds the tree's lock, so no record can follow the request
+                        synchronized (log) {
+                            log.truncate(0);
+                            log.position(0);
+                            log.force(true);
+                        }
+                        synchronized (progress) {
+                            syncedSeq = Math.max(syncedSeq, seq);
+                            truncations++;
+                            progress.notifyAll();
+                        }
+                        unsynced = 0;
+                    } else if (forceRequested) {
+                        this.force(seq);
+                        unsynced = 0;
+                        lastForce = System.nanoTime();
+                    }
+                }
+                if (unsynced != 0 && (policy == FsyncPolicy.PER_OP
+                        || (policy == FsyncPolicy.INTERVAL && System.nanoTime() - lastForce >= intervalNanos))) {
+                    this.force(unsynced);
+                    unsynced = 0;
+                    lastForce = System.nanoTime();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            synchronized (progress) {
+                failure = e instanceof IOException ? (IOException) e : new IOException(e);
+                progress.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * A mutation waiting to be logged, already framed, or a request to the writer, which has no
+     * frame.
+     */
+    private static final class Record {
+        final long seq;
+        final byte op;
+        final byte[] frame;
+
+        Record(long seq, byte op, byte[] frame) {
+            this.seq = seq;
+            this.op = op;
+            this.frame = frame;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package rbtree;
+
+/**
+ * Maps a key to a prefix that orders keys as their comparator does wherever
+ * two prefixes differ, so a tree can compare two longs instead of two keys.
+ * Prefixes are compared as unsigned longs. If the prefix of a is smaller than
+ * the prefix of b, a must be smaller than b; equal prefixes say nothing, and
+ * the tree falls back to the comparator. The most useful prefixes are the
+ * first eight bytes of the key in big-endian order. Normalizers holding no
+ * state can be shared between trees and threads; the standard ones are in
+ * KeyNormalizers.
+ * @param <K> the data type of the keys
+ */
+public interface KeyNormalizer<K> {
+
+    /**
+     * The prefix of key.
+     * @param key the key
+     * @return the prefix, compared with other prefixes as an unsigned long
+     */
+    long prefix(K key);
+}
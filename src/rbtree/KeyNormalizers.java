@@ -0,0 +1,87 @@
+package rbtree;
+
+import java.util.Comparator;
+
+/**
+ * The standard key normalizers, and the comparator for byte[] keys that
+ * BYTES agrees with. STRING agrees with the natural order of String, and
+ * BYTES with BYTES_ORDER. Both pad keys shorter than the prefix with zeros,
+ * so a key and the same key followed by zeros have equal prefixes and are
+ * told apart by the comparator. Keys that share their first eight bytes, such
+ * as URLs of one host, all have the same prefix and gain nothing.
+ */
+public final class KeyNormalizers {
+
+    private KeyNormalizers() {
+    }
+
+    /**
+     * The first eight bytes of a String with each char written as UTF-8 writes a code point below
+     * 0x10000: one byte for ASCII, two or three for the rest. The encoding keeps the order of the
+     * chars and no code is a prefix of another, so the bytes order Strings as compareTo does, and
+     * ASCII keys get eight chars into the prefix rather than four.
+     */
+    public static final KeyNormalizer<String> STRING = new KeyNormalizer<String>() {
+        @Override
+        public long prefix(String key) {
+            long prefix = 0;
+            int shift = 56;
+            for (int i = 0; i < key.length() && shift >= 0; i++) {
+                char c = key.charAt(i);
+                if (c < 0x80) {
+                    prefix |= (long) c << shift;
+                    shift -= 8;
+                } else if (c < 0x800) {
+                    prefix |= bits(0xC0 | c >>> 6, shift);
+                    prefix |= bits(0x80 | (c & 0x3F), shift - 8);
+                    shift -= 16;
+                } else {
+                    prefix |= bits(0xE0 | c >>> 12, shift);
+                    prefix |= bits(0x80 | (c >>> 6 & 0x3F), shift - 8);
+                    prefix |= bits(0x80 | (c & 0x3F), shift - 16);
+                    shift -= 24;
+                }
+            }
+            return prefix;
+        }
+    };
+
+    /**
+     * The first eight bytes of a byte[], first byte highest.
+     */
+    public static final KeyNormalizer<byte[]> BYTES = new KeyNormalizer<byte[]>() {
+        @Override
+        public long prefix(byte[] key) {
+            int length = Math.min(key.length, 8);
+            long prefix = 0;
+            for (int i = 0; i < length; i++) {
+                prefix |= (key[i] & 0xFFL) << (56 - 8 * i);
+            }
+            return prefix;
+        }
+    };
+
+    /**
+     * Orders byte[] keys lexicographically by their bytes read as unsigned, a shorter key before
+     * any longer key it is a prefix of.
+     */
+    public static final Comparator<byte[]> BYTES_ORDER = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] a, byte[] b) {
+            int length = Math.min(a.length, b.length);
+            for (int i = 0; i < length; i++) {
+                if (a[i] != b[i]) {
+                    return (a[i] & 0xFF) - (b[i] & 0xFF);
+                }
+            }
+            return a.length - b.length;
+        }
+    };
+
+    /**
+     * A byte of an encoded char placed at shift, or nothing if it falls past the end of the prefix.
+     */
+    private static long bits(int value, int shift) {
+        return shift < 0 ? 0 : (long) value << shift;
+    }
+}
@@ -14,7 +14,7 @@ import java.util.ArrayDeque;
  */
 public class LevelorderTreeIterator implements TreeIterator {
 
-    private ArrayDeque<Node> traversalStack;
+    private final ArrayDeque<Node> traversalStack;
 
     /**
      * Constructor with one perimeter
@@ -22,8 +22,11 @@ public class LevelorderTreeIterator implements TreeIterator {
      * @param root the root node of the tree
      */
     public LevelorderTreeIterator(Node root) {
+        //starts small and grows by doubling, so a short walk of a large tree stays cheap
         traversalStack = new ArrayDeque<Node>();
-        traversalStack.push(root);
+        if (root.getKey() != null) {
+            traversalStack.push(root);
+        }
     }
 
     /**
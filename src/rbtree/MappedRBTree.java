@@ -0,0 +1,763 @@
+package rbtree;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Red Black Tree of long keys and long values that lives in a memory-mapped
+ * file instead of on the Java heap. Reopening the file gives back the tree as it
+ * was left, with nothing to parse or rebuild, and a tree of any size costs the
+ * heap only a few objects.
+ * <p>
+ * The file starts with a 64 byte header holding the root, the number of nodes,
+ * the first unused slot, the head of the free-list and the chunk size. After it
+ * come fixed-width 32 byte node records, one per slot:
+ * <pre>
+ *  0 key     8 value    16 parent    20 left    24 right    28 color
+ * </pre>
+ * Links are slot numbers, and slot 0 is the nil sentinel, as in ArrayRBTree.
+ * The records are mapped in chunks of a power of two records each, and a new
+ * chunk is mapped, growing the file, when the mapped ones are full.
+ * <p>
+ * Writes reach the file when the operating system flushes the mapping, or when
+ * force or close is called. The tree is not crash safe on its own: a crash in
+ * the middle of an insert or delete can leave the file half re-balanced. A tree
+ * that must survive crashes should be forced at known-good points and paired
+ * with a log of the operations since.
+ */
+public class MappedRBTree implements Closeable {
+
+    /**
+     * The slot of the nil sentinel, returned when there is no such node.
+     */
+    public static final int NIL = 0;
+
+    /**
+     * The number of records in a chunk if none is given to open.
+     */
+    public static final int DEFAULT_CHUNK_RECORDS = 1 << 20;
+
+    private static final long MAGIC = 0x52427472656546L; //"RBtreeF"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int RECORD_BYTES = 32;
+    private static final int RECORD_SHIFT = 5;
+    //the most records a single mapping can hold, as FileChannel.map takes at most 2GB - 1 bytes
+    private static final int MAX_CHUNK_RECORDS = 1 << 25;
+
+    //header layout
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int RECORD_BYTES_OFFSET = 12;
+    private static final int CHUNK_RECORDS_OFFSET = 16;
+    private static final int ROOT_OFFSET = 20;
+    private static final int SIZE_OFFSET = 24;
+    private static final int TOP_OFFSET = 28;
+    private static final int FREE_HEAD_OFFSET = 32;
+
+    //record layout
+    private static final int KEY = 0;
+    private static final int VALUE = 8;
+    private static final int PARENT = 16;
+    private static final int LEFT = 20;
+    private static final int RIGHT = 24;
+    private static final int COLOR = 28;
+
+    private static final int BLACK = 0;
+    private static final int RED = 1;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final int chunkShift;
+    private final int chunkMask;
+    private MappedByteBuffer[] chunks;
+
+    private int root;
+    private int size;
+    //the first slot never used, and the head of the list of freed slots
+    private int top;
+    private int freeHead;
+
+    private MappedRBTree(RandomAccessFile file, MappedByteBuffer header, int chunkRecords) throws IOException {
+        this.file = file;
+        this.channel = file.getChannel();
+        this.header = header;
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkRecords);
+        this.chunkMask = chunkRecords - 1;
+        this.root = header.getInt(ROOT_OFFSET);
+        this.size = header.getInt(SIZE_OFFSET);
+        this.top = header.getInt(TOP_OFFSET);
+        this.freeHead = header.getInt(FREE_HEAD_OFFSET);
+        //map every chunk up to the one holding the last slot used, starting with the one holding nil
+        int chunkCount = ((top - 1) >>> chunkShift) + 1;
+        this.chunks = new MappedByteBuffer[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            chunks[i] = this.mapChunk(i);
+        }
+    }
+
+    /**
+     * Opens the tree stored in a file, or creates an empty one if the file does not exist or is
+     * empty, with the default chunk size.
+     * @param path the file holding the tree
+     * @return the tree
+     * @throws IOException if the file cannot be opened or mapped, or does not hold a tree
+     */
+    public static MappedRBTree open(File path) throws IOException {
+        return open(path, DEFAULT_CHUNK_RECORDS);
+    }
+
+    /**
+     * Opens the tree stored in a file, or creates an empty one if the file does not exist or is
+     * empty. An existing tree keeps the chunk size it was created with.
+     * @param path the file holding the tree
+     * @param chunkRecords the number of records in each mapped chunk of a new file, a power of two
+     * @return the tree
+     * @throws IOException if the file cannot be opened or mapped, or does not hold a tree
+     */
+    public static MappedRBTree open(File path, int chunkRecords) throws IOException {
+        if (!validChunkRecords(chunkRecords)) {
+            throw new IllegalArgumentException("Chunk size is not a power of two up to 2^25: " + chunkRecords);
+        }
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            boolean created = file.length() == 0;
+            MappedByteBuffer header = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.order(ByteOrder.nativeOrder());
+            if (created) {
+                header.putLong(MAGIC_OFFSET, MAGIC);
+                header.putInt(VERSION_OFFSET, VERSION);
+                header.putInt(RECORD_BYTES_OFFSET, RECORD_BYTES);
+                header.putInt(CHUNK_RECORDS_OFFSET, chunkRecords);
+                header.putInt(ROOT_OFFSET, NIL);
+                header.putInt(SIZE_OFFSET, 0);
+                //slot 0 is nil, so the first node goes in slot 1
+                header.putInt(TOP_OFFSET, 1);
+                header.putInt(FREE_HEAD_OFFSET, NIL);
+            } else if (header.getLong(MAGIC_OFFSET) != MAGIC
+                    || header.getInt(VERSION_OFFSET) != VERSION
+                    || header.getInt(RECORD_BYTES_OFFSET) != RECORD_BYTES) {
+                throw new IOException("Not a red black tree file: " + path);
+            } else {
+                chunkRecords = header.getInt(CHUNK_RECORDS_OFFSET);
+                if (!validChunkRecords(chunkRecords) || header.getInt(TOP_OFFSET) < 1) {
+                    throw new IOException("Corrupt header in " + path);
+                }
+            }
+            return new MappedRBTree(file, header, chunkRecords);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes every change made so far to the file.
+     * @throws IOException if the changes cannot be written
+     */
+    public void force() throws IOException {
+        this.checkOpen();
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+        header.force();
+    }
+
+    /**
+     * Forces every change to the file and closes it. The mappings themselves are released when
+     * they are garbage collected.
+     * @throws IOException if the changes cannot be written or the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (chunks == null) {
+            return;
+        }
+        try {
+            this.force();
+        } finally {
+            chunks = null;
+            file.close();
+        }
+    }
+
+    /**
+     * The number of nodes in the tree.
+     * @return the number of nodes in the tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The key of the node in a slot.
+     * @param slot the slot of the node
+     * @return the key of the node
+     */
+    public long keyAt(int slot) {
+        return this.chunk(slot).getLong(this.offset(slot) + KEY);
+    }
+
+    /**
+     * The value of the node in a slot.
+     * @param slot the slot of the node
+     * @return the value of the node
+     */
+    public long valueAt(int slot) {
+        return this.chunk(slot).getLong(this.offset(slot) + VALUE);
+    }
+
+    /**
+     * Replaces the value of the node in a slot.
+     * @param slot the slot of the node
+     * @param value the new value of the node
+     */
+    public void setValueAt(int slot, long value) {
+        this.chunk(slot).putLong(this.offset(slot) + VALUE, value);
+    }
+
+    /**
+     * The color of the node in a slot.
+     * @param slot the slot of the node
+     * @return the color of the node, Color.Black for NIL
+     */
+    public Color colorAt(int slot) {
+        return this.isRed(slot) ? Color.Red : Color.Black;
+    }
+
+    /**
+     * The slot of the root node.
+     * @return the slot of the root, or NIL if the tree is empty
+     */
+    public int root() {
+        return root;
+    }
+
+    /**
+     * The slot of the parent of a node.
+     * @param slot the slot of the node
+     * @return the slot of the parent, or NIL for the root
+     */
+    public int parentOf(int slot) {
+        return this.link(slot, PARENT);
+    }
+
+    /**
+     * The slot of the left child of a node.
+     * @param slot the slot of the node
+     * @return the slot of the left child, or NIL if there is none
+     */
+    public int leftOf(int slot) {
+        return this.link(slot, LEFT);
+    }
+
+    /**
+     * The slot of the right child of a node.
+     * @param slot the slot of the node
+     * @return the slot of the right child, or NIL if there is none
+     */
+    public int rightOf(int slot) {
+        return this.link(slot, RIGHT);
+    }
+
+    /**
+     * Searches the red black tree for node with the key key.
+     * @param key The key of the node you wish to search for.
+     * @return The slot of the node with key key, or NIL if there is none
+     */
+    public int search(long key) {
+        int traverse = root;
+        while (traverse != NIL) {
+            long traverseKey = this.keyAt(traverse);
+            if (key < traverseKey) {
+                traverse = this.leftOf(traverse);
+            } else if (key > traverseKey) {
+                traverse = this.rightOf(traverse);
+            } else {
+                return traverse;
+            }
+        }
+        return NIL;
+    }
+
+    /**
+     * Checks if the tree has a node with key key.
+     * @param key the key to look for
+     * @return true if a node has key key
+     */
+    public boolean containsKey(long key) {
+        return this.search(key) != NIL;
+    }
+
+    /**
+     * The value of the node with key key.
+     * @param key The key of the node
+     * @param defaultValue the value to return if there is no such node
+     * @return The value of the node with key key, or defaultValue if there is none
+     */
+    public long get(long key, long defaultValue) {
+        int slot = this.search(key);
+        return slot == NIL ? defaultValue : this.valueAt(slot);
+    }
+
+    /**
+     * The slot of the node with the smallest key.
+     * @return the slot of the first node, or NIL if the tree is empty
+     */
+    public int first() {
+        return root == NIL ? NIL : this.minimum(root);
+    }
+
+    /**
+     * The slot of the node with the largest key.
+     * @return the slot of the last node, or NIL if the tree is empty
+     */
+    public int last() {
+        return root == NIL ? NIL : this.maximum(root);
+    }
+
+    /**
+     * Find the node with the minimum key at sub-tree with root slot
+     * @param slot The slot of the root of the sub-tree
+     * @return the slot of the node with the minimum key in the sub-tree
+     */
+    public int minimum(int slot) {
+        for (int next = this.leftOf(slot); next != NIL; next = this.leftOf(slot)) {
+            slot = next;
+        }
+        return slot;
+    }
+
+    /**
+     * Find the node with the maximum key at sub-tree with root slot
+     * @param slot The slot of the root of the sub-tree
+     * @return the slot of the node with the maximum key in the sub-tree
+     */
+    public int maximum(int slot) {
+        for (int next = this.rightOf(slot); next != NIL; next = this.rightOf(slot)) {
+            slot = next;
+        }
+        return slot;
+    }
+
+    /**
+     * Find the node with the smallest key larger than the key of the node in slot
+     * @param slot The slot of the node you wish to find the successor of
+     * @return The slot of the successor, or NIL if a successor does not exist
+     */
+    public int successor(int slot) {
+        int right = this.rightOf(slot);
+        if (right != NIL) {
+            return this.minimum(right);
+        }
+        int up = this.parentOf(slot);
+        while (up != NIL && slot == this.rightOf(up)) {
+            slot = up;
+            up = this.parentOf(slot);
+        }
+        return up;
+    }
+
+    /**
+     * Find the node with the largest key smaller than the key of the node in slot
+     * @param slot The slot of the node you wish to find the predecessor of
+     * @return The slot of the predecessor, or NIL if a predecessor does not exist
+     */
+    public int predecessor(int slot) {
+        int left = this.leftOf(slot);
+        if (left != NIL) {
+            return this.maximum(left);
+        }
+        int up = this.parentOf(slot);
+        while (up != NIL && slot == this.leftOf(up)) {
+            slot = up;
+            up = this.parentOf(slot);
+        }
+        return up;
+    }
+
+    /**
+     * Insert a node with key key and value value.
+     * @param key The key of the new node
+     * @param value The value of the new node
+     * @return true if the node was inserted, false if a node with key key already exists
+     * @throws IOException if the file cannot be grown to hold the node
+     */
+    public boolean insertNode(long key, long value) throws IOException {
+        int y = this.descend(key);
+        if (y != NIL && this.keyAt(y) == key) {
+            return false;
+        }
+        this.insert(y, key, value);
+        return true;
+    }
+
+    /**
+     * Associates value with key, replacing the value of an existing node with an identical key.
+     * @param key The key of the node
+     * @param value The value the node should have
+     * @return true if a new node was inserted, false if an existing value was replaced
+     * @throws IOException if the file cannot be grown to hold the node
+     */
+    public boolean put(long key, long value) throws IOException {
+        int y = this.descend(key);
+        if (y != NIL && this.keyAt(y) == key) {
+            this.setValueAt(y, value);
+            return false;
+        }
+        this.insert(y, key, value);
+        return true;
+    }
+
+    /**
+     * Delete a node from the red black tree with the key key
+     * @param key the key that is contained in the node you wish to delete from in the tree
+     * @return true if a node was deleted, false if no node has key key
+     */
+    public boolean deleteNode(long key) {
+        int remove = this.search(key);
+        if (remove == NIL) {
+            return false;
+        }
+        this.delete(remove);
+        return true;
+    }
+
+    private static boolean validChunkRecords(int chunkRecords) {
+        return chunkRecords > 0 && chunkRecords <= MAX_CHUNK_RECORDS && Integer.bitCount(chunkRecords) == 1;
+    }
+
+    private void checkOpen() throws IOException {
+        if (chunks == null) {
+            throw new IOException("Tree is closed");
+        }
+    }
+
+    private MappedByteBuffer mapChunk(int index) throws IOException {
+        long chunkBytes = (long) (chunkMask + 1) << RECORD_SHIFT;
+        MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + index * chunkBytes, chunkBytes);
+        chunk.order(ByteOrder.nativeOrder());
+        return chunk;
+    }
+
+    private MappedByteBuffer chunk(int slot) {
+        return chunks[slot >>> chunkShift];
+    }
+
+    private int offset(int slot) {
+        return (slot & chunkMask) << RECORD_SHIFT;
+    }
+
+    private int link(int slot, int field) {
+        return this.chunk(slot).getInt(this.offset(slot) + field);
+    }
+
+    private void setLink(int slot, int field, int target) {
+        this.chunk(slot).putInt(this.offset(slot) + field, target);
+    }
+
+    private boolean isRed(int slot) {
+        return this.chunk(slot).getInt(this.offset(slot) + COLOR) == RED;
+    }
+
+    private void setColor(int slot, int color) {
+        this.chunk(slot).putInt(this.offset(slot) + COLOR, color);
+    }
+
+    /**
+     * Copies the tree fields into the header.
+     */
+    private void writeHeader() {
+        header.putInt(ROOT_OFFSET, root);
+        header.putInt(SIZE_OFFSET, size);
+        header.putInt(TOP_OFFSET, top);
+        header.putInt(FREE_HEAD_OFFSET, freeHead);
+    }
+
+    /**
+     * Walks down the tree once looking for key.
+     * @param key The key to look for
+     * @return The slot with key key if one exists, otherwise the slot that would become the parent
+     * of a new node with key key, or NIL if the tree is empty
+     */
+    private int descend(long key) {
+        int x = root;
+        int y = NIL;
+        while (x != NIL) {
+            y = x;
+            long xKey = this.keyAt(x);
+            if (key < xKey) {
+                x = this.leftOf(x);
+            } else if (key > xKey) {
+                x = this.rightOf(x);
+            } else {
+                return x;
+            }
+        }
+        return y;
+    }
+
+    /**
+     * Takes a slot off the free-list, or the next unused slot, mapping a new chunk if they are full.
+     * @return a free slot
+     * @throws IOException if a new chunk cannot be mapped
+     */
+    private int allocate() throws IOException {
+        this.checkOpen();
+        int slot = freeHead;
+        if (slot != NIL) {
+            freeHead = this.leftOf(slot);
+            return slot;
+        }
+        if (top == Integer.MAX_VALUE) {
+            throw new IOException("Tree is full");
+        }
+        int index = top >>> chunkShift;
+        if (index == chunks.length) {
+            MappedByteBuffer[] grown = Arrays.copyOf(chunks, index + 1);
+            grown[index] = this.mapChunk(index);
+            chunks = grown;
+        }
+        return top++;
+    }
+
+    /**
+     * Insert a new node below the location found by descend and re-balance the tree
+     * @param y the slot returned by descend for key
+     * @param key the key of the new node
+     * @param value the value of the new node
+     * @throws IOException if the file cannot be grown to hold the node
+     */
+    private void insert(int y, long key, long value) throws IOException {
+        int newNode = this.allocate();
+        MappedByteBuffer chunk = this.chunk(newNode);
+        int offset = this.offset(newNode);
+        chunk.putLong(offset + KEY, key);
+        chunk.putLong(offset + VALUE, value);
+        chunk.putInt(offset + PARENT, y);
+        chunk.putInt(offset + LEFT, NIL);
+        chunk.putInt(offset + RIGHT, NIL);
+        chunk.putInt(offset + COLOR, RED);
+        if (y == NIL) {
+            root = newNode;
+        } else if (key < this.keyAt(y)) {
+            this.setLink(y, LEFT, newNode);
+        } else {
+            this.setLink(y, RIGHT, newNode);
+        }
+        size++;
+        this.insertFixUp(newNode);
+        this.writeHeader();
+    }
+
+    /**
+     * Performs a left rotation on a sub-tree
+     * @param rotatePoint The slot of the node you wish to do a left rotation on
+     */
+    private void rotateLeft(int rotatePoint) {
+        int rightChild = this.rightOf(rotatePoint);
+        int grandParent = this.parentOf(rotatePoint);
+        this.setLink(rightChild, PARENT, grandParent);
+        if (grandParent == NIL) {
+            root = rightChild;
+        } else if (this.leftOf(grandParent) == rotatePoint) {
+            this.setLink(grandParent, LEFT, rightChild);
+        } else {
+            this.setLink(grandParent, RIGHT, rightChild);
+        }
+        int inner = this.leftOf(rightChild);
+        this.setLink(rotatePoint, RIGHT, inner);
+        //leave the parent of nil alone, deleteFixUp may be relying on it
+        if (inner != NIL) {
+            this.setLink(inner, PARENT, rotatePoint);
+        }
+        this.setLink(rightChild, LEFT, rotatePoint);
+        this.setLink(rotatePoint, PARENT, rightChild);
+    }
+
+    /**
+     * Performs a right rotation on a sub-tree
+     * @param rotatePoint The slot of the node you wish to do a right rotation on
+     */
+    private void rotateRight(int rotatePoint) {
+        int leftChild = this.leftOf(rotatePoint);
+        int grandParent = this.parentOf(rotatePoint);
+        this.setLink(leftChild, PARENT, grandParent);
+        if (grandParent == NIL) {
+            root = leftChild;
+        } else if (this.leftOf(grandParent) == rotatePoint) {
+            this.setLink(grandParent, LEFT, leftChild);
+        } else {
+            this.setLink(grandParent, RIGHT, leftChild);
+        }
+        int inner = this.rightOf(leftChild);
+        this.setLink(rotatePoint, LEFT, inner);
+        //leave the parent of nil alone, deleteFixUp may be relying on it
+        if (inner != NIL) {
+            this.setLink(inner, PARENT, rotatePoint);
+        }
+        this.setLink(leftChild, RIGHT, rotatePoint);
+        this.setLink(rotatePoint, PARENT, leftChild);
+    }
+
+    /**
+     * Balance the tree after a new insertion
+     * @param insertedNode The slot of the node that was inserted
+     */
+    private void insertFixUp(int insertedNode) {
+        int uncle, grand, up = this.parentOf(insertedNode);
+        while (this.isRed(up)) {
+            grand = this.parentOf(up);
+            if (up == this.leftOf(grand)) {
+                uncle = this.rightOf(grand);
+                if (this.isRed(uncle)) {
+                    //if the uncle of insertedNode is red
+                    this.setColor(up, BLACK);
+                    this.setColor(uncle, BLACK);
+                    this.setColor(grand, RED);
+                    insertedNode = grand;
+                    up = this.parentOf(insertedNode);
+                } else {
+                    if (insertedNode == this.rightOf(up)) {
+                        //if insertedNode is the right child, make it a left child
+                        insertedNode = up;
+                        this.rotateLeft(insertedNode);
+                        up = this.parentOf(insertedNode);
+                    }
+                    this.setColor(up, BLACK);
+                    this.setColor(grand, RED);
+                    this.rotateRight(grand);
+                }
+            } else {
+                uncle = this.leftOf(grand);
+                if (this.isRed(uncle)) {
+                    //if the uncle of insertedNode is red
+                    this.setColor(up, BLACK);
+                    this.setColor(uncle, BLACK);
+                    this.setColor(grand, RED);
+                    insertedNode = grand;
+                    up = this.parentOf(insertedNode);
+                } else {
+                    if (insertedNode == this.leftOf(up)) {
+                        //if insertedNode is the left child, make it a right child
+                        insertedNode = up;
+                        this.rotateRight(insertedNode);
+                        up = this.parentOf(insertedNode);
+                    }
+                    this.setColor(up, BLACK);
+                    this.setColor(grand, RED);
+                    this.rotateLeft(grand);
+                }
+            }
+        }
+        this.setColor(root, BLACK);
+    }
+
+    /**
+     * Deletes a node from the tree, re-balances the tree and frees the slot spliced out
+     * @param remove the slot of the node you wish to remove from the tree
+     */
+    private void delete(int remove) {
+        int x, y;
+        //the node spliced out is remove itself, or its successor if remove has two children
+        if (this.leftOf(remove) == NIL || this.rightOf(remove) == NIL) {
+            y = remove;
+        } else {
+            y = this.minimum(this.rightOf(remove));
+        }
+        x = this.leftOf(y) != NIL ? this.leftOf(y) : this.rightOf(y);
+        //set the parent of x even if it is nil, deleteFixUp climbs from it
+        int up = this.parentOf(y);
+        this.setLink(x, PARENT, up);
+        if (up == NIL) {
+            root = x;
+        } else if (y == this.leftOf(up)) {
+            this.setLink(up, LEFT, x);
+        } else {
+            this.setLink(up, RIGHT, x);
+        }
+        if (y != remove) {
+            MappedByteBuffer chunk = this.chunk(remove);
+            chunk.putLong(this.offset(remove) + KEY, this.keyAt(y));
+            chunk.putLong(this.offset(remove) + VALUE, this.valueAt(y));
+        }
+        boolean wasBlack = !this.isRed(y);
+        //put y on the free-list
+        this.setLink(y, LEFT, freeHead);
+        freeHead = y;
+        size--;
+        if (wasBlack) {
+            this.deleteFixUp(x);
+        }
+        this.setLink(NIL, PARENT, NIL);
+        this.writeHeader();
+    }
+
+    /**
+     * Re-balance the tree after a deletion
+     * @param childOfRemovedNode The slot of the child of the node removed
+     */
+    private void deleteFixUp(int childOfRemovedNode) {
+        int up, sibling;
+        while (childOfRemovedNode != root && !this.isRed(childOfRemovedNode)) {
+            up = this.parentOf(childOfRemovedNode);
+            if (childOfRemovedNode == this.leftOf(up)) {
+                sibling = this.rightOf(up);
+                if (this.isRed(sibling)) {
+                    this.setColor(up, RED);
+                    this.setColor(sibling, BLACK);
+                    this.rotateLeft(up);
+                    sibling = this.rightOf(up);
+                }
+                if (!this.isRed(this.leftOf(sibling)) && !this.isRed(this.rightOf(sibling))) {
+                    this.setColor(sibling, RED);
+                    childOfRemovedNode = up;
+                } else {
+                    if (!this.isRed(this.rightOf(sibling))) {
+                        this.setColor(sibling, RED);
+                        this.setColor(this.leftOf(sibling), BLACK);
+                        this.rotateRight(sibling);
+                        sibling = this.rightOf(up);
+                    }
+                    this.setColor(sibling, this.isRed(up) ? RED : BLACK);
+                    this.setColor(up, BLACK);
+                    this.setColor(this.rightOf(sibling), BLACK);
+                    this.rotateLeft(up);
+                    childOfRemovedNode = root;
+                }
+            } else {
+                sibling = this.leftOf(up);
+                if (this.isRed(sibling)) {
+                    this.setColor(up, RED);
+                    this.setColor(sibling, BLACK);
+                    this.rotateRight(up);
+                    sibling = this.leftOf(up);
+                }
+                if (!this.isRed(this.leftOf(sibling)) && !this.isRed(this.rightOf(sibling))) {
+                    this.setColor(sibling, RED);
+                    childOfRemovedNode = up;
+                } else {
+                    if (!this.isRed(this.leftOf(sibling))) {
+                        this.setColor(sibling, RED);
+                        this.setColor(this.rightOf(sibling), BLACK);
+                        this.rotateLeft(sibling);
+                        sibling = this.leftOf(up);
+                    }
+                    this.setColor(sibling, this.isRed(up) ? RED : BLACK);
+                    this.setColor(up, BLACK);
+                    this.setColor(this.leftOf(sibling), BLACK);
+                    this.rotateRight(up);
+                    childOfRemovedNode = root;
+                }
+            }
+        }
+        this.setColor(childOfRemovedNode, BLACK);
+    }
+}
@@ -3,9 +3,9 @@ package rbtree;
 /**
  * A node that contains a pointer to its parent, left child, and right child. 
  * Each node contain also contains a key.
- * @param <K> The data type of the key. K must extend from the Comparable 
+ * @param <K> The data type of the key.
  */
-public interface Node<K extends Comparable<K>> {
+public interface Node<K> {
  
     /**
      * Getter for the parent node
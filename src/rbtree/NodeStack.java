@@ -0,0 +1,63 @@
+package rbtree;
+
+import java.util.Arrays;
+
+/**
+ * An unsynchronized stack of nodes held in a plain array, for the traversal
+ * iterators. The array is sized up front from the height bound of a red black
+ * tree: a tree of n nodes is at most 2*log2(n+1) nodes deep, so a stack holding
+ * one root-to-leaf path never has to grow. It only grows if it is handed a tree
+ * that breaks that bound, such as one linked together by hand.
+ */
+final class NodeStack {
+
+    private Node[] nodes;
+    private int size;
+
+    /**
+     * Constructor with one parameter
+     *
+     * @param root the root node of the tree the stack will traverse
+     */
+    NodeStack(Node root) {
+        nodes = new Node[heightBound(root) + 1];
+    }
+
+    /**
+     * The largest number of nodes on any root-to-leaf path of a red black tree.
+     *
+     * @param root the root node of the tree
+     * @return an upper bound on the height of the tree
+     */
+    static int heightBound(Node root) {
+        if (root instanceof RBNode) {
+            //2*log2(n+1), rounded up
+            return 2 * (32 - Integer.numberOfLeadingZeros(((RBNode) root).getSize() + 1));
+        }
+        //every path is at most twice as long as the shortest one, and so the left most one
+        int leftMostPath = 0;
+        for (Node traverse = root; traverse.getKey() != null; traverse = traverse.getLeftChild()) {
+            leftMostPath++;
+        }
+        return 2 * leftMostPath;
+    }
+
+    void push(Node node) {
+        if (size == nodes.length) {
+            nodes = Arrays.copyOf(nodes, size * 2 + 1);
+        }
+        nodes[size++] = node;
+    }
+
+    Node pop() {
+        return nodes[--size];
+    }
+
+    Node peek() {
+        return nodes[size - 1];
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+}
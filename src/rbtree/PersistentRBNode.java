@@ -0,0 +1,125 @@
+package rbtree;
+
+import java.util.Map;
+
+/**
+ * A node of a PersistentRBTree. Its fields are final, so once a node is
+ * published it can be read by any thread without a lock, and a node can be
+ * shared by every version of the tree that holds it. A missing child is null,
+ * and the node knows the size of the sub-tree it roots.
+ * @param <K> The data type of the key. Must extend Comparable.
+ * @param <V> The data type of the value or data.
+ */
+public final class PersistentRBNode<K extends Comparable<K>,V> implements Map.Entry<K,V> {
+    private final K key;
+    private final V value;
+    private final Color color;
+    private final PersistentRBNode<K,V> left, right;
+    private final int size;
+
+    /**
+     * Constructor for the node with five arguments.
+     * @param key The key of the node. Used to compare with keys of other nodes.
+     * @param value The data with data type of <V>.
+     * @param color The color of the node. Can be either Color.Black or Color.Red
+     * @param left The left child, or null
+     * @param right The right child, or null
+     */
+    PersistentRBNode(K key, V value, Color color, PersistentRBNode<K,V> left, PersistentRBNode<K,V> right) {
+        this.key = key;
+        this.value = value;
+        this.color = color;
+        this.left = left;
+        this.right = right;
+        this.size = 1 + sizeOf(left) + sizeOf(right);
+    }
+
+    /**
+     * The number of nodes in a sub-tree.
+     * @param node the root of the sub-tree, or null
+     * @return the number of nodes, 0 for null
+     */
+    static int sizeOf(PersistentRBNode<?,?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Getter for the key.
+     * @return The key of this node
+     */
+    @Override
+    public K getKey() {
+        return this.key;
+    }
+
+    /**
+     * Getter for the value
+     * @return The data value of data type <V>
+     */
+    @Override
+    public V getValue() {
+        return this.value;
+    }
+
+    /**
+     * Nodes are immutable.
+     * @param value ignored
+     * @return never
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public V setValue(V value) {
+        throw new UnsupportedOperationException("Persistent nodes are immutable");
+    }
+
+    /**
+     * Getter for the color.
+     * @return The color of type Color.
+     */
+    public Color getColor() {
+        return this.color;
+    }
+
+    /**
+     * Getter for the left child node.
+     * @return The left child of this node, or null if there is none
+     */
+    public PersistentRBNode<K,V> getLeftChild() {
+        return this.left;
+    }
+
+    /**
+     * Getter for the right child node.
+     * @return The right child of this node, or null if there is none
+     */
+    public PersistentRBNode<K,V> getRightChild() {
+        return this.right;
+    }
+
+    /**
+     * Getter for the size.
+     * @return The number of nodes in the sub-tree rooted at this node
+     */
+    public int getSize() {
+        return this.size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Map.Entry)) {
+            return false;
+        }
+        Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+        return key.equals(e.getKey()) && (value == null ? e.getValue() == null : value.equals(e.getValue()));
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return key + "=" + value;
+    }
+}
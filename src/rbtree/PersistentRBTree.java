@@ -0,0 +1,472 @@
+package rbtree;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable, persistent red black tree. put and remove leave the tree they
+ * are called on untouched and return a new tree that shares every sub-tree the
+ * change did not reach, copying only the O(log n) nodes on the path to the
+ * change. Nodes have no parent pointers, which is what makes the sharing
+ * possible, and all their fields are final, so a tree can be handed to other
+ * threads and read by any number of them without locks.
+ * <p>
+ * Insertion re-balances on the way back up the copied path as in Okasaki's
+ * functional red black trees, and deletion follows Kahrs' algorithm, as used
+ * by the immutable TreeMap of the Scala library. Nodes also know the size of
+ * their sub-tree, so every version supports select and rank.
+ * @param <K> the data type of the key for the nodes in the red black tree
+ * @param <V> the data type of the data stored in each node in the red black tree
+ */
+public final class PersistentRBTree<K extends Comparable<K>,V> implements Iterable<Map.Entry<K,V>> {
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static final PersistentRBTree EMPTY = new PersistentRBTree(null);
+
+    private final PersistentRBNode<K,V> root;
+
+    private PersistentRBTree(PersistentRBNode<K,V> root) {
+        this.root = root;
+    }
+
+    /**
+     * The empty tree.
+     * @param <K> the data type of the keys
+     * @param <V> the data type of the values
+     * @return the empty tree
+     */
+    @SuppressWarnings("unchecked")
+    public static <K extends Comparable<K>,V> PersistentRBTree<K,V> empty() {
+        return EMPTY;
+    }
+
+    /**
+     * The root node of the tree.
+     * @return the root node, or null if the tree is empty
+     */
+    public PersistentRBNode<K,V> getRoot() {
+        return root;
+    }
+
+    /**
+     * The number of nodes in the tree.
+     * @return the number of nodes in the tree
+     */
+    public int size() {
+        return PersistentRBNode.sizeOf(root);
+    }
+
+    /**
+     * Checks if the tree has no nodes.
+     * @return true if the tree is empty
+     */
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * Searches the red black tree for node with the key key.
+     * @param key The key of the node you wish to search for.
+     * @return The Node with key key, or null if there is none
+     */
+    public PersistentRBNode<K,V> search(K key) {
+        PersistentRBNode<K,V> traverse = root;
+        while (traverse != null) {
+            int compare = key.compareTo(traverse.getKey());
+            if (compare == 0) {
+                return traverse;
+            }
+            traverse = compare < 0 ? traverse.getLeftChild() : traverse.getRightChild();
+        }
+        return null;
+    }
+
+    /**
+     * The value of the node with key key.
+     * @param key The key of the node
+     * @return The data of the node with key key, or null if there is none
+     */
+    public V get(K key) {
+        PersistentRBNode<K,V> node = this.search(key);
+        return node == null ? null : node.getValue();
+    }
+
+    /**
+     * Checks if the tree has a node with key key.
+     * @param key the key to look for
+     * @return true if a node has key key
+     */
+    public boolean containsKey(K key) {
+        return this.search(key) != null;
+    }
+
+    /**
+     * The node with the smallest key.
+     * @return the first node, or null if the tree is empty
+     */
+    public PersistentRBNode<K,V> first() {
+        PersistentRBNode<K,V> traverse = root;
+        while (traverse != null && traverse.getLeftChild() != null) {
+            traverse = traverse.getLeftChild();
+        }
+        return traverse;
+    }
+
+    /**
+     * The node with the largest key.
+     * @return the last node, or null if the tree is empty
+     */
+    public PersistentRBNode<K,V> last() {
+        PersistentRBNode<K,V> traverse = root;
+        while (traverse != null && traverse.getRightChild() != null) {
+            traverse = traverse.getRightChild();
+        }
+        return traverse;
+    }
+
+    /**
+     * The node at a position of the in order traversal.
+     * @param index the position, counting from 0
+     * @return the node with index smaller keys
+     * @throws IndexOutOfBoundsException if index is negative or not less than size()
+     */
+    public PersistentRBNode<K,V> select(int index) {
+        if (index < 0 || index >= this.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size());
+        }
+        PersistentRBNode<K,V> traverse = root;
+        while (true) {
+            int leftSize = PersistentRBNode.sizeOf(traverse.getLeftChild());
+            if (index < leftSize) {
+                traverse = traverse.getLeftChild();
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                traverse = traverse.getRightChild();
+            } else {
+                return traverse;
+            }
+        }
+    }
+
+    /**
+     * The number of keys smaller than key.
+     * @param key the key to rank
+     * @return the number of nodes with a smaller key
+     */
+    public int rank(K key) {
+        int rank = 0;
+        PersistentRBNode<K,V> traverse = root;
+        while (traverse != null) {
+            int compare = key.compareTo(traverse.getKey());
+            if (compare <= 0) {
+                if (compare == 0) {
+                    return rank + PersistentRBNode.sizeOf(traverse.getLeftChild());
+                }
+                traverse = traverse.getLeftChild();
+            } else {
+                rank += PersistentRBNode.sizeOf(traverse.getLeftChild()) + 1;
+                traverse = traverse.getRightChild();
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * A tree that maps key to value and is otherwise the same as this one.
+     * @param key The key of the node
+     * @param value The data the node should contain
+     * @return the new tree, or this tree if key already maps to this very value
+     */
+    public PersistentRBTree<K,V> put(K key, V value) {
+        if (key == null) {
+            throw new NullPointerException("Null key");
+        }
+        PersistentRBNode<K,V> newRoot = blacken(update(root, key, value));
+        return newRoot == root ? this : new PersistentRBTree<K,V>(newRoot);
+    }
+
+    /**
+     * A tree without key and otherwise the same as this one.
+     * @param key the key to remove
+     * @return the new tree, or this tree if it has no node with key key
+     */
+    public PersistentRBTree<K,V> remove(K key) {
+        if (this.search(key) == null) {
+            return this;
+        }
+        PersistentRBNode<K,V> newRoot = blacken(delete(root, key));
+        return newRoot == null ? PersistentRBTree.<K,V>empty() : new PersistentRBTree<K,V>(newRoot);
+    }
+
+    /**
+     * Iterates the entries in key order. The nodes are the entries, and are immutable.
+     * @return an iterator over the nodes in key order
+     */
+    @Override
+    public Iterator<Map.Entry<K,V>> iterator() {
+        return new EntryIterator<K,V>(root);
+    }
+
+    // Okasaki insertion
+
+    private static <K extends Comparable<K>,V> PersistentRBNode<K,V> update(PersistentRBNode<K,V> tree, K key, V value) {
+        if (tree == null) {
+            return new PersistentRBNode<K,V>(key, value, Color.Red, null, null);
+        }
+        int compare = key.compareTo(tree.getKey());
+        if (compare < 0) {
+            PersistentRBNode<K,V> left = update(tree.getLeftChild(), key, value);
+            return left == tree.getLeftChild() ? tree
+                    : balanceLeft(tree.getColor(), tree.getKey(), tree.getValue(), left, tree.getRightChild());
+        } else if (compare > 0) {
+            PersistentRBNode<K,V> right = update(tree.getRightChild(), key, value);
+            return right == tree.getRightChild() ? tree
+                    : balanceRight(tree.getColor(), tree.getKey(), tree.getValue(), tree.getLeftChild(), right);
+        } else if (value == tree.getValue()) {
+            return tree;
+        }
+        return new PersistentRBNode<K,V>(key, value, tree.getColor(), tree.getLeftChild(), tree.getRightChild());
+    }
+
+    /**
+     * Rebuilds a node whose new left child may be a red node with a red child.
+     */
+    private static <K extends Comparable<K>,V> PersistentRBNode<K,V> balanceLeft(Color color, K key, V value,
+            PersistentRBNode<K,V> left, PersistentRBNode<K,V> right) {
+        if (color == Color.Black && isRed(left)) {
+            if (isRed(left.getLeftChild())) {
+                PersistentRBNode<K,V> ll = left.getLeftChild();
+                return red(left.getKey(), left.getValue(), blacken(ll), black(key, value, left.getRightChild(), right));
+            }
+            if (isRed(left.getRightChild())) {
+                PersistentRBNode<K,V> lr = left.getRightChild();
+                return red(lr.getKey(), lr.getValue(),
+                        black(left.getKey(), left.getValue(), left.getLeftChild(), lr.getLeftChild()),
+                        black(key, value, lr.getRightChild(), right));
+            }
+        }
+        return new PersistentRBNode<K,V>(key, value, color, left, right);
+    }
+
+    /**
+     * Rebuilds a node whose new right child may be a red node with a red child.
+     */
+    private static <K extends Comparable<K>,V> PersistentRBNode<K,V> balanceRight(Color color, K key, V value,
+            PersistentRBNode<K,V> left, PersistentRBNode<K,V> right) {
+        if (color == Color.Black && isRed(right)) {
+            if (isRed(right.getLeftChild())) {
+                PersistentRBNode<K,V> rl = right.getLeftChild();
+                return red(rl.getKey(), rl.getValue(),
+                        black(key, value, left, rl.getLeftChild()),
+                        black(right.getKey(), right.getValue(), rl.getRightChild(), right.getRightChild()));
+            }
+            if (isRed(right.getRightChild())) {
+                PersistentRBNode<K,V> rr = right.getRightChild();
+                return red(right.getKey(), right.getValue(), black(key, value, left, right.getLeftChild()), blacken(rr));
+            }
+        }
+        return new PersistentRBNode<K,V>(key, value, color, left, right);
+    }
+
+    // Kahrs deletion; isBlack(null) is false, which the case analysis relies on
+
+    private static <K extends Comparable<K>,V> PersistentRBNode<K,V> delete(PersistentRBNode<K,V> tree, K key) {
+        if (tree == null) {
+            return null;
+        }
+        int compare = key.compareTo(tree.getKey());
+        if (compare < 0) {
+            PersistentRBNode<K,V> left = delete(tree.getLeftChild(), key);
+            return isBlack(tree.getLeftChild())
+                    ? balLeft(tree.getKey(), tree.getValue(), left, tree.getRightChild())
+                    : red(tree.getKey(), tree.getValue(), left, tree.getRightChild());
+        } else if (compare > 0) {
+            PersistentRBNode<K,V> right = delete(tree.getRightChild(), key);
+            return isBlack(tree.getRightChild())
+                    ? balRight(tree.getKey(), tree.getValue(), tree.getLeftChild(), right)
+                    : red(tree.getKey(), tree.getValue(), tree.getLeftChild(), right);
+        }
+        return append(tree.getLeftChild(), tree.getRightChild());
+    }
+
+    private static <K extends Comparable<K>,V> PersistentRBNode<K,V> balance(K key, V value,
+            PersistentRBNode<K,V> left, PersistentRBNode<K,V> right) {
+        if (isRed(left)) {
+            if (isRed(right)) {
+                return red(key, value, blacken(left), blacken(right));
+            } else if (isRed(left.getLeftChild())) {
+                return red(left.getKey(), left.getValue(), blacken(left.getLeftChild()),
+                        black(key, value, left.getRightChild(), right));
+            } else if (isRed(left.getRightChild())) {
+                PersistentRBNode<K,V> lr = left.getRightChild();
+                return red(lr.getKey(), lr.getValue(),
+                        black(left.getKey(), left.getValue(), left.getLeftChild(), lr.getLeftChild()),
+                        black(key, value, lr.getRightChild(), right));
+            }
+            return black(key, value, left, right);
+        } else if (isRed(right)) {
+            if (isRed(right.getRightChild())) {
+                return red(right.getKey(), right.getValue(), black(key, value, left, right.getLeftChild()),
+                        blacken(right.getRightChild()));
+            } else if (isRed(right.getLeftChild())) {
+                PersistentRBNode<K,V> rl = right.getLeftChild();
+                return red(rl.getKey(), rl.getValue(),
+                        black(key, value, left, rl.getLeftChild()),
+                        black(right.getKey(), right.getValue(), rl.getRightChild(), right.getRightChild()));
+            }
+        }
+        return black(key, value, left, right);
+    }
+
+    /**
+     * Rebuilds a node whose left sub-tree lost a black node.
+     */
+    private static <K extends Comparable<K>,V> PersistentRBNode<K,V> balLeft(K key, V value,
+            PersistentRBNode<K,V> left, PersistentRBNode<K,V> right) {
+        if (isRed(left)) {
+            return red(key, value, blacken(left), right);
+        } else if (isBlack(right)) {
+            return balance(key, value, left, redden(right));
+        } else if (isRed(right) && isBlack(right.getLeftChild())) {
+            PersistentRBNode<K,V> rl = right.getLeftChild();
+            return red(rl.getKey(), rl.getValue(),
+                    black(key, value, left, rl.getLeftChild()),
+                    balance(right.getKey(), right.getValue(), rl.getRightChild(), subl(right.getRightChild())));
+        }
+        throw new IllegalStateException("Defect: invariance violation");
+    }
+
+    /**
+     * Rebuilds a node whose right sub-tree lost a black node.
+     */
+    private static <K extends Comparable<K>,V> PersistentRBNode<K,V> balRight(K key, V value,
+            PersistentRBNode<K,V> left, PersistentRBNode<K,V> right) {
+        if (isRed(right)) {
+            return red(key, value, left, blacken(right));
+        } else if (isBlack(left)) {
+            return balance(key, value, redden(left), right);
+        } else if (isRed(left) && isBlack(left.getRightChild())) {
+            PersistentRBNode<K,V> lr = left.getRightChild();
+            return red(lr.getKey(), lr.getValue(),
+                    balance(left.getKey(), left.getValue(), subl(left.getLeftChild()), lr.getLeftChild()),
+                    black(key, value, lr.getRightChild(), right));
+        }
+        throw new IllegalStateException("Defect: invariance violation");
+    }
+
+    /**
+     * Joins the two sub-trees of a deleted node, every key of left being smaller than every key of
+     * right.
+     */
+    private static <K extends Comparable<K>,V> PersistentRBNode<K,V> append(PersistentRBNode<K,V> left,
+            PersistentRBNode<K,V> right) {
+        if (left == null) {
+            return right;
+        } else if (right == null) {
+            return left;
+        } else if (isRed(left) && isRed(right)) {
+            PersistentRBNode<K,V> middle = append(left.getRightChild(), right.getLeftChild());
+            if (isRed(middle)) {
+                return red(middle.getKey(), middle.getValue(),
+                        red(left.getKey(), left.getValue(), left.getLeftChild(), middle.getLeftChild()),
+                        red(right.getKey(), right.getValue(), middle.getRightChild(), right.getRightChild()));
+            }
+            return red(left.getKey(), left.getValue(), left.getLeftChild(),
+                    red(right.getKey(), right.getValue(), middle, right.getRightChild()));
+        } else if (isBlack(left) && isBlack(right)) {
+            PersistentRBNode<K,V> middle = append(left.getRightChild(), right.getLeftChild());
+            if (isRed(middle)) {
+                return red(middle.getKey(), middle.getValue(),
+                        black(left.getKey(), left.getValue(), left.getLeftChild(), middle.getLeftChild()),
+                        black(right.getKey(), right.getValue(), middle.getRightChild(), right.getRightChild()));
+            }
+            return balLeft(left.getKey(), left.getValue(), left.getLeftChild(),
+                    black(right.getKey(), right.getValue(), middle, right.getRightChild()));
+        } else if (isRed(right)) {
+            return red(right.getKey(), right.getValue(), append(left, right.getLeftChild()), right.getRightChild());
+        } else if (isRed(left)) {
+            return red(left.getKey(), left.getValue(), left.getLeftChild(), append(left.getRightChild(), right));
+        }
+        throw new IllegalStateException("Defect: unmatched trees " + left + ", " + right);
+    }
+
+    private static <K extends Comparable<K>,V> PersistentRBNode<K,V> subl(PersistentRBNode<K,V> tree) {
+        if (isBlack(tree)) {
+            return redden(tree);
+        }
+        throw new IllegalStateException("Defect: invariance violation; expected black, got " + tree);
+    }
+
+    private static boolean isRed(PersistentRBNode<?,?> node) {
+        return node != null && node.getColor() == Color.Red;
+    }
+
+    private static boolean isBlack(PersistentRBNode<?,?> node) {
+        return node != null && node.getColor() == Color.Black;
+    }
+
+    private static <K extends Comparable<K>,V> PersistentRBNode<K,V> red(K key, V value,
+            PersistentRBNode<K,V> left, PersistentRBNode<K,V> right) {
+        return new PersistentRBNode<K,V>(key, value, Color.Red, left, right);
+    }
+
+    private static <K extends Comparable<K>,V> PersistentRBNode<K,V> black(K key, V value,
+            PersistentRBNode<K,V> left, PersistentRBNode<K,V> right) {
+        return new PersistentRBNode<K,V>(key, value, Color.Black, left, right);
+    }
+
+    private static <K extends Comparable<K>,V> PersistentRBNode<K,V> blacken(PersistentRBNode<K,V> node) {
+        return node == null || node.getColor() == Color.Black ? node
+                : black(node.getKey(), node.getValue(), node.getLeftChild(), node.getRightChild());
+    }
+
+    private static <K extends Comparable<K>,V> PersistentRBNode<K,V> redden(PersistentRBNode<K,V> node) {
+        return node.getColor() == Color.Red ? node
+                : red(node.getKey(), node.getValue(), node.getLeftChild(), node.getRightChild());
+    }
+
+    /**
+     * An in order iterator over an immutable tree. With no parent pointers to climb, it keeps the
+     * path of pending ancestors in an array sized from the height bound of the tree.
+     */
+    private static final class EntryIterator<K extends Comparable<K>,V> implements Iterator<Map.Entry<K,V>> {
+        private final PersistentRBNode<K,V>[] stack;
+        private int depth;
+
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        EntryIterator(PersistentRBNode<K,V> root) {
+            //2*log2(n+1), rounded up
+            stack = new PersistentRBNode[2 * (32 - Integer.numberOfLeadingZeros(PersistentRBNode.sizeOf(root) + 1))];
+            this.pushLeft(root);
+        }
+
+        private void pushLeft(PersistentRBNode<K,V> node) {
+            while (node != null) {
+                if (depth == stack.length) {
+                    //an immutable tree cannot change under the iterator, so this is a broken tree
+                    throw new ConcurrentModificationException("Tree deeper than its height bound");
+                }
+                stack[depth++] = node;
+                node = node.getLeftChild();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0;
+        }
+
+        @Override
+        public Map.Entry<K,V> next() {
+            if (depth == 0) {
+                throw new NoSuchElementException();
+            }
+            PersistentRBNode<K,V> node = stack[--depth];
+            stack[depth] = null;
+            this.pushLeft(node.getRightChild());
+            return node;
+        }
+    }
+}
@@ -5,8 +5,6 @@
  */
 package rbtree;
 
-import java.util.Stack;
-
 /**
  * An iterator that traverses a tree post order
  *
@@ -14,7 +12,7 @@ import java.util.Stack;
  */
 public class PostorderTreeIterator implements TreeIterator {
 
-    private Stack<Node> traversalStack;
+    private final NodeStack traversalStack;
 
     /**
      * Constructor with one perimeter
@@ -22,7 +20,7 @@ public class PostorderTreeIterator implements TreeIterator {
      * @param root the root node of the tree
      */
     public PostorderTreeIterator(Node root) {
-        traversalStack = new Stack<Node>();
+        traversalStack = new NodeStack(root);
         leafPath(root);
     }
 
@@ -51,7 +49,7 @@ public class PostorderTreeIterator implements TreeIterator {
      */
     @Override
     public boolean hasMore() {
-        return !traversalStack.empty();
+        return !traversalStack.isEmpty();
     }
 
     /**
@@ -66,7 +64,7 @@ public class PostorderTreeIterator implements TreeIterator {
             Node returnNode = traversalStack.pop();
             if (hasMore()) {
                 Node parentOfReturnNode = traversalStack.peek();
-                if (returnNode.equals(parentOfReturnNode.getLeftChild())) {
+                if (returnNode == parentOfReturnNode.getLeftChild()) {
                     leafPath(parentOfReturnNode.getRightChild());
                 }
             }
@@ -5,8 +5,6 @@
  */
 package rbtree;
 
-import java.util.Stack;
-
 /**
  * An iterator that traverses a tree pre order
  *
@@ -14,7 +12,7 @@ import java.util.Stack;
  */
 public class PreorderTreeIterator implements TreeIterator {
 
-    private Stack<Node> traversalStack;
+    private final NodeStack traversalStack;
 
     /**
      * Constructor with one perimeter
@@ -22,8 +20,10 @@ public class PreorderTreeIterator implements TreeIterator {
      * @param root the root node of the tree
      */
     public PreorderTreeIterator(Node root) {
-        traversalStack = new Stack<Node>();
-        traversalStack.push(root);
+        traversalStack = new NodeStack(root);
+        if (root.getKey() != null) {
+            traversalStack.push(root);
+        }
     }
 
     /**
@@ -34,7 +34,7 @@ public class PreorderTreeIterator implements TreeIterator {
      */
     @Override
     public boolean hasMore() {
-        return !traversalStack.empty();
+        return !traversalStack.isEmpty();
     }
 
     /**
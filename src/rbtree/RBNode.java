@@ -4,14 +4,17 @@ package rbtree;
  * A node that contains a pointer to its parent, left child, and right child. 
  * Each node contain a key and a value or data. This node is for a red-black tree,
  * so each node has a color of Color.Black or Color.Red
- * @param <K> The data type of the key. K must extend from the Comparable 
+ * @param <K> The data type of the key.
  * @param <V> The data type of the value or data.
  */
-public class RBNode<K extends Comparable<K>, V> implements Node{
+public class RBNode<K, V> implements Node{
     private RBNode<K, V> parent,left,right;
     private K key;
     private V value;
     private Color color; 
+    private int size;
+    //the normalized prefix of key, for trees with a KeyNormalizer
+    private long prefix;
     
     /**
      * Constructor for the Node class with three arguments.
@@ -22,6 +25,7 @@ public class RBNode<K extends Comparable<K>, V> implements Node{
     public RBNode(K key,V value, Color color){
         this.key=key;
         this.color=color;
+        this.size=key == null ? 0 : 1;
         parent=null;
         left=null;
         right=null;
@@ -36,6 +40,7 @@ public class RBNode<K extends Comparable<K>, V> implements Node{
     public RBNode(K key,V value){
         this.key=key;
         this.color=null;
+        this.size=key == null ? 0 : 1;
         parent=null;
         left=null;
         right=null;
@@ -90,6 +95,22 @@ public class RBNode<K extends Comparable<K>, V> implements Node{
         this.value=newValue;
     }
     
+    /**
+     * Setter for the size of the sub-tree rooted at this node.
+     * @param newSize The number of nodes in the sub-tree, including this node.
+     */
+    public void setSize(int newSize){
+        this.size=newSize;
+    }
+    
+    /**
+     * Setter for the normalized prefix of the key, kept by trees with a KeyNormalizer.
+     * @param newPrefix The prefix of the key.
+     */
+    void setPrefix(long newPrefix){
+        this.prefix=newPrefix;
+    }
+    
     /**
      * Getter for the parent node
      * @return The node of the parent to this node.
@@ -137,4 +158,20 @@ public class RBNode<K extends Comparable<K>, V> implements Node{
     public V getValue(){
         return this.value;
     }
+    
+    /**
+     * Getter for the size of the sub-tree rooted at this node.
+     * @return The number of nodes in the sub-tree, including this node. A nil node has size 0.
+     */
+    public int getSize(){
+        return this.size;
+    }
+    
+    /**
+     * Getter for the normalized prefix of the key.
+     * @return The prefix of the key, or 0 if the tree of this node has no KeyNormalizer
+     */
+    long getPrefix(){
+        return this.prefix;
+    }
 }
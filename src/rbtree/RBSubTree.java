@@ -0,0 +1,180 @@
+package rbtree;
+
+/**
+ * A lazy view of the nodes of a red black tree whose keys lie between two
+ * bounds. The view holds no nodes of its own: every call seeks into the
+ * underlying tree in O(log n), so the view always reflects the current
+ * contents of the tree.
+ * @param <K> the data type of the key for the nodes in the red black tree
+ * @param <V> the data type of the data stored in each node in the red black tree
+ */
+public class RBSubTree<K, V> {
+
+    private final RBTree<K, V> tree;
+    //a null bound means the view is unbounded on that side
+    private final K lo, hi;
+    private final boolean loInclusive, hiInclusive;
+
+    /**
+     * Constructor with five parameters
+     * @param tree the tree to view
+     * @param lo the lowest key of the view, or null for no lower bound
+     * @param loInclusive whether a node with key lo is in the view
+     * @param hi the highest key of the view, or null for no upper bound
+     * @param hiInclusive whether a node with key hi is in the view
+     */
+    RBSubTree(RBTree<K, V> tree, K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+        this.tree = tree;
+        this.lo = lo;
+        this.loInclusive = loInclusive;
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+    }
+
+    /**
+     * Searches the view for the node with key key.
+     * @param key The key of the node you wish to search for.
+     * @return The node with key key, or null if there is no such node or key
+     * lies outside the view
+     */
+    public RBNode<K, V> search(K key) {
+        return this.inRange(key) ? tree.search(key) : null;
+    }
+
+    /**
+     * Find the node with the smallest key in the view.
+     * @return the node with the smallest key, or null if the view is empty
+     */
+    public RBNode<K, V> first() {
+        RBNode<K, V> node = lo == null ? tree.firstNode() : tree.above(lo, loInclusive);
+        return node == null || this.tooHigh(node.getKey()) ? null : node;
+    }
+
+    /**
+     * Find the node with the largest key in the view.
+     * @return the node with the largest key, or null if the view is empty
+     */
+    public RBNode<K, V> last() {
+        RBNode<K, V> node = hi == null ? tree.lastNode() : tree.below(hi, hiInclusive);
+        return node == null || this.tooLow(node.getKey()) ? null : node;
+    }
+
+    /**
+     * The number of nodes in the view, counted in O(log n) from the sub-tree
+     * sizes.
+     * @return the number of nodes in the view
+     */
+    public int size() {
+        int hiRank = hi == null ? tree.size() : tree.rank(hi, hiInclusive);
+        int loRank = lo == null ? 0 : tree.rank(lo, !loInclusive);
+        return Math.max(hiRank - loRank, 0);
+    }
+
+    /**
+     * Checks if the view has no nodes.
+     * @return true if no node of the tree lies in the view
+     */
+    public boolean isEmpty() {
+        return this.first() == null;
+    }
+
+    /**
+     * Returns an iterator that traverses the view in order. It seeks to the
+     * first node once and then follows successors, so a scan costs
+     * O(log n + m) for m nodes in the view.
+     * @return RangeTreeIterator object that will perform an in order traversal
+     * of the view
+     */
+    public RangeTreeIterator<K, V> inorderTraverse() {
+        RBNode<K, V> fence = hi == null ? null : tree.above(hi, !hiInclusive);
+        return new RangeTreeIterator<K, V>(tree, this.first(), fence);
+    }
+
+    /**
+     * A narrower view of the nodes with keys from newLo to newHi.
+     * @param newLo the lowest key of the new view
+     * @param newLoInclusive whether a node with key newLo is in the new view
+     * @param newHi the highest key of the new view
+     * @param newHiInclusive whether a node with key newHi is in the new view
+     * @return the view of the nodes between newLo and newHi
+     * @throws IllegalArgumentException if newLo is larger than newHi, or either
+     * bound lies outside this view
+     */
+    public RBSubTree<K, V> subMap(K newLo, boolean newLoInclusive, K newHi, boolean newHiInclusive) {
+        if (tree.compare(newLo, newHi) > 0) {
+            throw new IllegalArgumentException("lo > hi: " + newLo + ", " + newHi);
+        }
+        this.checkBound(newLo, newLoInclusive);
+        this.checkBound(newHi, newHiInclusive);
+        return new RBSubTree<K, V>(tree, newLo, newLoInclusive, newHi, newHiInclusive);
+    }
+
+    /**
+     * A narrower view of the nodes with keys smaller than, or equal to if
+     * inclusive, newHi.
+     * @param newHi the highest key of the new view
+     * @param inclusive whether a node with key newHi is in the new view
+     * @return the view of the nodes of this view up to newHi
+     * @throws IllegalArgumentException if newHi lies outside this view
+     */
+    public RBSubTree<K, V> headMap(K newHi, boolean inclusive) {
+        this.checkBound(newHi, inclusive);
+        return new RBSubTree<K, V>(tree, lo, loInclusive, newHi, inclusive);
+    }
+
+    /**
+     * A narrower view of the nodes with keys larger than, or equal to if
+     * inclusive, newLo.
+     * @param newLo the lowest key of the new view
+     * @param inclusive whether a node with key newLo is in the new view
+     * @return the view of the nodes of this view from newLo on
+     * @throws IllegalArgumentException if newLo lies outside this view
+     */
+    public RBSubTree<K, V> tailMap(K newLo, boolean inclusive) {
+        this.checkBound(newLo, inclusive);
+        return new RBSubTree<K, V>(tree, newLo, inclusive, hi, hiInclusive);
+    }
+
+    /**
+     * Checks if key lies between the bounds of the view.
+     * @param key the key to check
+     * @return true if a node with key key would be in the view
+     */
+    public boolean inRange(K key) {
+        return !this.tooLow(key) && !this.tooHigh(key);
+    }
+
+    private boolean tooLow(K key) {
+        if (lo == null) {
+            return false;
+        }
+        int compare = tree.compare(key, lo);
+        return compare < 0 || (compare == 0 && !loInclusive);
+    }
+
+    private boolean tooHigh(K key) {
+        if (hi == null) {
+            return false;
+        }
+        int compare = tree.compare(key, hi);
+        return compare > 0 || (compare == 0 && !hiInclusive);
+    }
+
+    /**
+     * Checks that a bound of a narrower view lies within this view. An
+     * exclusive bound may sit on an exclusive bound of this view.
+     * @param bound the bound of the narrower view
+     * @param inclusive whether the narrower view includes bound
+     */
+    private void checkBound(K bound, boolean inclusive) {
+        boolean outside;
+        if (inclusive) {
+            outside = !this.inRange(bound);
+        } else {
+            outside = (lo != null && tree.compare(bound, lo) < 0) || (hi != null && tree.compare(bound, hi) > 0);
+        }
+        if (outside) {
+            throw new IllegalArgumentException("Key out of range: " + bound);
+        }
+    }
+}
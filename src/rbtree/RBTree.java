@@ -1,17 +1,66 @@
 
 package rbtree;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * Red Black Tree that implements insert, delete, traversal, minimum, maximum, search, predecessor,
  * and successor.
+ * <p>
+ * Keys are ordered by a Comparator given to the constructor, or by their natural order if there
+ * is none. A tree may also be given a KeyNormalizer, which maps every key to a long prefix that
+ * orders keys the same way wherever two prefixes differ. Each node then keeps the prefix of its
+ * key, and searches compare prefixes first, as one unsigned long comparison, and call the
+ * comparator only when two prefixes are equal. For long String or byte[] keys that differ early
+ * this replaces most comparator calls, each a virtual call and a walk over two keys, with a
+ * comparison of two longs already in the nodes.
  * @author Danny
  * @param <K> the data type of the key for the nodes in the red black tree
  * @param <V> the data type of the data stored in each node in the red black tree
  */
-public class RBTree<K extends Comparable<K>,V>{
-    
+public class RBTree<K,V>{
+
+    //pollFirstN deletes fewer nodes than this one by one, as a split costs more for a handful
+    private static final int POLL_SPLIT_THRESHOLD = 32;
+
     private RBNode<K,V>  root;
-    private RBNode<K,V> nil = new RBNode(null,null, Color.Black);
+    //never written once built, so trees that are split or joined can share their nils
+    private final RBNode<K,V> nil = new RBNode<K,V>(null,null, Color.Black);
+    //null for the natural order of the keys
+    private final Comparator<? super K> comparator;
+    //null if the nodes keep no prefixes
+    private final KeyNormalizer<? super K> normalizer;
+    private RBTreeMetrics metrics = RBTreeMetrics.NOOP;
+    //the number of comparisons made by the last call to descend
+    private int descentComparisons;
+    //the key's comparison with the node returned by the last call to descend, and the key's prefix
+    private int descentCompare;
+    private long descentPrefix;
+    //deleted nodes kept for reuse, linked through their right children
+    private RBNode<K,V> freeNodes;
+    private int freeNodeCount;
+    private int nodePoolCapacity;
+    //the number of structural modifications, so iterators can fail fast
+    int modCount;
     
     /**
      * Constructor of RBTree with one perimeter
@@ -19,15 +68,330 @@ public class RBTree<K extends Comparable<K>,V>{
      */
     public RBTree(RBNode<K,V> tree) {
         root = tree;
+        comparator = null;
+        normalizer = null;
+        countSubTree(root);
     }
     
     /**
-     * A new empty red black tree 
+     * A new empty red black tree ordered by the natural order of its keys, which must then be
+     * Comparable
      */
     public RBTree() {
+        this(null, null);
+    }
+    
+    /**
+     * A new empty red black tree ordered by comparator
+     * @param comparator the order of the keys, or null for their natural order
+     */
+    public RBTree(Comparator<? super K> comparator) {
+        this(comparator, null);
+    }
+    
+    /**
+     * A new empty red black tree ordered by comparator, whose nodes keep the prefix normalizer
+     * computes for their keys. The normalizer must agree with the comparator: whenever the prefixes
+     * of two keys differ, as unsigned longs, the comparator must order the keys the same way.
+     * @param comparator the order of the keys, or null for their natural order
+     * @param normalizer computes the prefixes of the keys, or null to keep none
+     */
+    public RBTree(Comparator<? super K> comparator, KeyNormalizer<? super K> normalizer) {
+        this.comparator = comparator;
+        this.normalizer = normalizer;
         root = nil;
     }
     
+    /**
+     * The comparator ordering the keys.
+     * @return the comparator, or null if the keys are in their natural order
+     */
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+    
+    /**
+     * The normalizer computing the prefixes of the keys.
+     * @return the normalizer, or null if the nodes keep no prefixes
+     */
+    public KeyNormalizer<? super K> keyNormalizer() {
+        return normalizer;
+    }
+    
+    /**
+     * Reports the events of this tree, and of the trees split or joined from it, to metrics.
+     * @param metrics the metrics to report to, or null to report to none
+     */
+    public void setMetrics(RBTreeMetrics metrics) {
+        this.metrics = metrics == null ? RBTreeMetrics.NOOP : metrics;
+    }
+    
+    /**
+     * The metrics this tree reports to.
+     * @return the metrics, RBTreeMetrics.NOOP if there are none
+     */
+    public RBTreeMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Keeps up to capacity deleted nodes for reuse by later inserts, so a tree whose size holds
+     * steady under inserts and deletes stops allocating nodes once the pool has filled. The pool
+     * belongs to this tree and needs no locking, as the tree itself needs a lock to be shared.
+     * <p>
+     * A node returned by search, floor or any other method must not be used after its own key is
+     * deleted, as an insert may give it a new key and value. Deleting other keys leaves it alone,
+     * as delete moves nodes rather than their entries. Nodes are not pooled by default.
+     * @param capacity the most deleted nodes to keep, 0 to keep none
+     * @throws IllegalArgumentException if capacity is negative
+     */
+    public void setNodePoolCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Negative capacity: " + capacity);
+        }
+        nodePoolCapacity = capacity;
+        while (freeNodeCount > capacity) {
+            freeNodes = freeNodes.getRightChild();
+            freeNodeCount--;
+        }
+    }
+    
+    /**
+     * The most deleted nodes this tree keeps for reuse.
+     * @return the capacity of the node pool, 0 if nodes are not pooled
+     */
+    public int getNodePoolCapacity() {
+        return nodePoolCapacity;
+    }
+    
+    /**
+     * The number of nodes on the longest path from the root down to a leaf, walking every node.
+     * @return the height of the tree, 0 if it is empty
+     */
+    public int height() {
+        return height(root);
+    }
+    
+    /**
+     * The number of black nodes on every path from the root down to a leaf, not counting the nil
+     * leaf.
+     * @return the black height of the tree, 0 if it is empty
+     */
+    public int blackHeight() {
+        return blackHeight(root);
+    }
+    
+    /**
+     * Checks every invariant of the tree, walking every node: every nil is black, keyless, empty
+     * and has no parent; the root is black and has no parent; every node is the parent of its children; no red
+     * node has a red child; every path down to a leaf passes the same number of black nodes; keys
+     * strictly increase in order; every sub-tree size is right; and every node keeps the prefix of
+     * its key if the tree has a KeyNormalizer.
+     * @throws IllegalStateException describing the first broken invariant found
+     */
+    public void verify() {
+        if (nil.getKey() != null || nil.getColor() != Color.Black || nil.getSize() != 0 || nil.getParent() != null) {
+            throw new IllegalStateException("The nil sentinel was modified");
+        }
+        if (root.getKey() != null) {
+            if (root.getParent() != null) {
+                throw new IllegalStateException("The root " + root.getKey() + " has a parent");
+            }
+            if (root.getColor() != Color.Black) {
+                throw new IllegalStateException("The root " + root.getKey() + " is red");
+            }
+        }
+        this.verify(root, null, null, null);
+    }
+    
+    /**
+     * Checks the sub-tree rooted at node.
+     * @param node the root of the sub-tree
+     * @param parent the parent node should have, or null for the root
+     * @param low the node with the largest key smaller than every key of the sub-tree, or null
+     * @param high the node with the smallest key larger than every key of the sub-tree, or null
+     * @return the black height of the sub-tree
+     */
+    private int verify(RBNode<K,V> node, RBNode<K,V> parent, RBNode<K,V> low, RBNode<K,V> high) {
+        if (node == null) {
+            throw new IllegalStateException("A child of " + (parent == null ? "the root" : parent.getKey()) + " is null");
+        }
+        if (node.getKey() == null) {
+            if (node.getColor() != Color.Black || node.getSize() != 0 || node.getParent() != null) {
+                throw new IllegalStateException("A leaf below " + (parent == null ? "the root" : parent.getKey())
+                        + " is not a black, empty nil with no parent");
+            }
+            return 0;
+        }
+        K key = node.getKey();
+        if (node.getParent() != parent) {
+            throw new IllegalStateException("The parent pointer of " + key + " is wrong");
+        }
+        if ((low != null && this.compare(low.getKey(), key) >= 0) || (high != null && this.compare(key, high.getKey()) >= 0)) {
+            throw new IllegalStateException("The key " + key + " is out of order");
+        }
+        if (node.getColor() == Color.Red) {
+            if (node.getLeftChild().getColor() == Color.Red || node.getRightChild().getColor() == Color.Red) {
+                throw new IllegalStateException("The red node " + key + " has a red child");
+            }
+        } else if (node.getColor() != Color.Black) {
+            throw new IllegalStateException("The node " + key + " has no color");
+        }
+        if (normalizer != null && node.getPrefix() != normalizer.prefix(key)) {
+            throw new IllegalStateException("The prefix of " + key + " is stale");
+        }
+        int leftHeight = this.verify(node.getLeftChild(), node, low, node);
+        int rightHeight = this.verify(node.getRightChild(), node, node, high);
+        if (leftHeight != rightHeight) {
+            throw new IllegalStateException("The black heights below " + key + " differ: "
+                    + leftHeight + " and " + rightHeight);
+        }
+        if (node.getSize() != node.getLeftChild().getSize() + node.getRightChild().getSize() + 1) {
+            throw new IllegalStateException("The size of " + key + " is wrong: " + node.getSize());
+        }
+        return leftHeight + (node.getColor() == Color.Black ? 1 : 0);
+    }
+    
+    private static int height(RBNode<?,?> node) {
+        if (node.getKey() == null) {
+            return 0;
+        }
+        return Math.max(height(node.getLeftChild()), height(node.getRightChild())) + 1;
+    }
+    
+    /**
+     * Builds a balanced red black tree from entries sorted by strictly increasing key, in linear
+     * time and without any rotations.
+     * @param <K> the data type of the keys
+     * @param <V> the data type of the values
+     * @param entries the entries in increasing key order
+     * @param size the number of entries to read from entries
+     * @return a new tree holding the first size entries
+     * @throws IllegalArgumentException if the keys are not strictly increasing
+     * @throws java.util.NoSuchElementException if entries has fewer than size entries
+     */
+    public static <K extends Comparable<K>,V> RBTree<K,V> fromSorted(
+            Iterator<? extends Map.Entry<? extends K, ? extends V>> entries, int size) {
+        return fromSorted(entries, size, null, null);
+    }
+    
+    /**
+     * Builds a balanced red black tree ordered by comparator from entries sorted by strictly
+     * increasing key, in linear time and without any rotations.
+     * @param <K> the data type of the keys
+     * @param <V> the data type of the values
+     * @param entries the entries in increasing key order
+     * @param size the number of entries to read from entries
+     * @param comparator the order of the keys, or null for their natural order
+     * @param normalizer computes the prefixes of the keys, or null to keep none
+     * @return a new tree holding the first size entries
+     * @throws IllegalArgumentException if the keys are not strictly increasing
+     * @throws java.util.NoSuchElementException if entries has fewer than size entries
+     */
+    public static <K,V> RBTree<K,V> fromSorted(Iterator<? extends Map.Entry<? extends K, ? extends V>> entries,
+            int size, Comparator<? super K> comparator, KeyNormalizer<? super K> normalizer) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative size: " + size);
+        }
+        RBTree<K,V> tree = new RBTree<K,V>(comparator, normalizer);
+        if (size > 0) {
+            SortedBuilder<K,V> builder = new SortedBuilder<K,V>(entries, tree, size);
+            tree.root = builder.build(0, 0, size - 1);
+            tree.root.setParent(null);
+        }
+        return tree;
+    }
+    
+    /**
+     * Builds a balanced red black tree from entries sorted by strictly increasing key, in linear
+     * time and without any rotations.
+     * @param <K> the data type of the keys
+     * @param <V> the data type of the values
+     * @param entries the entries in increasing key order
+     * @return a new tree holding every entry of entries
+     * @throws IllegalArgumentException if the keys are not strictly increasing
+     */
+    public static <K extends Comparable<K>,V> RBTree<K,V> fromSorted(
+            Iterator<? extends Map.Entry<? extends K, ? extends V>> entries) {
+        //the shape depends on the size, so buffer the entries first
+        List<Map.Entry<? extends K, ? extends V>> buffer = new ArrayList<Map.Entry<? extends K, ? extends V>>();
+        while (entries.hasNext()) {
+            buffer.add(entries.next());
+        }
+        return fromSorted(buffer.iterator(), buffer.size());
+    }
+    
+    /**
+     * Builds a balanced red black tree from keys and values in any order. The entries are sorted
+     * in parallel and then built in linear time. If a key appears more than once, the last value
+     * for it wins, as if the entries were put one after another.
+     * @param <K> the data type of the keys
+     * @param <V> the data type of the values
+     * @param keys the keys, in any order
+     * @param values the value of each key in keys
+     * @return a new tree holding every key with its value
+     * @throws IllegalArgumentException if keys and values have different lengths
+     */
+    public static <K extends Comparable<K>,V> RBTree<K,V> fromUnsorted(K[] keys, V[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("Keys and values have different lengths: "
+                    + keys.length + " and " + values.length);
+        }
+        @SuppressWarnings("unchecked")
+        Map.Entry<K,V>[] entries = new Map.Entry[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            entries[i] = new AbstractMap.SimpleImmutableEntry<K,V>(keys[i], values[i]);
+        }
+        //the sort is stable, so the last of several equal keys stays last
+        Arrays.parallelSort(entries, new Comparator<Map.Entry<K,V>>() {
+            @Override
+            public int compare(Map.Entry<K,V> a, Map.Entry<K,V> b) {
+                return a.getKey().compareTo(b.getKey());
+            }
+        });
+        int unique = 0;
+        for (int i = 0; i < entries.length; i++) {
+            if (unique > 0 && entries[unique - 1].getKey().compareTo(entries[i].getKey()) == 0) {
+                entries[unique - 1] = entries[i];
+            } else {
+                entries[unique++] = entries[i];
+            }
+        }
+        return fromSorted(Arrays.asList(entries).iterator(), unique);
+    }
+    
+    /**
+     * Restores a tree from a snapshot written by writeTo, building it in linear time as the entries
+     * are decoded. The stream is read past the end of the snapshot and is not closed.
+     * @param <K> the data type of the keys
+     * @param <V> the data type of the values
+     * @param in the stream holding the snapshot
+     * @param keyCodec the codec the keys were written with
+     * @param valueCodec the codec the values were written with
+     * @return the restored tree
+     * @throws IOException if in cannot be read or does not hold a snapshot
+     */
+    public static <K extends Comparable<K>,V> RBTree<K,V> readFrom(InputStream in,
+            Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        return TreeSnapshot.read(in, keyCodec, valueCodec);
+    }
+    
+    /**
+     * Restores a tree from a snapshot written by writeTo, building it in linear time as the entries
+     * are decoded. The channel is read past the end of the snapshot and is not closed.
+     * @param <K> the data type of the keys
+     * @param <V> the data type of the values
+     * @param channel the channel holding the snapshot
+     * @param keyCodec the codec the keys were written with
+     * @param valueCodec the codec the values were written with
+     * @return the restored tree
+     * @throws IOException if channel cannot be read or does not hold a snapshot
+     */
+    public static <K extends Comparable<K>,V> RBTree<K,V> readFrom(ReadableByteChannel channel,
+            Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        return TreeSnapshot.read(Channels.newInputStream(channel), keyCodec, valueCodec);
+    }
+    
     /**
      * Searches the red black tree for node with the key <K> key. 
      * @param key The key of the node you wish to search for.
@@ -36,14 +400,19 @@ public class RBTree<K extends Comparable<K>,V>{
      */
     public RBNode<K,V> search(K key) {
         RBNode<K,V> traverse = root;
+        long prefix = this.prefixOf(key);
+        int comparisons = 0;
         
         while (traverse.getKey() != null) {
+            int compare = this.compare(key, prefix, traverse);
+            comparisons++;
             //if the traverse has identical key, return the node
-            if (key.compareTo(traverse.getKey()) == 0) {
+            if (compare == 0) {
+                metrics.search(comparisons);
                 return traverse;
             } else {
                 //else go to either the left child, if < key, or right child, if > key.
-                if (key.compareTo(traverse.getKey()) < 0) {
+                if (compare < 0) {
                     traverse = traverse.getLeftChild();
                 } else {
                     traverse = traverse.getRightChild();
@@ -51,10 +420,19 @@ public class RBTree<K extends Comparable<K>,V>{
             }
         }
         //no node with key matches
+        metrics.search(comparisons);
         return null;
         
     }
     
+    /**
+     * Removes every node from the tree.
+     */
+    public void clear() {
+        root = nil;
+        modCount++;
+    }
+    
     /**
      * Find the node with the minimum key at sub-tree with root of tree
      * @param tree The root node of the tree you wish to find the minimum of
@@ -129,13 +507,314 @@ public class RBTree<K extends Comparable<K>,V>{
         }
     }
     
+    /**
+     * The number of nodes in the tree.
+     * @return the number of nodes in the tree
+     */
+    public int size() {
+        return root.getSize();
+    }
+    
+    /**
+     * The number of nodes whose key is smaller than key. key does not need to be in the tree.
+     * @param key the key to rank
+     * @return the number of nodes with a key smaller than key
+     */
+    public int rank(K key) {
+        return this.rank(key, false);
+    }
+    
+    /**
+     * Find the node with the index-th smallest key, counting from 0.
+     * @param index the position of the node in an in order traversal
+     * @return the node with index nodes with smaller keys before it
+     * @throws IndexOutOfBoundsException if index is negative or not smaller than size()
+     */
+    public RBNode<K,V> select(int index) {
+        if (index < 0 || index >= root.getSize()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + root.getSize());
+        }
+        RBNode<K,V> traverse = root;
+        while (true) {
+            int leftSize = traverse.getLeftChild().getSize();
+            if (index < leftSize) {
+                traverse = traverse.getLeftChild();
+            } else if (index == leftSize) {
+                return traverse;
+            } else {
+                //skip the left sub-tree and traverse itself
+                index -= leftSize + 1;
+                traverse = traverse.getRightChild();
+            }
+        }
+    }
+    
+    /**
+     * The number of nodes with a key between lo and hi, both inclusive.
+     * @param lo the smallest key to count
+     * @param hi the largest key to count
+     * @return the number of nodes with lo <= key <= hi, or 0 if lo is larger than hi
+     */
+    public int countRange(K lo, K hi) {
+        if (this.compare(lo, hi) > 0) {
+            return 0;
+        }
+        return this.rank(hi, true) - this.rank(lo, false);
+    }
+    
+    /**
+     * Find the node at a percentile of the keys, using the nearest-rank method.
+     * @param percent the percentile, from 0 to 100
+     * @return the smallest node with at least percent percent of the nodes at or below it,
+     * or null if the tree is empty
+     * @throws IllegalArgumentException if percent is not between 0 and 100
+     */
+    public RBNode<K,V> percentile(double percent) {
+        if (!(percent >= 0 && percent <= 100)) {
+            throw new IllegalArgumentException("Percentile out of range: " + percent);
+        }
+        if (root.getSize() == 0) {
+            return null;
+        }
+        int rank = (int) Math.ceil(percent / 100 * root.getSize());
+        return this.select(Math.max(rank, 1) - 1);
+    }
+    
+    /**
+     * Find the node with the median key. For an even number of nodes, the lower of the two middle
+     * nodes is returned.
+     * @return the node with the median key, or null if the tree is empty
+     */
+    public RBNode<K,V> median() {
+        if (root.getSize() == 0) {
+            return null;
+        }
+        return this.select((root.getSize() - 1) / 2);
+    }
+    
+    /**
+     * The number of nodes whose key is smaller than key, or smaller than or equal to key.
+     * @param key the key to rank
+     * @param inclusive whether a node with key key is counted
+     * @return the number of nodes before key
+     */
+    int rank(K key, boolean inclusive) {
+        int rank = 0;
+        RBNode<K,V> traverse = root;
+        long prefix = this.prefixOf(key);
+        while (traverse.getKey() != null) {
+            int compare = this.compare(key, prefix, traverse);
+            if (compare < 0 || (compare == 0 && !inclusive)) {
+                traverse = traverse.getLeftChild();
+            } else {
+                //traverse and its left sub-tree are all before key
+                rank += traverse.getLeftChild().getSize() + 1;
+                traverse = traverse.getRightChild();
+            }
+        }
+        return rank;
+    }
+    
+    /**
+     * Sets the sub-tree size of every node below tree, for trees built outside of this class.
+     * @param tree the root of the sub-tree to count
+     * @return the number of nodes in the sub-tree
+     */
+    private static int countSubTree(RBNode<?,?> tree) {
+        if (tree.getKey() == null) {
+            return 0;
+        }
+        int size = countSubTree(tree.getLeftChild()) + countSubTree(tree.getRightChild()) + 1;
+        tree.setSize(size);
+        return size;
+    }
+    
+    /**
+     * Find the node with the largest key smaller than or equal to key. key does not need to be in the tree.
+     * @param key the key to search below
+     * @return the node with the largest key <= key, or null if there is none
+     */
+    public RBNode<K,V> floor(K key) {
+        return this.below(key, true);
+    }
+    
+    /**
+     * Find the node with the smallest key larger than or equal to key. key does not need to be in the tree.
+     * @param key the key to search above
+     * @return the node with the smallest key >= key, or null if there is none
+     */
+    public RBNode<K,V> ceiling(K key) {
+        return this.above(key, true);
+    }
+    
+    /**
+     * Find the node with the largest key strictly smaller than key. key does not need to be in the tree.
+     * @param key the key to search below
+     * @return the node with the largest key < key, or null if there is none
+     */
+    public RBNode<K,V> lower(K key) {
+        return this.below(key, false);
+    }
+    
+    /**
+     * Find the node with the smallest key strictly larger than key. key does not need to be in the tree.
+     * @param key the key to search above
+     * @return the node with the smallest key > key, or null if there is none
+     */
+    public RBNode<K,V> higher(K key) {
+        return this.above(key, false);
+    }
+    
+    /**
+     * A lazy view of the nodes with keys from lo to hi. Nothing is copied; the view reads the tree
+     * as it is when the view is used.
+     * @param lo the lowest key of the view
+     * @param loInclusive whether a node with key lo is in the view
+     * @param hi the highest key of the view
+     * @param hiInclusive whether a node with key hi is in the view
+     * @return the view of the nodes between lo and hi
+     * @throws IllegalArgumentException if lo is larger than hi
+     */
+    public RBSubTree<K,V> subMap(K lo, boolean loInclusive, K hi, boolean hiInclusive) {
+        if (this.compare(lo, hi) > 0) {
+            throw new IllegalArgumentException("lo > hi: " + lo + ", " + hi);
+        }
+        return new RBSubTree<K,V>(this, lo, loInclusive, hi, hiInclusive);
+    }
+    
+    /**
+     * A lazy view of the nodes with keys from lo, inclusive, to hi, exclusive.
+     * @param lo the lowest key of the view
+     * @param hi the key just past the view
+     * @return the view of the nodes with lo <= key < hi
+     * @throws IllegalArgumentException if lo is larger than hi
+     */
+    public RBSubTree<K,V> subMap(K lo, K hi) {
+        return this.subMap(lo, true, hi, false);
+    }
+    
+    /**
+     * A lazy view of the nodes with keys smaller than, or equal to if inclusive, hi.
+     * @param hi the highest key of the view
+     * @param inclusive whether a node with key hi is in the view
+     * @return the view of the nodes up to hi
+     */
+    public RBSubTree<K,V> headMap(K hi, boolean inclusive) {
+        return new RBSubTree<K,V>(this, null, false, hi, inclusive);
+    }
+    
+    /**
+     * A lazy view of the nodes with keys smaller than hi.
+     * @param hi the key just past the view
+     * @return the view of the nodes with key < hi
+     */
+    public RBSubTree<K,V> headMap(K hi) {
+        return this.headMap(hi, false);
+    }
+    
+    /**
+     * A lazy view of the nodes with keys larger than, or equal to if inclusive, lo.
+     * @param lo the lowest key of the view
+     * @param inclusive whether a node with key lo is in the view
+     * @return the view of the nodes from lo on
+     */
+    public RBSubTree<K,V> tailMap(K lo, boolean inclusive) {
+        return new RBSubTree<K,V>(this, lo, inclusive, null, false);
+    }
+    
+    /**
+     * A lazy view of the nodes with keys larger than or equal to lo.
+     * @param lo the lowest key of the view
+     * @return the view of the nodes with key >= lo
+     */
+    public RBSubTree<K,V> tailMap(K lo) {
+        return this.tailMap(lo, true);
+    }
+    
+    /**
+     * The node with the smallest key in the tree.
+     * @return the node with the smallest key, or null if the tree is empty
+     */
+    RBNode<K,V> firstNode() {
+        return root.getKey() == null ? null : this.minimum(root);
+    }
+    
+    /**
+     * The node with the largest key in the tree.
+     * @return the node with the largest key, or null if the tree is empty
+     */
+    RBNode<K,V> lastNode() {
+        return root.getKey() == null ? null : this.maximum(root);
+    }
+    
+    /**
+     * The root node of the tree.
+     * @return the root, or the nil sentinel if the tree is empty
+     */
+    RBNode<K,V> rootNode() {
+        return root;
+    }
+    
+    /**
+     * Find the node with the smallest key larger than, or equal to if inclusive, key.
+     * @param key the key to search above
+     * @param inclusive whether a node with key key may be returned
+     * @return the node found, or null if there is none
+     */
+    RBNode<K,V> above(K key, boolean inclusive) {
+        RBNode<K,V> traverse = root;
+        RBNode<K,V> best = null;
+        long prefix = this.prefixOf(key);
+        while (traverse.getKey() != null) {
+            int compare = this.compare(key, prefix, traverse);
+            if (compare < 0 || (compare == 0 && inclusive)) {
+                //traverse qualifies, look for a smaller one on the left
+                best = traverse;
+                if (compare == 0) {
+                    return best;
+                }
+                traverse = traverse.getLeftChild();
+            } else {
+                traverse = traverse.getRightChild();
+            }
+        }
+        return best;
+    }
+    
+    /**
+     * Find the node with the largest key smaller than, or equal to if inclusive, key.
+     * @param key the key to search below
+     * @param inclusive whether a node with key key may be returned
+     * @return the node found, or null if there is none
+     */
+    RBNode<K,V> below(K key, boolean inclusive) {
+        RBNode<K,V> traverse = root;
+        RBNode<K,V> best = null;
+        long prefix = this.prefixOf(key);
+        while (traverse.getKey() != null) {
+            int compare = this.compare(key, prefix, traverse);
+            if (compare > 0 || (compare == 0 && inclusive)) {
+                //traverse qualifies, look for a larger one on the right
+                best = traverse;
+                if (compare == 0) {
+                    return best;
+                }
+                traverse = traverse.getRightChild();
+            } else {
+                traverse = traverse.getLeftChild();
+            }
+        }
+        return best;
+    }
+    
     /**
      * Performs a left rotation on a sub-tree
      * @param rotatePoint The node you wish to do a left rotation on
      */
     private void rotateLeft(RBNode<K,V> rotatePoint) {
-        RBNode rightChild = rotatePoint.getRightChild();
-        RBNode grandParent = rotatePoint.getParent();
+        metrics.rotation();
+        RBNode<K,V> rightChild = rotatePoint.getRightChild();
+        RBNode<K,V> grandParent = rotatePoint.getParent();
         //rightChild has parents of grandparent
         rightChild.setParent(grandParent);
         //set either left of right child of grandParent to rightChild or if grandParent is null, right child is root
@@ -150,11 +829,13 @@ public class RBTree<K extends Comparable<K>,V>{
         }
         //fix the left child of rightChild to the right child of rotatePoint
         rotatePoint.setRightChild(rightChild.getLeftChild());
-        rightChild.getLeftChild().setParent(rotatePoint);
+        adopt(rotatePoint, rightChild.getLeftChild());
         //fix parent of rotatePoint and left child of rightChild
         rightChild.setLeftChild(rotatePoint);
         rotatePoint.setParent(rightChild);
-        
+        //rightChild now roots the sub-tree rotatePoint used to root
+        rightChild.setSize(rotatePoint.getSize());
+        rotatePoint.setSize(rotatePoint.getLeftChild().getSize() + rotatePoint.getRightChild().getSize() + 1);
     }
     
     /**
@@ -162,8 +843,9 @@ public class RBTree<K extends Comparable<K>,V>{
      * @param rotatePoint The node you wish to do a right rotation on
      */
     private void rotateRight(RBNode<K,V> rotatePoint) {
-        RBNode leftChild = rotatePoint.getLeftChild();
-        RBNode grandParent = rotatePoint.getParent();
+        metrics.rotation();
+        RBNode<K,V> leftChild = rotatePoint.getLeftChild();
+        RBNode<K,V> grandParent = rotatePoint.getParent();
         //leftChild has parents of grandparent
         leftChild.setParent(grandParent);
         //set either left of right child of grandParent to leftChild or if grandParent is null, leftChild is root
@@ -178,10 +860,13 @@ public class RBTree<K extends Comparable<K>,V>{
         }
         //fix the left child of leftChild to the right child of rotatePoint
         rotatePoint.setLeftChild(leftChild.getRightChild());
-        leftChild.getRightChild().setParent(rotatePoint);
+        adopt(rotatePoint, leftChild.getRightChild());
         //fix parent of rotatePoint and left child of leftChild
         leftChild.setRightChild(rotatePoint);
         rotatePoint.setParent(leftChild);
+        //leftChild now roots the sub-tree rotatePoint used to root
+        leftChild.setSize(rotatePoint.getSize());
+        rotatePoint.setSize(rotatePoint.getLeftChild().getSize() + rotatePoint.getRightChild().getSize() + 1);
     }
     
     /**
@@ -192,37 +877,193 @@ public class RBTree<K extends Comparable<K>,V>{
      * a node with key identical to key already exist in the tree, it returns false.
      */
     public boolean insertNode(K key, V value){
-        if(this.search(key) == null){
-            this.insert(new RBNode<K,V>(key,value));
-            return true;
+        RBNode<K,V> slot = this.descend(key);
+        metrics.insert(descentComparisons);
+        if (slot.getKey() != null && descentCompare == 0) {
+            return false;
         }
-        return false;
+        this.insert(slot, this.newNode(key,value), descentCompare, descentPrefix);
+        return true;
     }
     
     /**
-     * Insert new node into the tree, find location to insert the new node into and 
-     * re-balance the tree
-     * @param newNode the new node to be inserted into the tree
+     * Associates value with key, replacing the value of an existing node with an identical key.
+     * @param key The key of the node
+     * @param value The data the node should contain
+     * @return The previous value of the node with key key, or null if no such node existed
      */
-    private void insert(RBNode<K,V> newNode) {
-        RBNode<K,V> x = root;
+    public V put(K key, V value) {
+        RBNode<K,V> slot = this.descend(key);
+        metrics.insert(descentComparisons);
+        if (slot.getKey() != null && descentCompare == 0) {
+            V oldValue = slot.getValue();
+            slot.setValue(value);
+            return oldValue;
+        }
+        this.insert(slot, this.newNode(key,value), descentCompare, descentPrefix);
+        return null;
+    }
+    
+    /**
+     * Insert a node with key key and data value only if no node with an identical key exists.
+     * @param key The key of the new node
+     * @param value The data the new node contains
+     * @return The value of the existing node with key key, or null if the new node was inserted
+     */
+    public V putIfAbsent(K key, V value) {
+        RBNode<K,V> slot = this.descend(key);
+        metrics.insert(descentComparisons);
+        if (slot.getKey() != null && descentCompare == 0) {
+            return slot.getValue();
+        }
+        this.insert(slot, this.newNode(key,value), descentCompare, descentPrefix);
+        return null;
+    }
+    
+    /**
+     * Returns the value of the node with key key, inserting a node with the value computed by
+     * mappingFunction if no such node exists. If mappingFunction returns null, nothing is inserted.
+     * @param key The key of the node
+     * @param mappingFunction Computes the data of the new node from its key
+     * @return The existing or newly computed value, or null if the computed value is null
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        RBNode<K,V> slot = this.descend(key);
+        metrics.insert(descentComparisons);
+        int compare = descentCompare;
+        long prefix = descentPrefix;
+        if (slot.getKey() != null && compare == 0) {
+            return slot.getValue();
+        }
+        V value = mappingFunction.apply(key);
+        if (value != null) {
+            this.insert(slot, this.newNode(key,value), compare, prefix);
+        }
+        return value;
+    }
+    
+    /**
+     * Insert a node with key key and data value, or if a node with an identical key exists, replace
+     * its data with the result of remappingFunction applied to the old and new value. If
+     * remappingFunction returns null, the existing node is deleted.
+     * @param key The key of the node
+     * @param value The data of a new node, or the second argument to remappingFunction
+     * @param remappingFunction Combines the existing data with value
+     * @return The new value of the node with key key, or null if the node was deleted
+     */
+    public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        RBNode<K,V> slot = this.descend(key);
+        metrics.insert(descentComparisons);
+        if (slot.getKey() != null && descentCompare == 0) {
+            V newValue = remappingFunction.apply(slot.getValue(), value);
+            if (newValue == null) {
+                this.delete(slot);
+            } else {
+                slot.setValue(newValue);
+            }
+            return newValue;
+        }
+        this.insert(slot, this.newNode(key,value), descentCompare, descentPrefix);
+        return value;
+    }
+    
+    /**
+     * A node for a new key, taken from the node pool if it has one.
+     * @param key The key of the node
+     * @param value The data of the node
+     * @return a node with no parent holding key and value
+     */
+    private RBNode<K,V> newNode(K key, V value) {
+        RBNode<K,V> node = freeNodes;
+        if (node == null) {
+            return new RBNode<K,V>(key, value);
+        }
+        freeNodes = node.getRightChild();
+        freeNodeCount--;
+        node.setParent(null);
+        node.setKey(key);
+        node.setValue(value);
+        return node;
+    }
+    
+    /**
+     * Puts a node that has left the tree into the node pool, unless the pool is full.
+     * @param node the node deleted
+     */
+    private void recycle(RBNode<K,V> node) {
+        if (freeNodeCount >= nodePoolCapacity) {
+            return;
+        }
+        //drop the key and value so the pool keeps nothing else alive
+        node.setKey(null);
+        node.setValue(null);
+        node.setParent(null);
+        node.setLeftChild(null);
+        node.setRightChild(freeNodes);
+        freeNodes = node;
+        freeNodeCount++;
+    }
+    
+    /**
+     * Walks down the tree once looking for key, comparing once per level.
+     * @param key The key to look for
+     * @return The node with key key if one exists, otherwise the node that would become the parent
+     * of a new node with key key, or nil if the tree is empty
+     */
+    private RBNode<K,V> descend(K key) {
+        return this.descend(root, key);
+    }
+    
+    /**
+     * Walks down the sub-tree rooted at start looking for key, comparing once per level. The key
+     * must belong in that sub-tree, as it does for the root or for the node found by fingerStart.
+     * @param start The node to start the walk from
+     * @param key The key to look for
+     * @return The node with key key if one exists, otherwise the node that would become the parent
+     * of a new node with key key, or nil if the tree is empty. descentCompare holds the key's
+     * comparison with that node, so callers need not compare again.
+     */
+    private RBNode<K,V> descend(RBNode<K,V> start, K key) {
+        RBNode<K,V> x = start;
         RBNode<K,V> y = nil;
-        //find the locations to insert the new node
+        long prefix = this.prefixOf(key);
+        int comparisons = 0;
+        int compare = 0;
         while (x.getKey() != null) {
             y = x;
-            if (newNode.getKey().compareTo(x.getKey()) < 0) {
+            compare = this.compare(key, prefix, x);
+            comparisons++;
+            if (compare == 0) {
+                break;
+            } else if (compare < 0) {
                 x = x.getLeftChild();
             } else {
                 x = x.getRightChild();
             }
         }
+        descentComparisons = comparisons;
+        descentCompare = compare;
+        descentPrefix = prefix;
+        return y;
+    }
+    
+    /**
+     * Insert new node into the tree below the location found by descend and 
+     * re-balance the tree
+     * @param y the node returned by descend for the key of newNode
+     * @param newNode the new node to be inserted into the tree
+     * @param compare the comparison of the key of newNode with y, as descend left it
+     * @param prefix the prefix of the key of newNode, as descend computed it
+     */
+    private void insert(RBNode<K,V> y, RBNode<K,V> newNode, int compare, long prefix) {
+        newNode.setPrefix(prefix);
         //if the tree is empty, set root to newNode
         if (y.getKey() == null) {
             root = newNode;
         } else {
             //else set the parents of the newNode and either newNode is the left or right child
             newNode.setParent(y);
-            if (newNode.getKey().compareTo(y.getKey())<0) {
+            if (compare < 0) {
                 y.setLeftChild(newNode);
             } else {
                 y.setRightChild(newNode);
@@ -233,7 +1074,14 @@ public class RBTree<K extends Comparable<K>,V>{
         newNode.setColor(Color.Red);
         newNode.setLeftChild(nil);
         newNode.setRightChild(nil);
+        newNode.setSize(1);
         
+        //every ancestor of newNode gained one node
+        for (RBNode<K,V> ancestor = newNode.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+            ancestor.setSize(ancestor.getSize() + 1);
+        }
+        
+        modCount++;
         //re-balance the tree
         this.insertFixUp(newNode);
     }
@@ -241,8 +1089,9 @@ public class RBTree<K extends Comparable<K>,V>{
     /**
      * Balance the tree after a new insertion
      * @param insertedNode The node that was inserted
+     * @return true if the black height of the tree grew by one
      */
-    private void insertFixUp(RBNode<K,V> insertedNode) {
+    private boolean insertFixUp(RBNode<K,V> insertedNode) {
         RBNode uncle, grand, parent = insertedNode.getParent();
         while (parent != null && parent.getColor() == Color.Red) {
             grand = parent.getParent();
@@ -251,6 +1100,7 @@ public class RBTree<K extends Comparable<K>,V>{
                 uncle = grand.getRightChild();
                 if (uncle.getColor() == Color.Red) {
                     //if the uncle of insertedNode is red
+                    metrics.insertFixUp(1);
                     parent.setColor(Color.Black);
                     uncle.setColor(Color.Black);
                     grand.setColor(Color.Red);
@@ -260,11 +1110,13 @@ public class RBTree<K extends Comparable<K>,V>{
                     //if the uncle is black
                     if (insertedNode.equals(parent.getRightChild())) {
                         //if insertedNode is the right child, make it a left child
+                        metrics.insertFixUp(2);
                         insertedNode = parent;
                         rotateLeft(insertedNode);
                         parent = insertedNode.getParent();
                     }
                     //if insertedNode is the left child
+                    metrics.insertFixUp(3);
                     parent.setColor(Color.Black);
                     grand.setColor(Color.Red);
                     rotateRight(grand);
@@ -274,6 +1126,7 @@ public class RBTree<K extends Comparable<K>,V>{
                 uncle = grand.getLeftChild();
                 if (uncle.getColor() == Color.Red) {
                     //if the uncle of insertedNode is red
+                    metrics.insertFixUp(1);
                     parent.setColor(Color.Black);
                     uncle.setColor(Color.Black);
                     grand.setColor(Color.Red);
@@ -283,11 +1136,13 @@ public class RBTree<K extends Comparable<K>,V>{
                      //if the uncle is black
                     if (insertedNode.equals(parent.getLeftChild())) {
                          //if insertedNode is the left child, make it a right child
+                        metrics.insertFixUp(2);
                         insertedNode = parent;
                         rotateRight(insertedNode);
                         parent = insertedNode.getParent();
                     }
                      //if insertedNode is the right child
+                    metrics.insertFixUp(3);
                     parent.setColor(Color.Black);
                     grand.setColor(Color.Red);
                     rotateLeft(grand);
@@ -295,7 +1150,10 @@ public class RBTree<K extends Comparable<K>,V>{
             }
         }
         
+        //the black height grows by one only if the red reached the root
+        boolean grew = root.getColor() == Color.Red;
         root.setColor(Color.Black);
+        return grew;
     }
     
     /**
@@ -305,19 +1163,581 @@ public class RBTree<K extends Comparable<K>,V>{
      * no node exist with the key key, it returns false.
      */
     public boolean deleteNode(K key){
-        RBNode<K,V> returnNode=this.search(key);
-        if(returnNode == null){
+        RBNode<K,V> returnNode=this.descend(key);
+        metrics.delete(descentComparisons);
+        if(returnNode.getKey() == null || descentCompare != 0){
             return false;
         }
          this.delete(returnNode);
          return true;
     }
     
+    /**
+     * Puts every entry of a batch, replacing the values of keys already in the tree. For a batch in
+     * increasing key order, each walk starts from the node of the previous key rather than the
+     * root: it climbs the parent pointers only as far as the lowest ancestor whose sub-tree holds
+     * the next key, and descends from there. A sorted batch of k keys that land close together
+     * then costs close to O(k log(n/k)) comparisons rather than O(k log n). A key smaller than the
+     * one before it is looked up from the root, so any order is correct.
+     * @param entries the entries, best in increasing key order
+     * @return the number of new nodes inserted
+     */
+    public int insertAll(Iterator<? extends Map.Entry<? extends K, ? extends V>> entries) {
+        int inserted = 0;
+        RBNode<K,V> finger = null;
+        while (entries.hasNext()) {
+            Map.Entry<? extends K, ? extends V> entry = entries.next();
+            K key = entry.getKey();
+            RBNode<K,V> slot = this.descend(this.fingerStart(finger, key), key);
+            metrics.insert(descentComparisons);
+            if (slot.getKey() != null && descentCompare == 0) {
+                slot.setValue(entry.getValue());
+                finger = slot;
+            } else {
+                finger = this.newNode(key, entry.getValue());
+                this.insert(slot, finger, descentCompare, descentPrefix);
+                inserted++;
+            }
+        }
+        return inserted;
+    }
+    
+    /**
+     * Deletes the nodes with every key of a batch, finding each one from the previous one as
+     * insertAll does. Keys not in the tree are skipped.
+     * @param keys the keys, best in increasing order
+     * @return the number of nodes deleted
+     */
+    public int deleteAll(Iterator<? extends K> keys) {
+        int deleted = 0;
+        RBNode<K,V> finger = null;
+        while (keys.hasNext()) {
+            K key = keys.next();
+            RBNode<K,V> slot = this.descend(this.fingerStart(finger, key), key);
+            metrics.delete(descentComparisons);
+            if (slot.getKey() == null) {
+                continue;
+            }
+            if (descentCompare == 0) {
+                //the predecessor keeps its node and key whichever node delete splices out
+                finger = this.predecessor(slot);
+                this.delete(slot);
+                deleted++;
+            } else {
+                finger = slot;
+            }
+        }
+        return deleted;
+    }
+    
+    /**
+     * Finds where to start looking for key, given the node found for the key before it.
+     * @param finger the node of the previous key, or null
+     * @param key the key to look for
+     * @return the lowest ancestor of finger whose sub-tree holds key, or the root if key is smaller
+     * than the key of finger or there is no finger
+     */
+    private RBNode<K,V> fingerStart(RBNode<K,V> finger, K key) {
+        if (finger == null || this.compare(key, finger.getKey()) < 0) {
+            return root;
+        }
+        RBNode<K,V> traverse = finger;
+        RBNode<K,V> parent = traverse.getParent();
+        while (parent != null) {
+            //climbing from a right child only passes smaller keys, so there is nothing to compare
+            if (traverse == parent.getLeftChild() && this.compare(key, parent.getKey()) <= 0) {
+                return parent;
+            }
+            traverse = parent;
+            parent = traverse.getParent();
+        }
+        return traverse;
+    }
+    
+    /**
+     * Splits the tree at key: this tree keeps the keys smaller than key and the returned tree
+     * takes the rest. The two halves are cut apart and re-joined along the search path for key,
+     * so this costs O(log n) and moves no entries.
+     * @param key the smallest key of the returned tree
+     * @return a tree holding every node with a key larger than or equal to key
+     */
+    public RBTree<K,V> split(K key) {
+        RBTree<K,V> upper = this.emptyCopy();
+        if (root.getKey() == null) {
+            return upper;
+        }
+        Pieces<K,V> pieces = new Pieces<K,V>();
+        RBNode<K,V> whole = root;
+        this.splitNode(whole, detach(whole, blackHeight(whole)), key, pieces);
+        if (pieces.match != null) {
+            upper.link(upper.nil, 0, pieces.match, pieces.right, pieces.rightHeight);
+        } else if (pieces.right.getKey() != null) {
+            upper.root = pieces.right;
+        }
+        root = pieces.left.getKey() == null ? nil : pieces.left;
+        modCount++;
+        return upper;
+    }
+    
+    /**
+     * Removes every node with a key smaller than or equal to key and returns them as a tree of
+     * their own, detaching the whole prefix with one split in O(log n), however many nodes it
+     * holds. Suits a tree keyed by deadline: removeHeadUntil(now) takes every deadline that has
+     * passed.
+     * @param key the largest key to remove
+     * @return a tree holding every node removed
+     */
+    public RBTree<K,V> removeHeadUntil(K key) {
+        RBNode<K,V> after = this.higher(key);
+        if (after == null) {
+            RBTree<K,V> head = this.emptyCopy();
+            head.root = root;
+            root = nil;
+            modCount++;
+            return head;
+        }
+        //split leaves the head here and returns the tail, so trade places with the tail
+        RBTree<K,V> head = this.split(after.getKey());
+        RBNode<K,V> tail = head.root;
+        head.root = root;
+        root = tail;
+        return head;
+    }
+    
+    /**
+     * Removes the node with the smallest key.
+     * @return the key and value of the node removed, or null if the tree is empty
+     */
+    public Map.Entry<K,V> pollFirst() {
+        RBNode<K,V> first = this.firstNode();
+        if (first == null) {
+            return null;
+        }
+        Map.Entry<K,V> entry = new AbstractMap.SimpleImmutableEntry<K,V>(first.getKey(), first.getValue());
+        metrics.delete(0);
+        this.delete(first);
+        return entry;
+    }
+    
+    /**
+     * Removes the n nodes with the smallest keys, or every node if there are fewer. Unless they are
+     * only a few, they are cut off with removeHeadUntil rather than deleted one by one.
+     * @param n the number of nodes to remove
+     * @return the keys and values of the nodes removed, in key order
+     * @throws IllegalArgumentException if n is negative
+     */
+    @SuppressWarnings("unchecked")
+    public List<Map.Entry<K,V>> pollFirstN(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Negative count: " + n);
+        }
+        int count = Math.min(n, this.size());
+        List<Map.Entry<K,V>> polled = new ArrayList<Map.Entry<K,V>>(count);
+        if (count < POLL_SPLIT_THRESHOLD) {
+            for (int i = 0; i < count; i++) {
+                polled.add(this.pollFirst());
+            }
+            return polled;
+        }
+        RBTree<K,V> head = this.removeHeadUntil(this.select(count - 1).getKey());
+        ThreadedInorderTreeIterator nodes = head.threadedInorderTraverse();
+        while (nodes.hasMore()) {
+            RBNode<K,V> node = (RBNode<K,V>) nodes.next();
+            polled.add(new AbstractMap.SimpleImmutableEntry<K,V>(node.getKey(), node.getValue()));
+        }
+        return polled;
+    }
+    
+    /**
+     * Joins two trees and a new node with a key between theirs into one tree, in O(log n). The
+     * node is linked into the taller tree at the depth where the shorter one has the same black
+     * height, and re-balanced by insertFixUp. Both trees are left empty.
+     * @param <K> the data type of the keys
+     * @param <V> the data type of the values
+     * @param left the tree with the smaller keys
+     * @param key the key of the new node, larger than every key of left and smaller than every key
+     * of right
+     * @param value the data of the new node
+     * @param right the tree with the larger keys
+     * @return a tree holding the nodes of both trees and the new node
+     * @throws IllegalArgumentException if left and right are the same tree, are ordered differently,
+     * or the keys are out of order
+     */
+    public static <K,V> RBTree<K,V> join(RBTree<K,V> left, K key, V value, RBTree<K,V> right) {
+        checkJoinable(left, right);
+        RBNode<K,V> last = left.lastNode();
+        RBNode<K,V> first = right.firstNode();
+        if ((last != null && left.compare(last.getKey(), key) >= 0) || (first != null && left.compare(key, first.getKey()) >= 0)) {
+            throw new IllegalArgumentException("Key " + key + " does not lie between the two trees");
+        }
+        RBTree<K,V> joined = left.emptyCopy();
+        RBNode<K,V> leftRoot = left.root, rightRoot = right.root;
+        RBNode<K,V> middle = left.newNode(key, value);
+        middle.setPrefix(joined.prefixOf(key));
+        joined.link(leftRoot, detach(leftRoot, blackHeight(leftRoot)), middle,
+                rightRoot, detach(rightRoot, blackHeight(rightRoot)));
+        left.clear();
+        right.clear();
+        return joined;
+    }
+    
+    /**
+     * Joins two trees into one, in O(log n). Every key of left must be smaller than every key of
+     * right. Both trees are left empty.
+     * @param <K> the data type of the keys
+     * @param <V> the data type of the values
+     * @param left the tree with the smaller keys
+     * @param right the tree with the larger keys
+     * @return a tree holding the nodes of both trees
+     * @throws IllegalArgumentException if left and right are the same tree, are ordered differently,
+     * or the keys are out of order
+     */
+    public static <K,V> RBTree<K,V> join(RBTree<K,V> left, RBTree<K,V> right) {
+        checkJoinable(left, right);
+        RBNode<K,V> last = left.lastNode();
+        RBNode<K,V> first = right.firstNode();
+        if (last != null && first != null && left.compare(last.getKey(), first.getKey()) >= 0) {
+            throw new IllegalArgumentException("Trees overlap: " + last.getKey() + " >= " + first.getKey());
+        }
+        RBTree<K,V> joined = left.emptyCopy();
+        RBNode<K,V> leftRoot = left.root, rightRoot = right.root;
+        joined.concat(leftRoot, detach(leftRoot, blackHeight(leftRoot)),
+                rightRoot, detach(rightRoot, blackHeight(rightRoot)));
+        joined.adoptRoot();
+        left.clear();
+        right.clear();
+        return joined;
+    }
+    
+    /**
+     * The union of two trees: every key of either, with the value from a when both have it. The
+     * trees are split and joined recursively, and the two halves of each level run as separate
+     * ForkJoinPool tasks, for O(m log(n/m + 1)) work where m is the size of the smaller tree. Both
+     * trees are left empty.
+     * @param <K> the data type of the keys
+     * @param <V> the data type of the values
+     * @param a the first tree, whose values win
+     * @param b the second tree
+     * @return a tree holding the nodes of the union
+     * @throws IllegalArgumentException if a and b are the same tree or are ordered differently
+     */
+    public static <K,V> RBTree<K,V> union(RBTree<K,V> a, RBTree<K,V> b) {
+        return setOperation(SetTask.UNION, a, b);
+    }
+    
+    /**
+     * The intersection of two trees: the keys in both, with the values from a. Runs in parallel as
+     * union does. Both trees are left empty.
+     * @param <K> the data type of the keys
+     * @param <V> the data type of the values
+     * @param a the first tree, whose nodes are kept
+     * @param b the second tree
+     * @return a tree holding the nodes of a whose keys are also in b
+     * @throws IllegalArgumentException if a and b are the same tree or are ordered differently
+     */
+    public static <K,V> RBTree<K,V> intersection(RBTree<K,V> a, RBTree<K,V> b) {
+        return setOperation(SetTask.INTERSECTION, a, b);
+    }
+    
+    /**
+     * The difference of two trees: the nodes of a whose keys are not in b. Runs in parallel as
+     * union does. Both trees are left empty.
+     * @param <K> the data type of the keys
+     * @param <V> the data type of the values
+     * @param a the tree to take nodes from
+     * @param b the tree of keys to leave out
+     * @return a tree holding the nodes of a whose keys are not in b
+     * @throws IllegalArgumentException if a and b are the same tree or are ordered differently
+     */
+    public static <K,V> RBTree<K,V> difference(RBTree<K,V> a, RBTree<K,V> b) {
+        return setOperation(SetTask.DIFFERENCE, a, b);
+    }
+    
+    private static <K,V> RBTree<K,V> setOperation(int operation, RBTree<K,V> a, RBTree<K,V> b) {
+        checkJoinable(a, b);
+        RBNode<K,V> aRoot = a.root, bRoot = b.root;
+        SetTask<K,V> task = new SetTask<K,V>(a, operation, aRoot, detach(aRoot, blackHeight(aRoot)),
+                bRoot, detach(bRoot, blackHeight(bRoot)));
+        ForkJoinPool.commonPool().invoke(task);
+        RBTree<K,V> result = a.emptyCopy();
+        if (task.result.getKey() != null) {
+            result.root = task.result;
+        }
+        a.clear();
+        b.clear();
+        return result;
+    }
+    
+    private static void checkJoinable(RBTree<?,?> a, RBTree<?,?> b) {
+        if (a == b) {
+            throw new IllegalArgumentException("A tree cannot be combined with itself");
+        }
+        //the nodes keep their prefixes, so both trees must compute them alike
+        if (!Objects.equals(a.comparator, b.comparator) || !Objects.equals(a.normalizer, b.normalizer)) {
+            throw new IllegalArgumentException("Trees with different orders cannot be combined");
+        }
+    }
+    
+    /**
+     * A new empty tree ordered as this one, reporting to the same metrics and pooling as many nodes.
+     * @return the new tree
+     */
+    private RBTree<K,V> emptyCopy() {
+        RBTree<K,V> copy = new RBTree<K,V>(comparator, normalizer);
+        copy.metrics = metrics;
+        copy.nodePoolCapacity = nodePoolCapacity;
+        return copy;
+    }
+    
+    /**
+     * Compares two keys by the comparator of the tree, or by their natural order if it has none.
+     * @param a the first key
+     * @param b the second key
+     * @return a negative number, zero or a positive number as a is smaller than, equal to or larger than b
+     */
+    @SuppressWarnings("unchecked")
+    int compare(K a, K b) {
+        return comparator == null ? ((Comparable<? super K>) a).compareTo(b) : comparator.compare(a, b);
+    }
+    
+    /**
+     * Compares key with the key of node, by their prefixes first if the tree keeps prefixes, and by
+     * compare only when the prefixes are equal.
+     * @param key the key to compare
+     * @param prefix the prefix of key, from prefixOf
+     * @param node the node to compare key with
+     * @return a negative number, zero or a positive number as key is smaller than, equal to or
+     * larger than the key of node
+     */
+    private int compare(K key, long prefix, RBNode<K,V> node) {
+        if (normalizer != null) {
+            int compare = Long.compareUnsigned(prefix, node.getPrefix());
+            if (compare != 0) {
+                return compare;
+            }
+        }
+        return this.compare(key, node.getKey());
+    }
+    
+    /**
+     * The prefix of key, computed once per search.
+     * @param key the key
+     * @return the prefix of key, or 0 if the tree keeps no prefixes
+     */
+    private long prefixOf(K key) {
+        return normalizer == null ? 0 : normalizer.prefix(key);
+    }
+    
+    /**
+     * The number of black nodes on every path from node down to a leaf, counting node itself if it
+     * is black and not counting the nil leaf.
+     * @param node the root of the sub-tree
+     * @return the black height of the sub-tree
+     */
+    static int blackHeight(RBNode<?,?> node) {
+        int height = 0;
+        for (; node.getKey() != null; node = node.getLeftChild()) {
+            if (node.getColor() == Color.Black) {
+                height++;
+            }
+        }
+        return height;
+    }
+    
+    /**
+     * Cuts a sub-tree off from its parent so it can stand as a tree of its own, blackening its root.
+     * @param node the root of the sub-tree, or a nil
+     * @param height the black height of the sub-tree
+     * @return the black height of the detached sub-tree
+     */
+    private static int detach(RBNode<?,?> node, int height) {
+        if (node.getKey() == null) {
+            return 0;
+        }
+        node.setParent(null);
+        if (node.getColor() == Color.Red) {
+            node.setColor(Color.Black);
+            return height + 1;
+        }
+        return height;
+    }
+    
+    /**
+     * Sets the parent of a child unless it is a nil, which may be shared between trees being
+     * joined.
+     */
+    private static <K,V> void adopt(RBNode<K,V> parent, RBNode<K,V> child) {
+        if (child.getKey() != null) {
+            child.setParent(parent);
+        }
+    }
+    
+    /**
+     * Replaces a nil root left by concat or link with this tree's own nil.
+     */
+    private void adoptRoot() {
+        if (root.getKey() == null) {
+            root = nil;
+        }
+    }
+    
+    /**
+     * Joins two detached trees with a node between them and leaves the result in root. The sub-trees
+     * may come from different trees; leaves are told apart by their null keys, not by being this
+     * tree's nil, so their nils can be mixed.
+     * @param left the root of the tree with the smaller keys, black or a nil
+     * @param leftHeight the black height of left
+     * @param middle the node to link between them
+     * @param right the root of the tree with the larger keys, black or a nil
+     * @param rightHeight the black height of right
+     * @return the black height of the joined tree
+     */
+    private int link(RBNode<K,V> left, int leftHeight, RBNode<K,V> middle, RBNode<K,V> right, int rightHeight) {
+        middle.setParent(null);
+        if (leftHeight == rightHeight) {
+            middle.setColor(Color.Black);
+            middle.setLeftChild(left);
+            middle.setRightChild(right);
+            adopt(middle, left);
+            adopt(middle, right);
+            middle.setSize(left.getSize() + right.getSize() + 1);
+            root = middle;
+            return leftHeight + 1;
+        }
+        RBNode<K,V> parent = null;
+        RBNode<K,V> spine;
+        int height;
+        int gained;
+        if (leftHeight > rightHeight) {
+            //walk down the right spine of left to the black node as high as right
+            spine = left;
+            height = leftHeight;
+            while (spine.getColor() == Color.Red || height > rightHeight) {
+                if (spine.getColor() == Color.Black) {
+                    height--;
+                }
+                parent = spine;
+                spine = spine.getRightChild();
+            }
+            parent.setRightChild(middle);
+            middle.setLeftChild(spine);
+            middle.setRightChild(right);
+            adopt(middle, right);
+            gained = right.getSize() + 1;
+            root = left;
+        } else {
+            //walk down the left spine of right to the black node as high as left
+            spine = right;
+            height = rightHeight;
+            while (spine.getColor() == Color.Red || height > leftHeight) {
+                if (spine.getColor() == Color.Black) {
+                    height--;
+                }
+                parent = spine;
+                spine = spine.getLeftChild();
+            }
+            parent.setLeftChild(middle);
+            middle.setLeftChild(left);
+            middle.setRightChild(spine);
+            adopt(middle, left);
+            gained = left.getSize() + 1;
+            root = right;
+        }
+        middle.setParent(parent);
+        adopt(middle, spine);
+        middle.setColor(Color.Red);
+        middle.setSize(middle.getLeftChild().getSize() + middle.getRightChild().getSize() + 1);
+        for (RBNode<K,V> ancestor = parent; ancestor != null; ancestor = ancestor.getParent()) {
+            ancestor.setSize(ancestor.getSize() + gained);
+        }
+        return Math.max(leftHeight, rightHeight) + (this.insertFixUp(middle) ? 1 : 0);
+    }
+    
+    /**
+     * Joins two detached trees, every key of left smaller than every key of right, and leaves the
+     * result in root. The last node of left is cut out and used as the middle node of link.
+     * @return the black height of the joined tree
+     */
+    private int concat(RBNode<K,V> left, int leftHeight, RBNode<K,V> right, int rightHeight) {
+        if (left.getKey() == null) {
+            root = right;
+            return rightHeight;
+        }
+        if (right.getKey() == null) {
+            root = left;
+            return leftHeight;
+        }
+        Pieces<K,V> pieces = new Pieces<K,V>();
+        this.splitLast(left, leftHeight, pieces);
+        return this.link(pieces.left, pieces.leftHeight, pieces.match, right, rightHeight);
+    }
+    
+    /**
+     * Splits a detached tree around key into the detached trees of the smaller and the larger
+     * keys, and the node with key key if there is one, using root as scratch.
+     * @param node the root of the tree to split
+     * @param height the black height of the tree
+     * @param key the key to split at
+     * @param pieces receives the two trees, their black heights and the matching node or null
+     */
+    private void splitNode(RBNode<K,V> node, int height, K key, Pieces<K,V> pieces) {
+        if (node.getKey() == null) {
+            pieces.left = pieces.right = node;
+            pieces.leftHeight = pieces.rightHeight = 0;
+            pieces.match = null;
+            return;
+        }
+        int childHeight = height - (node.getColor() == Color.Black ? 1 : 0);
+        RBNode<K,V> left = node.getLeftChild();
+        RBNode<K,V> right = node.getRightChild();
+        int leftHeight = detach(left, childHeight);
+        int rightHeight = detach(right, childHeight);
+        int compare = this.compare(key, node.getKey());
+        if (compare < 0) {
+            this.splitNode(left, leftHeight, key, pieces);
+            pieces.rightHeight = this.link(pieces.right, pieces.rightHeight, node, right, rightHeight);
+            pieces.right = root;
+        } else if (compare > 0) {
+            this.splitNode(right, rightHeight, key, pieces);
+            pieces.leftHeight = this.link(left, leftHeight, node, pieces.left, pieces.leftHeight);
+            pieces.left = root;
+        } else {
+            pieces.left = left;
+            pieces.leftHeight = leftHeight;
+            pieces.right = right;
+            pieces.rightHeight = rightHeight;
+            pieces.match = node;
+        }
+    }
+    
+    /**
+     * Splits the last node off a detached, non-empty tree, using root as scratch.
+     * @param node the root of the tree
+     * @param height the black height of the tree
+     * @param pieces receives the rest of the tree in left and leftHeight, and the last node in match
+     */
+    private void splitLast(RBNode<K,V> node, int height, Pieces<K,V> pieces) {
+        int childHeight = height - (node.getColor() == Color.Black ? 1 : 0);
+        RBNode<K,V> left = node.getLeftChild();
+        RBNode<K,V> right = node.getRightChild();
+        int leftHeight = detach(left, childHeight);
+        if (right.getKey() == null) {
+            pieces.left = left;
+            pieces.leftHeight = leftHeight;
+            pieces.match = node;
+            return;
+        }
+        this.splitLast(right, detach(right, childHeight), pieces);
+        pieces.leftHeight = this.link(left, leftHeight, node, pieces.left, pieces.leftHeight);
+        pieces.left = root;
+    }
+    
     /**
      * Deletes a node from the tree and re-balances the tree
      * @param remove the node you wish to remove from the tree
      */
-    private void delete(RBNode<K,V> remove) {
+    void delete(RBNode<K,V> remove) {
+        modCount++;
         RBNode<K,V> x, y;
         //find the successor for the removed node
         if (remove.getLeftChild().getKey() == null || remove.getRightChild().getKey() == null) {
@@ -333,8 +1753,9 @@ public class RBTree<K extends Comparable<K>,V>{
             x = y.getRightChild();
         }
         
-        //set the parents of x even if its a nil
-        x.setParent(y.getParent());
+        //x may be a nil, whose parent is never set, so deleteFixUp is told the parent of x
+        RBNode<K,V> xParent = y.getParent();
+        adopt(xParent, x);
         
         if (y.equals(root)) {
             //if y is the root, set x to be the new root
@@ -348,30 +1769,55 @@ public class RBTree<K extends Comparable<K>,V>{
             }
         }
         
-        //remove the remove node if y, the successor of remove node, is not the remove node itself
+        //every ancestor of y lost one node
+        for (RBNode<K,V> ancestor = y.getParent(); ancestor != null; ancestor = ancestor.getParent()) {
+            ancestor.setSize(ancestor.getSize() - 1);
+        }
+        
+        //if y, the successor of remove node, is not the remove node itself, move y into the place
+        //of remove rather than copying its entry, so a node held for another key keeps that key
+        Color removedColor = y.getColor();
         if (!y.equals(remove)) {
-            remove.setKey(y.getKey());
+            RBNode<K,V> parent = remove.getParent();
+            y.setParent(parent);
+            if (parent == null) {
+                root = y;
+            } else if (remove.equals(parent.getLeftChild())) {
+                parent.setLeftChild(y);
+            } else {
+                parent.setRightChild(y);
+            }
+            y.setLeftChild(remove.getLeftChild());
+            adopt(y, remove.getLeftChild());
+            y.setRightChild(remove.getRightChild());
+            adopt(y, remove.getRightChild());
+            y.setColor(remove.getColor());
+            y.setSize(remove.getSize());
+            if (xParent == remove) {
+                xParent = y;
+            }
         }
-        //if y is black, re-balance the tree
-        if (y.getColor() == Color.Black) {
-            deleteFixUp(x);
+        //if the node spliced out was black, re-balance the tree
+        if (removedColor == Color.Black) {
+            deleteFixUp(x, xParent);
         }
-        
+        this.recycle(remove);
     }
     
     /**
      * Re-balance the tree after a deletion
      * @param childOfRemovedNode The node child of the node removed
+     * @param parent The parent of childOfRemovedNode, which may be a nil
      */
-    private void deleteFixUp(RBNode<K,V> childOfRemovedNode) {
-        RBNode parent, sibling;
-        while (!childOfRemovedNode.equals(root) && childOfRemovedNode.getColor() == Color.Black) {
-            parent = childOfRemovedNode.getParent();
-            if (childOfRemovedNode.equals(parent.getLeftChild())) {
+    private void deleteFixUp(RBNode<K,V> childOfRemovedNode, RBNode<K,V> parent) {
+        RBNode<K,V> sibling;
+        while (childOfRemovedNode != root && childOfRemovedNode.getColor() == Color.Black) {
+            if (childOfRemovedNode == parent.getLeftChild()) {
                 //if childOfRemovedNode is the left child
                 sibling = parent.getRightChild();
                 if (sibling.getColor() == Color.Red) {
                     //if the sibling is red
+                    metrics.deleteFixUp(1);
                     parent.setColor(Color.Red);
                     sibling.setColor(Color.Black);
                     rotateLeft(parent);
@@ -381,11 +1827,14 @@ public class RBTree<K extends Comparable<K>,V>{
                 //if the sibling is black
                 if (sibling.getLeftChild().getColor() == Color.Black && sibling.getRightChild().getColor() == Color.Black) {
                     //if the sibling has 2 black children
+                    metrics.deleteFixUp(2);
                     sibling.setColor(Color.Red);
                     childOfRemovedNode = parent;
+                    parent = parent.getParent();
                 } else {
                     if (sibling.getRightChild().getColor() == Color.Black) {
                         //if the sibling have a red left child and a black right child, make the right child red
+                        metrics.deleteFixUp(3);
                         sibling.setColor(Color.Red);
                         sibling.getLeftChild().setColor(Color.Black);
                         rotateRight(sibling);
@@ -393,6 +1842,7 @@ public class RBTree<K extends Comparable<K>,V>{
                     }
                     
                     //if the sibling have a red right child
+                    metrics.deleteFixUp(4);
                     sibling.setColor(parent.getColor());
                     parent.setColor(Color.Black);
                     sibling.getRightChild().setColor(Color.Black);
@@ -405,6 +1855,7 @@ public class RBTree<K extends Comparable<K>,V>{
                   sibling = parent.getLeftChild();
                 if (sibling.getColor() == Color.Red) {
                     //if the sibling is red
+                    metrics.deleteFixUp(1);
                     parent.setColor(Color.Red);
                     sibling.setColor(Color.Black);
                     rotateRight(parent);
@@ -414,17 +1865,21 @@ public class RBTree<K extends Comparable<K>,V>{
                 //if the sibling is black
                 if (sibling.getLeftChild().getColor() == Color.Black && sibling.getRightChild().getColor() == Color.Black) {
                     //if sibling has 2 black children
+                    metrics.deleteFixUp(2);
                     sibling.setColor(Color.Red);
                     childOfRemovedNode = parent;
+                    parent = parent.getParent();
                 } else {
                     if (sibling.getLeftChild().getColor() == Color.Black) {
                         //if sibling has a black left child and red right child, make it so that sibling has a red left child
+                        metrics.deleteFixUp(3);
                         sibling.setColor(Color.Red);
                         sibling.getRightChild().setColor(Color.Black);
                         rotateLeft(sibling);
                         sibling = sibling.getParent();
                     }
                     //if sibling has a red left child
+                    metrics.deleteFixUp(4);
                     sibling.setColor(parent.getColor());
                     parent.setColor(Color.Black);
                     sibling.getLeftChild().setColor(Color.Black);
@@ -432,10 +1887,11 @@ public class RBTree<K extends Comparable<K>,V>{
                     childOfRemovedNode = root;
                 }
             }
-            
-            childOfRemovedNode.setColor(Color.Black);
         }
         
+        if (childOfRemovedNode.getKey() != null) {
+            childOfRemovedNode.setColor(Color.Black);
+        }
     }
     
     /**
@@ -446,6 +1902,76 @@ public class RBTree<K extends Comparable<K>,V>{
         return new InorderTreeIterator(root);
     }
     
+    /**
+     * Returns a iterator that performs an in order traversal without a stack, following parent
+     * pointers instead, so it uses O(1) memory however deep the tree is
+     * @return ThreadedInorderTreeIterator object that will perform an in order traversal
+     */
+    public ThreadedInorderTreeIterator threadedInorderTraverse(){
+        return new ThreadedInorderTreeIterator(root);
+    }
+    
+    /**
+     * Returns a iterator that resumes an in order traversal at a node of this tree, without a stack
+     * @param start the first node the traversal returns
+     * @return ThreadedInorderTreeIterator object that will perform an in order traversal from start
+     */
+    public ThreadedInorderTreeIterator inorderTraverseFrom(RBNode<K,V> start){
+        return ThreadedInorderTreeIterator.startingAt(start);
+    }
+    
+    /**
+     * Returns a spliterator over the nodes in key order. It splits at the roots of sub-trees and
+     * knows the exact size of every split, so parallel streams divide the work evenly
+     * @return RBTreeSpliterator object over every node of the tree
+     */
+    public RBTreeSpliterator<K,V> spliterator(){
+        return new RBTreeSpliterator<K,V>(this, root);
+    }
+    
+    /**
+     * Returns a sequential stream of the nodes in key order
+     * @return a stream of every node of the tree
+     */
+    public Stream<RBNode<K,V>> stream(){
+        return StreamSupport.stream(this.spliterator(), false);
+    }
+    
+    /**
+     * Returns a parallel stream of the nodes in key order, which divides the tree between the
+     * threads of the common ForkJoinPool
+     * @return a parallel stream of every node of the tree
+     */
+    public Stream<RBNode<K,V>> parallelStream(){
+        return StreamSupport.stream(this.spliterator(), true);
+    }
+    
+    /**
+     * Writes a snapshot of the tree, streaming the entries in key order. The stream is flushed but
+     * not closed. The tree must not be modified while it is written.
+     * @param out the stream to write to
+     * @param keyCodec writes the keys; a delta or prefix codec from Codecs keeps sorted keys small
+     * @param valueCodec writes the values
+     * @param compress true to deflate everything after the snapshot header
+     * @throws IOException if out cannot be written
+     */
+    public void writeTo(OutputStream out, Codec<K> keyCodec, Codec<V> valueCodec, boolean compress) throws IOException {
+        TreeSnapshot.write(this, out, keyCodec, valueCodec, compress);
+    }
+    
+    /**
+     * Writes a snapshot of the tree, streaming the entries in key order. The channel is not closed.
+     * The tree must not be modified while it is written.
+     * @param channel the channel to write to
+     * @param keyCodec writes the keys; a delta or prefix codec from Codecs keeps sorted keys small
+     * @param valueCodec writes the values
+     * @param compress true to deflate everything after the snapshot header
+     * @throws IOException if channel cannot be written
+     */
+    public void writeTo(WritableByteChannel channel, Codec<K> keyCodec, Codec<V> valueCodec, boolean compress) throws IOException {
+        TreeSnapshot.write(this, Channels.newOutputStream(channel), keyCodec, valueCodec, compress);
+    }
+    
     /**
      * Returns a iterator that performs an post order traversal
      * @return PostorderTreeIterator object that will perform an post order traversal
@@ -469,4 +1995,161 @@ public class RBTree<K extends Comparable<K>,V>{
     public LevelorderTreeIterator levelorderTraverse(){
         return new LevelorderTreeIterator(root);
     }
+    
+    /**
+     * The detached trees a split leaves, with their black heights, and the node split out.
+     */
+    private static final class Pieces<K,V> {
+        RBNode<K,V> left, right, match;
+        int leftHeight, rightHeight;
+    }
+    
+    /**
+     * One step of a union, intersection or difference of two detached trees: split one tree at the
+     * root of the other, solve the two halves, as parallel tasks if they are large, and join the
+     * results. Each task joins through a scratch tree of its own, as link and splitNode keep the
+     * tree they are working on in root. The two inputs share no nodes, so tasks never touch the
+     * same node. They share their nils, but nothing writes to a nil: adopt skips them, so no
+     * task writes anything another can see.
+     */
+    private static final class SetTask<K,V> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        static final int UNION = 0;
+        static final int INTERSECTION = 1;
+        static final int DIFFERENCE = 2;
+        //pairs of trees with fewer nodes than this are solved without forking
+        private static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+        
+        //a tree ordered as the inputs, to copy for scratch trees
+        private final RBTree<K,V> order;
+        private final int operation;
+        private final RBNode<K,V> a, b;
+        private final int aHeight, bHeight;
+        RBNode<K,V> result;
+        int resultHeight;
+        
+        SetTask(RBTree<K,V> order, int operation, RBNode<K,V> a, int aHeight, RBNode<K,V> b, int bHeight) {
+            this.order = order;
+            this.operation = operation;
+            this.a = a;
+            this.aHeight = aHeight;
+            this.b = b;
+            this.bHeight = bHeight;
+        }
+        
+        @Override
+        protected void compute() {
+            this.solve(order.emptyCopy());
+        }
+        
+        private void solve(RBTree<K,V> scratch) {
+            if (a.getKey() == null || b.getKey() == null) {
+                if (operation == DIFFERENCE || (operation == UNION && b.getKey() == null)) {
+                    result = a;
+                    resultHeight = aHeight;
+                } else if (operation == UNION) {
+                    result = b;
+                    resultHeight = bHeight;
+                } else {
+                    //the intersection with an empty tree is empty
+                    result = a.getKey() == null ? a : b;
+                    resultHeight = 0;
+                }
+                return;
+            }
+            boolean fork = a.getSize() + b.getSize() >= SEQUENTIAL_THRESHOLD;
+            //split the other tree at the root of the one whose nodes are kept
+            RBNode<K,V> pivot = operation == DIFFERENCE ? b : a;
+            RBNode<K,V> other = operation == DIFFERENCE ? a : b;
+            int pivotHeight = operation == DIFFERENCE ? bHeight : aHeight;
+            int otherHeight = operation == DIFFERENCE ? aHeight : bHeight;
+            int childHeight = pivotHeight - (pivot.getColor() == Color.Black ? 1 : 0);
+            RBNode<K,V> pivotLeft = pivot.getLeftChild();
+            RBNode<K,V> pivotRight = pivot.getRightChild();
+            int pivotLeftHeight = detach(pivotLeft, childHeight);
+            int pivotRightHeight = detach(pivotRight, childHeight);
+            Pieces<K,V> pieces = new Pieces<K,V>();
+            scratch.splitNode(other, otherHeight, pivot.getKey(), pieces);
+            SetTask<K,V> low, high;
+            if (operation == DIFFERENCE) {
+                low = new SetTask<K,V>(order, operation, pieces.left, pieces.leftHeight, pivotLeft, pivotLeftHeight);
+                high = new SetTask<K,V>(order, operation, pieces.right, pieces.rightHeight, pivotRight, pivotRightHeight);
+            } else {
+                low = new SetTask<K,V>(order, operation, pivotLeft, pivotLeftHeight, pieces.left, pieces.leftHeight);
+                high = new SetTask<K,V>(order, operation, pivotRight, pivotRightHeight, pieces.right, pieces.rightHeight);
+            }
+            if (fork) {
+                invokeAll(low, high);
+            } else {
+                low.solve(scratch);
+                high.solve(scratch);
+            }
+            boolean keepPivot = operation == UNION || (operation == INTERSECTION && pieces.match != null);
+            if (keepPivot) {
+                resultHeight = scratch.link(low.result, low.resultHeight, pivot, high.result, high.resultHeight);
+            } else {
+                resultHeight = scratch.concat(low.result, low.resultHeight, high.result, high.resultHeight);
+            }
+            result = scratch.root;
+        }
+    }
+    
+    /**
+     * Links sorted entries into a balanced tree. Every level is complete and black except possibly
+     * the deepest, whose nodes are red, so every path has the same number of black nodes.
+     * @param <K> the data type of the keys
+     * @param <V> the data type of the values
+     */
+    private static final class SortedBuilder<K,V> {
+        private final Iterator<? extends Map.Entry<? extends K, ? extends V>> entries;
+        private final RBTree<K,V> tree;
+        private final RBNode<K,V> nil;
+        private final int redLevel;
+        private K previous;
+        
+        SortedBuilder(Iterator<? extends Map.Entry<? extends K, ? extends V>> entries, RBTree<K,V> tree, int size) {
+            this.entries = entries;
+            this.tree = tree;
+            this.nil = tree.nil;
+            //the depth of the first level that is not complete; only the deepest level can be
+            this.redLevel = 31 - Integer.numberOfLeadingZeros(size + 1);
+        }
+        
+        /**
+         * Builds the sub-tree holding the entries with positions lo to hi, reading them in order.
+         * @param level the depth of the root of the sub-tree
+         * @param lo the position of the first entry of the sub-tree
+         * @param hi the position of the last entry of the sub-tree
+         * @return the root of the sub-tree
+         */
+        RBNode<K,V> build(int level, int lo, int hi) {
+            int mid = (lo + hi) >>> 1;
+            RBNode<K,V> left = nil;
+            if (lo < mid) {
+                left = build(level + 1, lo, mid - 1);
+            }
+            
+            Map.Entry<? extends K, ? extends V> entry = entries.next();
+            K key = entry.getKey();
+            if (previous != null && tree.compare(previous, key) >= 0) {
+                throw new IllegalArgumentException("Keys are not strictly increasing: " + previous + ", " + key);
+            }
+            previous = key;
+            RBNode<K,V> node = new RBNode<K,V>(key, entry.getValue(), level == redLevel ? Color.Red : Color.Black);
+            node.setPrefix(tree.prefixOf(key));
+            
+            node.setLeftChild(left);
+            if (left.getKey() != null) {
+                left.setParent(node);
+            }
+            RBNode<K,V> right = nil;
+            if (mid < hi) {
+                right = build(level + 1, mid + 1, hi);
+                right.setParent(node);
+            }
+            node.setRightChild(right);
+            node.setSize(hi - lo + 1);
+            return node;
+        }
+    }
 }
@@ -0,0 +1,532 @@
+package rbtree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A bounded, ordered cache in front of a slower CacheStore. The cached entries
+ * live in an RBTree, and two LongRBTrees index them by priority: one by last
+ * use under Eviction.LRU, or by number of hits and then last use under
+ * Eviction.LFU, so the entry to evict is always the first one; and one by the
+ * time each entry expires, if entries expire a fixed time after they are
+ * written, so expired entries are always at the front.
+ * <p>
+ * A miss is loaded from the store, without holding the lock of the cache.
+ * Puts and removes go to the cache at once and are written behind: they are
+ * kept in a second RBTree until flush, which hands them to the store as one
+ * batch in key order, so a store keeping its data in key order gets runs of
+ * neighbouring keys in place of scattered writes. A key put many times between
+ * flushes is written once. startWriteBehind flushes on a background thread.
+ * <p>
+ * Because the entries are ordered, invalidateRange drops every cached key in a
+ * range by splitting the range out of the tree and joining the rest back
+ * together, in O(log n) plus the cost of unindexing the keys dropped. Changes
+ * not yet written to the store are never dropped; a key whose cached entry was
+ * evicted, expired or invalidated is read from them until they are written.
+ * <p>
+ * Every method is thread-safe.
+ * @param <K> the data type of the keys
+ * @param <V> the data type of the values
+ */
+public class RBTreeCache<K,V> implements Closeable {
+
+    /**
+     * Which entry a full cache evicts.
+     */
+    public enum Eviction {
+        /**
+         * The entry used least recently.
+         */
+        LRU,
+        /**
+         * The entry hit least often, and of those the one used least recently.
+         */
+        LFU
+    }
+
+    //under LFU the hits of an entry and the time of its last use are packed into one long
+    private static final int RECENCY_BITS = 40;
+    private static final long RECENCY_MASK = (1L << RECENCY_BITS) - 1;
+    private static final long MAX_HITS = (1L << (63 - RECENCY_BITS)) - 1;
+    //a full cache deletes a node for every one it inserts, so it reuses them
+    private static final int NODE_POOL_CAPACITY = 1024;
+
+    private final Comparator<? super K> comparator;
+    private final int capacity;
+    private final Eviction eviction;
+    private final CacheStore<K,V> store;
+    //the fields below are guarded by this
+    private RBTree<K,Entry<V>> entries;
+    //the key of every entry by its priority, first to evict first
+    private final LongRBTree<K> usage = new LongRBTree<K>();
+    //the key of every entry that expires by the time it expires
+    private final LongRBTree<K> deadlines = new LongRBTree<K>();
+    private long expireAfterWriteNanos;
+    private long lastDeadline = System.nanoTime();
+    private long clock;
+    //counts puts, removes and invalidations, so a load can tell it raced one
+    private long version;
+    //changes not yet handed to the store, a null value for a removal
+    private RBTree<K,V> dirty;
+    //the batch flush is writing, still read by misses until the store has it
+    private RBTree<K,V> flushing;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private Thread flusher;
+    private int flushBatchSize;
+    private boolean closed;
+    //held by flush for the whole write, so batches reach the store in order
+    private final Object flushLock = new Object();
+
+    /**
+     * A cache of keys in their natural order
+     * @param capacity the most entries to cache
+     * @param eviction which entry a full cache evicts
+     * @param store the store to load misses from and write changes to, or null for none
+     */
+    public RBTreeCache(int capacity, Eviction eviction, CacheStore<K,V> store) {
+        this(null, capacity, eviction, store);
+    }
+
+    /**
+     * A cache of keys ordered by comparator
+     * @param comparator the order of the keys, or null for their natural order
+     * @param capacity the most entries to cache
+     * @param eviction which entry a full cache evicts
+     * @param store the store to load misses from and write changes to, or null for none
+     * @throws IllegalArgumentException if capacity is not positive
+     */
+    public RBTreeCache(Comparator<? super K> comparator, int capacity, Eviction eviction, CacheStore<K,V> store) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.comparator = comparator;
+        this.capacity = capacity;
+        this.eviction = eviction;
+        this.store = store;
+        this.entries = new RBTree<K,Entry<V>>(comparator);
+        this.entries.setNodePoolCapacity(NODE_POOL_CAPACITY);
+        this.dirty = new RBTree<K,V>(comparator);
+    }
+
+    /**
+     * Makes every entry written from now on expire duration after it is written, or stops them
+     * expiring. Entries already cached keep their deadlines.
+     * @param duration how long an entry lives, 0 for no limit
+     * @param unit the unit of duration
+     */
+    public synchronized void setExpireAfterWrite(long duration, TimeUnit unit) {
+        expireAfterWriteNanos = Math.max(0, unit.toNanos(duration));
+    }
+
+    /**
+     * Starts a daemon thread that flushes the changes every interval, or as soon as batchSize
+     * changes are waiting. A flush that fails is retried with the next one.
+     * @param interval the longest time a change waits to be written
+     * @param unit the unit of interval
+     * @param batchSize the number of waiting changes that starts a flush early
+     * @throws IllegalArgumentException if interval or batchSize is not positive
+     * @throws IllegalStateException if the cache has no store or already writes behind
+     */
+    public synchronized void startWriteBehind(long interval, TimeUnit unit, int batchSize) {
+        if (interval <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Interval and batch size must be positive: " + interval + ", " + batchSize);
+        }
+        if (store == null || flusher != null) {
+            throw new IllegalStateException(store == null ? "The cache has no store" : "The cache already writes behind");
+        }
+        final long intervalNanos = unit.toNanos(interval);
+        flushBatchSize = batchSize;
+        flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                RBTreeCache.this.flushLoop(intervalNanos);
+            }
+        }, "rbtree-cache-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * The number of cached entries.
+     * @return the number of entries in the cache
+     */
+    public synchronized int size() {
+        this.expire();
+        return entries.size();
+    }
+
+    /**
+     * The number of changes waiting to be written to the store.
+     * @return the number of keys put or removed since the last flush
+     */
+    public synchronized int dirtySize() {
+        return dirty.size();
+    }
+
+    /**
+     * The number of gets answered from the cache.
+     * @return the number of hits
+     */
+    public synchronized long hitCount() {
+        return hits;
+    }
+
+    /**
+     * The number of gets not answered from the cache.
+     * @return the number of misses
+     */
+    public synchronized long missCount() {
+        return misses;
+    }
+
+    /**
+     * The number of entries evicted to make room, not counting expired or invalidated ones.
+     * @return the number of evictions
+     */
+    public synchronized long evictionCount() {
+        return evictions;
+    }
+
+    /**
+     * The value of key, loaded from the store and cached on a miss.
+     * @param key the key to look up
+     * @return the value of key, or null if neither the cache nor the store has one
+     * @throws IOException if the cache is closed or the store cannot be read
+     */
+    public V get(K key) throws IOException {
+        long loadedAt;
+        synchronized (this) {
+            this.checkOpen();
+            this.expire();
+            RBNode<K,Entry<V>> node = entries.search(key);
+            if (node != null) {
+                hits++;
+                this.touch(key, node.getValue());
+                return node.getValue().value;
+            }
+            misses++;
+            RBNode<K,V> change = this.change(key);
+            if (change != null) {
+                if (change.getValue() != null) {
+                    this.install(key, change.getValue());
+                }
+                return change.getValue();
+            }
+            if (store == null) {
+                return null;
+            }
+            loadedAt = version;
+        }
+        V value = store.load(key);
+        synchronized (this) {
+            //a value loaded while the key was changed or invalidated may be stale, so do not cache it
+            if (value != null && version == loadedAt && !closed) {
+                this.install(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Caches value for key and queues it to be written to the store.
+     * @param key the key
+     * @param value the value
+     * @throws IOException if the cache is closed
+     * @throws IllegalArgumentException if value is null
+     */
+    public synchronized void put(K key, V value) throws IOException {
+        if (value == null) {
+            throw new IllegalArgumentException("Null value for key " + key);
+        }
+        this.checkOpen();
+        this.expire();
+        version++;
+        this.install(key, value);
+        this.markDirty(key, value);
+    }
+
+    /**
+     * Drops the cached entry of key and queues its removal from the store.
+     * @param key the key to remove
+     * @throws IOException if the cache is closed
+     */
+    public synchronized void remove(K key) throws IOException {
+        this.checkOpen();
+        version++;
+        RBNode<K,Entry<V>> node = entries.search(key);
+        if (node != null) {
+            this.discard(key, node.getValue());
+        }
+        this.markDirty(key, null);
+    }
+
+    /**
+     * Drops the cached entry of key, so the next get loads it again. A change to key not yet
+     * written to the store is kept.
+     * @param key the key to drop
+     * @return true if key was cached
+     */
+    public synchronized boolean invalidate(K key) {
+        version++;
+        RBNode<K,Entry<V>> node = entries.search(key);
+        if (node == null) {
+            return false;
+        }
+        this.discard(key, node.getValue());
+        return true;
+    }
+
+    /**
+     * Drops the cached entries of every key from lo, inclusive, to hi, exclusive. Changes to those
+     * keys not yet written to the store are kept.
+     * @param lo the smallest key to drop
+     * @param hi the key after the largest key to drop
+     * @return the number of entries dropped
+     * @throws IllegalArgumentException if lo is larger than hi
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized int invalidateRange(K lo, K hi) {
+        if (entries.compare(lo, hi) > 0) {
+            throw new IllegalArgumentException("Range ends before it starts: " + lo + ", " + hi);
+        }
+        version++;
+        RBTree<K,Entry<V>> range = entries.split(lo);
+        RBTree<K,Entry<V>> above = range.split(hi);
+        ThreadedInorderTreeIterator nodes = range.threadedInorderTraverse();
+        while (nodes.hasMore()) {
+            Entry<V> entry = ((RBNode<K,Entry<V>>) nodes.next()).getValue();
+            this.unindex(entry);
+        }
+        entries = RBTree.join(entries, above);
+        return range.size();
+    }
+
+    /**
+     * Hands every waiting change to the store as one batch in key order. If the store fails, the
+     * batch is kept, under any newer changes to the same keys, for the next flush.
+     * @throws IOException if the store cannot be written
+     */
+    @SuppressWarnings("unchecked")
+    public void flush() throws IOException {
+        if (store == null) {
+            return;
+        }
+        synchronized (flushLock) {
+            RBTree<K,V> batch;
+            synchronized (this) {
+                if (dirty.size() == 0) {
+                    return;
+                }
+                batch = dirty;
+                flushing = batch;
+                dirty = new RBTree<K,V>(comparator);
+            }
+            List<Map.Entry<K,V>> changes = new ArrayList<Map.Entry<K,V>>(batch.size());
+            ThreadedInorderTreeIterator nodes = batch.threadedInorderTraverse();
+            while (nodes.hasMore()) {
+                RBNode<K,V> node = (RBNode<K,V>) nodes.next();
+                changes.add(new AbstractMap.SimpleImmutableEntry<K,V>(node.getKey(), node.getValue()));
+            }
+            try {
+                store.writeAll(changes);
+            } catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    flushing = null;
+                    //the changes made since the batch was taken are newer, so theirs win
+                    dirty = RBTree.union(dirty, batch);
+                }
+                throw e;
+            }
+            synchronized (this) {
+                flushing = null;
+            }
+        }
+    }
+
+    /**
+     * Stops writing behind, flushes the waiting changes and closes the cache. The store is left
+     * open. Gets and changes after close throw an IOException.
+     * @throws IOException if the last changes cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        Thread stopping;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            stopping = flusher;
+            this.notifyAll();
+        }
+        if (stopping != null) {
+            try {
+                stopping.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.flush();
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Cache is closed");
+        }
+    }
+
+    /**
+     * The waiting change to key, newest first.
+     * @return the node of the change, whose value is null for a removal, or null if there is none
+     */
+    private RBNode<K,V> change(K key) {
+        RBNode<K,V> change = dirty.search(key);
+        if (change == null && flushing != null) {
+            change = flushing.search(key);
+        }
+        return change;
+    }
+
+    private void markDirty(K key, V value) {
+        if (store == null) {
+            return;
+        }
+        dirty.put(key, value);
+        if (flusher != null && dirty.size() >= flushBatchSize) {
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Caches value for key as just used and just written, evicting an entry first if the cache is full.
+     */
+    private void install(K key, V value) {
+        RBNode<K,Entry<V>> node = entries.search(key);
+        Entry<V> entry;
+        if (node != null) {
+            entry = node.getValue();
+            entry.value = value;
+        } else {
+            //make room first, or under LFU the new entry, with its single hit, is the victim
+            while (entries.size() >= capacity) {
+                K victim = usage.first().getValue();
+                this.discard(victim, entries.search(victim).getValue());
+                evictions++;
+            }
+            entry = new Entry<V>(value);
+            entries.insertNode(key, entry);
+        }
+        this.touch(key, entry);
+        if (entry.expires) {
+            deadlines.deleteNode(entry.deadline);
+            entry.expires = false;
+        }
+        if (expireAfterWriteNanos > 0) {
+            //keep deadlines distinct, as they key the index
+            long deadline = System.nanoTime() + expireAfterWriteNanos;
+            if (deadline - lastDeadline <= 0) {
+                deadline = lastDeadline + 1;
+            }
+            lastDeadline = deadline;
+            deadlines.insertNode(deadline, key);
+            entry.deadline = deadline;
+            entry.expires = true;
+        }
+    }
+
+    /**
+     * Moves the entry of key to its new place in the eviction order after a use.
+     */
+    private void touch(K key, Entry<V> entry) {
+        if (entry.priority != 0) {
+            usage.deleteNode(entry.priority);
+        }
+        long now = ++clock;
+        if (eviction == Eviction.LFU) {
+            entry.hits = Math.min(entry.hits + 1, MAX_HITS);
+            now = (entry.hits << RECENCY_BITS) | (now & RECENCY_MASK);
+        }
+        entry.priority = now;
+        usage.insertNode(now, key);
+    }
+
+    /**
+     * Drops every entry whose deadline has passed.
+     */
+    private void expire() {
+        if (deadlines.size() == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (LongRBNode<K> first = deadlines.first(); first != null && first.getKey() - now <= 0; first = deadlines.first()) {
+            K key = first.getValue();
+            this.discard(key, entries.search(key).getValue());
+        }
+    }
+
+    private void discard(K key, Entry<V> entry) {
+        entries.deleteNode(key);
+        this.unindex(entry);
+    }
+
+    private void unindex(Entry<V> entry) {
+        usage.deleteNode(entry.priority);
+        if (entry.expires) {
+            deadlines.deleteNode(entry.deadline);
+        }
+    }
+
+    /**
+     * The flusher thread: waits until the interval has passed or a batch has filled, then flushes.
+     */
+    private void flushLoop(long intervalNanos) {
+        while (true) {
+            synchronized (this) {
+                long start = System.nanoTime();
+                long left = intervalNanos;
+                while (!closed && dirty.size() < flushBatchSize && left > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.timedWait(this, left);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    left = intervalNanos - (System.nanoTime() - start);
+                }
+                if (closed) {
+                    //close flushes what is left
+                    return;
+                }
+            }
+            try {
+                this.flush();
+            } catch (IOException | RuntimeException e) {
+                //the batch was kept, so the next flush tries it again
+            }
+        }
+    }
+
+    /**
+     * A cached value and its places in the two indexes.
+     */
+    private static final class Entry<V> {
+        V value;
+        //the key of the entry in usage
+        long priority;
+        long hits;
+        //the key of the entry in deadlines, if it expires
+        long deadline;
+        boolean expires;
+
+        Entry(V value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,800 @@
+package rbtree;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+/**
+ * A java.util.NavigableMap backed by a red black tree, so an RBTree can be used
+ * wherever a TreeMap is expected. The map is a live view of the tree: changes
+ * to either are visible through the other.
+ * <p>
+ * Sub-maps and descending maps are views of the same tree with bounds and a
+ * direction; they seek in O(log n) and count their size from the sub-tree
+ * sizes. Iterators follow successor links instead of keeping a stack, so key
+ * and value iteration allocate nothing per step. All iterators fail fast with
+ * a ConcurrentModificationException if the tree is structurally modified other
+ * than through the iterator's own remove.
+ * @param <K> the data type of the keys
+ * @param <V> the data type of the values
+ */
+public class RBTreeMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+    private final RBTree<K, V> tree;
+    //a null bound means the map is unbounded on that side
+    private final K lo, hi;
+    private final boolean loInclusive, hiInclusive;
+    private final boolean descending;
+
+    private transient EntrySet entrySet;
+    private transient KeySet<K> navigableKeySet;
+    private transient Collection<V> values;
+
+    /**
+     * A new map backed by a new empty red black tree
+     */
+    public RBTreeMap() {
+        this(new RBTree<K, V>());
+    }
+
+    /**
+     * A new map ordered by comparator, backed by a new empty red black tree
+     * @param comparator the order of the keys, or null for their natural order
+     */
+    public RBTreeMap(Comparator<? super K> comparator) {
+        this(new RBTree<K, V>(comparator));
+    }
+
+    /**
+     * A map backed by an existing red black tree
+     * @param tree the tree to view as a map
+     */
+    public RBTreeMap(RBTree<K, V> tree) {
+        this(tree, null, false, null, false, false);
+    }
+
+    /**
+     * A new map holding the entries of m. A sorted map is built in linear time.
+     * @param m the entries to copy
+     */
+    public RBTreeMap(Map<? extends K, ? extends V> m) {
+        this(copyOf(m));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> RBTree<K, V> copyOf(Map<? extends K, ? extends V> m) {
+        if (m instanceof SortedMap) {
+            //keep the order of the sorted map, as TreeMap does
+            Comparator<? super K> comparator = (Comparator<? super K>) ((SortedMap<?, ?>) m).comparator();
+            return RBTree.fromSorted(m.entrySet().iterator(), m.size(), comparator, null);
+        }
+        RBTree<K, V> tree = new RBTree<K, V>();
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            tree.put(e.getKey(), e.getValue());
+        }
+        return tree;
+    }
+
+    private RBTreeMap(RBTree<K, V> tree, K lo, boolean loInclusive, K hi, boolean hiInclusive, boolean descending) {
+        this.tree = tree;
+        this.lo = lo;
+        this.loInclusive = loInclusive;
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+        this.descending = descending;
+    }
+
+    /**
+     * Getter for the backing tree.
+     * @return the red black tree this map views
+     */
+    public RBTree<K, V> getTree() {
+        return tree;
+    }
+
+    @Override
+    public int size() {
+        if (lo == null && hi == null) {
+            return tree.size();
+        }
+        int hiRank = hi == null ? tree.size() : tree.rank(hi, hiInclusive);
+        int loRank = lo == null ? 0 : tree.rank(lo, !loInclusive);
+        return Math.max(hiRank - loRank, 0);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return lo == null && hi == null ? tree.size() == 0 : this.absLowest() == null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return this.getNode(key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        RBNode<K, V> node = this.getNode(key);
+        return node == null ? null : node.getValue();
+    }
+
+    @Override
+    public V put(K key, V value) {
+        if (!this.inRange(key)) {
+            throw new IllegalArgumentException("Key out of range: " + key);
+        }
+        return tree.put(key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        RBNode<K, V> node = this.getNode(key);
+        if (node == null) {
+            return null;
+        }
+        V oldValue = node.getValue();
+        tree.delete(node);
+        return oldValue;
+    }
+
+    @Override
+    public void clear() {
+        if (lo == null && hi == null) {
+            tree.clear();
+        } else {
+            Iterator<K> it = this.keyIterator();
+            while (it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * The map is ordered as its tree, by the comparator of the tree or, if it
+     * has none, by the natural ordering of its keys; a descending map reverses
+     * that order.
+     * @return the comparator of the tree, null for the natural ordering, or the
+     * reverse of either for a descending map
+     */
+    @Override
+    public Comparator<? super K> comparator() {
+        Comparator<? super K> order = tree.comparator();
+        if (!descending) {
+            return order;
+        }
+        return order == null ? Collections.<K>reverseOrder() : Collections.reverseOrder(order);
+    }
+
+    @Override
+    public K firstKey() {
+        return key(this.firstNode());
+    }
+
+    @Override
+    public K lastKey() {
+        return key(this.lastNode());
+    }
+
+    @Override
+    public Map.Entry<K, V> firstEntry() {
+        return exportEntry(this.firstNode());
+    }
+
+    @Override
+    public Map.Entry<K, V> lastEntry() {
+        return exportEntry(this.lastNode());
+    }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry() {
+        return this.poll(this.firstNode());
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry() {
+        return this.poll(this.lastNode());
+    }
+
+    @Override
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return exportEntry(this.lowerNode(key));
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return keyOrNull(this.lowerNode(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> floorEntry(K key) {
+        return exportEntry(this.floorNode(key));
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return keyOrNull(this.floorNode(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return exportEntry(this.ceilingNode(key));
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return keyOrNull(this.ceilingNode(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> higherEntry(K key) {
+        return exportEntry(this.higherNode(key));
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return keyOrNull(this.higherNode(key));
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        EntrySet es = entrySet;
+        return es != null ? es : (entrySet = new EntrySet());
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return this.navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        KeySet<K> ks = navigableKeySet;
+        return ks != null ? ks : (navigableKeySet = new KeySet<K>(this));
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return this.descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        return vs != null ? vs : (values = new Values());
+    }
+
+    @Override
+    public RBTreeMap<K, V> descendingMap() {
+        return new RBTreeMap<K, V>(tree, lo, loInclusive, hi, hiInclusive, !descending);
+    }
+
+    @Override
+    public RBTreeMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        if (descending) {
+            //the keys run backwards, so from is the upper bound
+            if (tree.compare(fromKey, toKey) < 0) {
+                throw new IllegalArgumentException("fromKey > toKey");
+            }
+            return this.bounded(toKey, toInclusive, fromKey, fromInclusive);
+        }
+        if (tree.compare(fromKey, toKey) > 0) {
+            throw new IllegalArgumentException("fromKey > toKey");
+        }
+        return this.bounded(fromKey, fromInclusive, toKey, toInclusive);
+    }
+
+    @Override
+    public RBTreeMap<K, V> headMap(K toKey, boolean inclusive) {
+        if (descending) {
+            return this.bounded(toKey, inclusive, hi, hiInclusive);
+        }
+        return this.bounded(lo, loInclusive, toKey, inclusive);
+    }
+
+    @Override
+    public RBTreeMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        if (descending) {
+            return this.bounded(lo, loInclusive, fromKey, inclusive);
+        }
+        return this.bounded(fromKey, inclusive, hi, hiInclusive);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return this.subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return this.headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return this.tailMap(fromKey, true);
+    }
+
+    /**
+     * A view of the same tree with new absolute bounds, which must lie within
+     * the bounds of this map.
+     */
+    private RBTreeMap<K, V> bounded(K newLo, boolean newLoInclusive, K newHi, boolean newHiInclusive) {
+        if (newLo != lo) {
+            this.checkBound(newLo, newLoInclusive);
+        }
+        if (newHi != hi) {
+            this.checkBound(newHi, newHiInclusive);
+        }
+        return new RBTreeMap<K, V>(tree, newLo, newLoInclusive, newHi, newHiInclusive, descending);
+    }
+
+    private void checkBound(K bound, boolean inclusive) {
+        boolean outside;
+        if (inclusive) {
+            outside = !this.inRange(bound);
+        } else {
+            //an exclusive bound may sit on an exclusive bound of this map
+            outside = (lo != null && tree.compare(bound, lo) < 0) || (hi != null && tree.compare(bound, hi) > 0);
+        }
+        if (outside) {
+            throw new IllegalArgumentException("Key out of range: " + bound);
+        }
+    }
+
+    /*
+     * Bounds checks and searches in the ascending order of the tree.
+     */
+
+    private boolean tooLow(K key) {
+        if (lo == null) {
+            return false;
+        }
+        int compare = tree.compare(key, lo);
+        return compare < 0 || (compare == 0 && !loInclusive);
+    }
+
+    private boolean tooHigh(K key) {
+        if (hi == null) {
+            return false;
+        }
+        int compare = tree.compare(key, hi);
+        return compare > 0 || (compare == 0 && !hiInclusive);
+    }
+
+    private boolean inRange(K key) {
+        return !this.tooLow(key) && !this.tooHigh(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private RBNode<K, V> getNode(Object key) {
+        K k = (K) key;
+        return this.inRange(k) ? tree.search(k) : null;
+    }
+
+    private RBNode<K, V> absLowest() {
+        RBNode<K, V> node = lo == null ? tree.firstNode() : tree.above(lo, loInclusive);
+        return node == null || this.tooHigh(node.getKey()) ? null : node;
+    }
+
+    private RBNode<K, V> absHighest() {
+        RBNode<K, V> node = hi == null ? tree.lastNode() : tree.below(hi, hiInclusive);
+        return node == null || this.tooLow(node.getKey()) ? null : node;
+    }
+
+    private RBNode<K, V> absAbove(K key, boolean inclusive) {
+        if (this.tooLow(key)) {
+            return this.absLowest();
+        }
+        RBNode<K, V> node = tree.above(key, inclusive);
+        return node == null || this.tooHigh(node.getKey()) ? null : node;
+    }
+
+    private RBNode<K, V> absBelow(K key, boolean inclusive) {
+        if (this.tooHigh(key)) {
+            return this.absHighest();
+        }
+        RBNode<K, V> node = tree.below(key, inclusive);
+        return node == null || this.tooLow(node.getKey()) ? null : node;
+    }
+
+    /**
+     * The first node past the range in the direction of iteration, or null if
+     * the range runs to the end of the tree.
+     */
+    private RBNode<K, V> fence() {
+        if (descending) {
+            return lo == null ? null : tree.below(lo, !loInclusive);
+        }
+        return hi == null ? null : tree.above(hi, !hiInclusive);
+    }
+
+    /*
+     * Searches in the order of this map, which is reversed for descending maps.
+     */
+
+    private RBNode<K, V> firstNode() {
+        return descending ? this.absHighest() : this.absLowest();
+    }
+
+    private RBNode<K, V> lastNode() {
+        return descending ? this.absLowest() : this.absHighest();
+    }
+
+    private RBNode<K, V> ceilingNode(K key) {
+        return descending ? this.absBelow(key, true) : this.absAbove(key, true);
+    }
+
+    private RBNode<K, V> higherNode(K key) {
+        return descending ? this.absBelow(key, false) : this.absAbove(key, false);
+    }
+
+    private RBNode<K, V> floorNode(K key) {
+        return descending ? this.absAbove(key, true) : this.absBelow(key, true);
+    }
+
+    private RBNode<K, V> lowerNode(K key) {
+        return descending ? this.absAbove(key, false) : this.absBelow(key, false);
+    }
+
+    private Map.Entry<K, V> poll(RBNode<K, V> node) {
+        Map.Entry<K, V> entry = exportEntry(node);
+        if (node != null) {
+            tree.delete(node);
+        }
+        return entry;
+    }
+
+    private static <K> K key(RBNode<K, ?> node) {
+        if (node == null) {
+            throw new NoSuchElementException();
+        }
+        return node.getKey();
+    }
+
+    private static <K> K keyOrNull(RBNode<K, ?> node) {
+        return node == null ? null : node.getKey();
+    }
+
+    /**
+     * An immutable snapshot of a node, for methods that return entries that
+     * must not change when the tree does.
+     */
+    private static <K, V> Map.Entry<K, V> exportEntry(RBNode<K, V> node) {
+        return node == null ? null : new AbstractMap.SimpleImmutableEntry<K, V>(node.getKey(), node.getValue());
+    }
+
+    Iterator<K> keyIterator() {
+        return new KeyIterator();
+    }
+
+    /**
+     * Walks the nodes of the map in its order by following successor or
+     * predecessor links.
+     */
+    private abstract class NodeIterator<T> implements Iterator<T> {
+        private final RBNode<K, V> fence;
+        private RBNode<K, V> next;
+        private RBNode<K, V> lastReturned;
+        private int expectedModCount;
+
+        NodeIterator() {
+            this.fence = fence();
+            RBNode<K, V> first = firstNode();
+            this.next = first == fence ? null : first;
+            this.expectedModCount = tree.modCount;
+        }
+
+        @Override
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        final RBNode<K, V> nextNode() {
+            RBNode<K, V> node = next;
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            if (tree.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            next = descending ? tree.predecessor(node) : tree.successor(node);
+            if (next == fence) {
+                next = null;
+            }
+            lastReturned = node;
+            return node;
+        }
+
+        @Override
+        public final void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (tree.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            tree.delete(lastReturned);
+            expectedModCount = tree.modCount;
+            lastReturned = null;
+        }
+    }
+
+    private final class EntryIterator extends NodeIterator<Map.Entry<K, V>> {
+        @Override
+        public Map.Entry<K, V> next() {
+            return new NodeEntry<K, V>(this.nextNode());
+        }
+    }
+
+    private final class KeyIterator extends NodeIterator<K> {
+        @Override
+        public K next() {
+            return this.nextNode().getKey();
+        }
+    }
+
+    private final class ValueIterator extends NodeIterator<V> {
+        @Override
+        public V next() {
+            return this.nextNode().getValue();
+        }
+    }
+
+    /**
+     * A live entry backed by a node of the tree.
+     */
+    private static final class NodeEntry<K, V> implements Map.Entry<K, V> {
+        private final RBNode<K, V> node;
+
+        NodeEntry(RBNode<K, V> node) {
+            this.node = node;
+        }
+
+        @Override
+        public K getKey() {
+            return node.getKey();
+        }
+
+        @Override
+        public V getValue() {
+            return node.getValue();
+        }
+
+        @Override
+        public V setValue(V value) {
+            V oldValue = node.getValue();
+            node.setValue(value);
+            return oldValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return node.getKey().equals(e.getKey())
+                    && (node.getValue() == null ? e.getValue() == null : node.getValue().equals(e.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            return node.getKey().hashCode() ^ (node.getValue() == null ? 0 : node.getValue().hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return node.getKey() + "=" + node.getValue();
+        }
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return RBTreeMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return RBTreeMap.this.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            RBNode<K, V> node = getNode(e.getKey());
+            return node != null
+                    && (node.getValue() == null ? e.getValue() == null : node.getValue().equals(e.getValue()));
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!this.contains(o)) {
+                return false;
+            }
+            tree.delete(getNode(((Map.Entry<?, ?>) o).getKey()));
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            RBTreeMap.this.clear();
+        }
+    }
+
+    private final class Values extends AbstractCollection<V> {
+        @Override
+        public Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        @Override
+        public int size() {
+            return RBTreeMap.this.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return RBTreeMap.this.isEmpty();
+        }
+
+        @Override
+        public void clear() {
+            RBTreeMap.this.clear();
+        }
+    }
+
+    /**
+     * The keys of a map as a NavigableSet, delegating every call to the map.
+     */
+    static final class KeySet<E> extends AbstractSet<E> implements NavigableSet<E> {
+        private final RBTreeMap<E, ?> m;
+
+        KeySet(RBTreeMap<E, ?> m) {
+            this.m = m;
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return m.keyIterator();
+        }
+
+        @Override
+        public Iterator<E> descendingIterator() {
+            return m.descendingMap().keyIterator();
+        }
+
+        @Override
+        public int size() {
+            return m.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return m.isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return m.containsKey(o);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            RBNode<E, ?> node = m.getNode(o);
+            if (node == null) {
+                return false;
+            }
+            m.remove(o);
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            m.clear();
+        }
+
+        @Override
+        public E lower(E e) {
+            return m.lowerKey(e);
+        }
+
+        @Override
+        public E floor(E e) {
+            return m.floorKey(e);
+        }
+
+        @Override
+        public E ceiling(E e) {
+            return m.ceilingKey(e);
+        }
+
+        @Override
+        public E higher(E e) {
+            return m.higherKey(e);
+        }
+
+        @Override
+        public E first() {
+            return m.firstKey();
+        }
+
+        @Override
+        public E last() {
+            return m.lastKey();
+        }
+
+        @Override
+        public Comparator<? super E> comparator() {
+            return m.comparator();
+        }
+
+        @Override
+        public E pollFirst() {
+            Map.Entry<E, ?> e = m.pollFirstEntry();
+            return e == null ? null : e.getKey();
+        }
+
+        @Override
+        public E pollLast() {
+            Map.Entry<E, ?> e = m.pollLastEntry();
+            return e == null ? null : e.getKey();
+        }
+
+        @Override
+        public NavigableSet<E> descendingSet() {
+            return new KeySet<E>(m.descendingMap());
+        }
+
+        @Override
+        public NavigableSet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
+            return new KeySet<E>(m.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
+
+        @Override
+        public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+            return new KeySet<E>(m.headMap(toElement, inclusive));
+        }
+
+        @Override
+        public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+            return new KeySet<E>(m.tailMap(fromElement, inclusive));
+        }
+
+        @Override
+        public SortedSet<E> subSet(E fromElement, E toElement) {
+            return this.subSet(fromElement, true, toElement, false);
+        }
+
+        @Override
+        public SortedSet<E> headSet(E toElement) {
+            return this.headSet(toElement, false);
+        }
+
+        @Override
+        public SortedSet<E> tailSet(E fromElement) {
+            return this.tailSet(fromElement, true);
+        }
+    }
+}
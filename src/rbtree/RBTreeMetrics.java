@@ -0,0 +1,85 @@
+package rbtree;
+
+/**
+ * Receives the events of an RBTree as they happen, for instrumenting the hot
+ * paths. A tree reports to NOOP unless given other metrics with setMetrics,
+ * and while only NOOP is in use the JIT compiles the calls away. Every method
+ * is called on the thread running the operation, inside it, so
+ * implementations must be cheap and, if the tree is read by several threads
+ * or shared by several trees, thread-safe; RBTreeStats counts everything with
+ * LongAdders.
+ * <p>
+ * Comparisons are counted while descending the tree to find a key, and not
+ * for the final check of the node found.
+ */
+public interface RBTreeMetrics {
+
+    /**
+     * Ignores every event.
+     */
+    RBTreeMetrics NOOP = new RBTreeMetrics() {
+        @Override
+        public void search(int comparisons) {
+        }
+
+        @Override
+        public void insert(int comparisons) {
+        }
+
+        @Override
+        public void delete(int comparisons) {
+        }
+
+        @Override
+        public void rotation() {
+        }
+
+        @Override
+        public void insertFixUp(int fixUpCase) {
+        }
+
+        @Override
+        public void deleteFixUp(int fixUpCase) {
+        }
+    };
+
+    /**
+     * A search for a key.
+     * @param comparisons the number of keys compared on the way down
+     */
+    void search(int comparisons);
+
+    /**
+     * An insert, put or other call that inserts a key if it is absent, whether or not it was.
+     * @param comparisons the number of keys compared on the way down
+     */
+    void insert(int comparisons);
+
+    /**
+     * A delete of a key, whether or not it was in the tree.
+     * @param comparisons the number of keys compared on the way down
+     */
+    void delete(int comparisons);
+
+    /**
+     * A left or right rotation.
+     */
+    void rotation();
+
+    /**
+     * One step of the re-balancing after an insert: case 1 recolours a red uncle and moves up two
+     * levels, case 2 rotates an inner grandchild to the outside, and case 3 rotates the
+     * grandparent and ends the re-balancing.
+     * @param fixUpCase the case, from 1 to 3
+     */
+    void insertFixUp(int fixUpCase);
+
+    /**
+     * One step of the re-balancing after a delete: case 1 rotates a red sibling to make it black,
+     * case 2 recolours a sibling with two black children and moves up a level, case 3 rotates a
+     * sibling whose only red child is on the inside, and case 4 rotates the parent and ends the
+     * re-balancing.
+     * @param fixUpCase the case, from 1 to 4
+     */
+    void deleteFixUp(int fixUpCase);
+}
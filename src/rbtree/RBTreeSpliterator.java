@@ -0,0 +1,143 @@
+package rbtree;
+
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A Spliterator over the nodes of a red black tree in key order, for
+ * sequential and parallel streams.
+ * <p>
+ * A spliterator covers a run of consecutive positions in the in order
+ * traversal. It splits at the shallowest node of its run, which is the root of
+ * the smallest sub-tree holding the run, found by descending the sub-tree
+ * sizes. Splitting the whole tree therefore splits at the root first and then
+ * at the roots of the two halves, and both halves know their exact size.
+ * <p>
+ * The tree must not be structurally modified while the spliterator is in use;
+ * if it is, traversal ends with a ConcurrentModificationException.
+ * @param <K> the data type of the key for the nodes in the red black tree
+ * @param <V> the data type of the data stored in each node in the red black tree
+ */
+public class RBTreeSpliterator<K, V> implements Spliterator<RBNode<K, V>> {
+
+    private final RBTree<K, V> tree;
+    private final RBNode<K, V> root;
+    private final int expectedModCount;
+    //the next node to return, and its position in the in order traversal
+    private RBNode<K, V> current;
+    private int origin;
+    //the position just past the last node of the run
+    private final int end;
+
+    /**
+     * Constructor with two parameters
+     * @param tree the tree to traverse
+     * @param root the root node of the tree
+     */
+    RBTreeSpliterator(RBTree<K, V> tree, RBNode<K, V> root) {
+        this(tree, root, tree.firstNode(), 0, root.getSize(), tree.modCount);
+    }
+
+    private RBTreeSpliterator(RBTree<K, V> tree, RBNode<K, V> root, RBNode<K, V> current,
+            int origin, int end, int expectedModCount) {
+        this.tree = tree;
+        this.root = root;
+        this.current = current;
+        this.origin = origin;
+        this.end = end;
+        this.expectedModCount = expectedModCount;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super RBNode<K, V>> action) {
+        if (origin >= end) {
+            return false;
+        }
+        if (tree.modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        RBNode<K, V> node = current;
+        current = tree.successor(node);
+        origin++;
+        action.accept(node);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super RBNode<K, V>> action) {
+        while (origin < end) {
+            RBNode<K, V> node = current;
+            current = tree.successor(node);
+            origin++;
+            action.accept(node);
+        }
+        if (tree.modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Splits off the front of the run, up to the shallowest node of the run
+     * after its first node.
+     * @return a spliterator over the front of the run, or null if the run has
+     * fewer than two nodes
+     */
+    @Override
+    public Spliterator<RBNode<K, V>> trySplit() {
+        if (end - origin < 2) {
+            return null;
+        }
+        if (tree.modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        //descend to the first node with a position strictly between origin and end
+        RBNode<K, V> traverse = root;
+        int base = 0;
+        while (true) {
+            int position = base + traverse.getLeftChild().getSize();
+            if (position <= origin) {
+                base = position + 1;
+                traverse = traverse.getRightChild();
+            } else if (position >= end) {
+                traverse = traverse.getLeftChild();
+            } else {
+                RBTreeSpliterator<K, V> prefix = new RBTreeSpliterator<K, V>(tree, root, current, origin, position, expectedModCount);
+                current = traverse;
+                origin = position;
+                return prefix;
+            }
+        }
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - origin;
+    }
+
+    @Override
+    public long getExactSizeIfKnown() {
+        return end - origin;
+    }
+
+    @Override
+    public int characteristics() {
+        return Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED
+                | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL;
+    }
+
+    /**
+     * The nodes are sorted by key.
+     * @return a comparator of nodes by their keys
+     */
+    @Override
+    public Comparator<? super RBNode<K, V>> getComparator() {
+        return new Comparator<RBNode<K, V>>() {
+            @Override
+            public int compare(RBNode<K, V> a, RBNode<K, V> b) {
+                return tree.compare(a.getKey(), b.getKey());
+            }
+        };
+    }
+}
@@ -0,0 +1,202 @@
+package rbtree;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * RBTreeMetrics that count every event with LongAdders, so that threads
+ * reporting at once do not contend, and publish the totals through JMX or the
+ * getters. The counters are summed when read, so a read taken while trees are
+ * busy is not a snapshot of one instant.
+ * <p>
+ * The shape of the tree, its height and black height, is not tracked as it
+ * changes but measured when read, by the suppliers given to the constructor.
+ * Measuring the height walks every node, so the supplier must not run
+ * alongside writers: pass RBTree::height only if the getters are called on
+ * the thread that owns the tree, or suppliers that take the tree's lock.
+ */
+public class RBTreeStats implements RBTreeMetrics, RBTreeStatsMBean {
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder searchComparisons = new LongAdder();
+    private final LongAdder inserts = new LongAdder();
+    private final LongAdder insertComparisons = new LongAdder();
+    private final LongAdder deletes = new LongAdder();
+    private final LongAdder deleteComparisons = new LongAdder();
+    private final LongAdder rotations = new LongAdder();
+    private final LongAdder[] insertFixUpCases = adders(3);
+    private final LongAdder[] deleteFixUpCases = adders(4);
+    private final IntSupplier height, blackHeight;
+    private ObjectName name;
+
+    /**
+     * Stats that count events but report no tree shape
+     */
+    public RBTreeStats() {
+        this(null, null);
+    }
+
+    /**
+     * Stats that count events and measure the tree shape on demand
+     * @param height measures the height of the tree, or null
+     * @param blackHeight measures the black height of the tree, or null
+     */
+    public RBTreeStats(IntSupplier height, IntSupplier blackHeight) {
+        this.height = height;
+        this.blackHeight = blackHeight;
+    }
+
+    @Override
+    public void search(int comparisons) {
+        searches.increment();
+        searchComparisons.add(comparisons);
+    }
+
+    @Override
+    public void insert(int comparisons) {
+        inserts.increment();
+        insertComparisons.add(comparisons);
+    }
+
+    @Override
+    public void delete(int comparisons) {
+        deletes.increment();
+        deleteComparisons.add(comparisons);
+    }
+
+    @Override
+    public void rotation() {
+        rotations.increment();
+    }
+
+    @Override
+    public void insertFixUp(int fixUpCase) {
+        insertFixUpCases[fixUpCase - 1].increment();
+    }
+
+    @Override
+    public void deleteFixUp(int fixUpCase) {
+        deleteFixUpCases[fixUpCase - 1].increment();
+    }
+
+    @Override
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    @Override
+    public double getComparisonsPerSearch() {
+        return mean(searchComparisons, searches);
+    }
+
+    @Override
+    public long getInserts() {
+        return inserts.sum();
+    }
+
+    @Override
+    public double getComparisonsPerInsert() {
+        return mean(insertComparisons, inserts);
+    }
+
+    @Override
+    public long getDeletes() {
+        return deletes.sum();
+    }
+
+    @Override
+    public double getComparisonsPerDelete() {
+        return mean(deleteComparisons, deletes);
+    }
+
+    @Override
+    public long getRotations() {
+        return rotations.sum();
+    }
+
+    @Override
+    public long[] getInsertFixUpCases() {
+        return sums(insertFixUpCases);
+    }
+
+    @Override
+    public long[] getDeleteFixUpCases() {
+        return sums(deleteFixUpCases);
+    }
+
+    @Override
+    public int getHeight() {
+        return height == null ? -1 : height.getAsInt();
+    }
+
+    @Override
+    public int getBlackHeight() {
+        return blackHeight == null ? -1 : blackHeight.getAsInt();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[] {searches, searchComparisons, inserts, insertComparisons,
+                deletes, deleteComparisons, rotations}) {
+            adder.reset();
+        }
+        for (LongAdder adder : insertFixUpCases) {
+            adder.reset();
+        }
+        for (LongAdder adder : deleteFixUpCases) {
+            adder.reset();
+        }
+    }
+
+    /**
+     * Registers the stats with the platform MBean server as rbtree:type=RBTreeStats,name=name.
+     * @param name the name to tell these stats apart from those of other trees
+     * @return the name the stats were registered under
+     * @throws IllegalStateException if the stats are already registered
+     * @throws JMException if the MBean server refuses them, as when the name is taken
+     */
+    public synchronized ObjectName register(String name) throws JMException {
+        if (this.name != null) {
+            throw new IllegalStateException("Already registered as " + this.name);
+        }
+        ObjectName objectName = new ObjectName("rbtree:type=RBTreeStats,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.name = objectName;
+        return objectName;
+    }
+
+    /**
+     * Removes the stats from the platform MBean server, if they were registered.
+     * @throws JMException if the MBean server fails to remove them
+     */
+    public synchronized void unregister() throws JMException {
+        if (name != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            name = null;
+        }
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static long[] sums(LongAdder[] adders) {
+        long[] sums = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) {
+            sums[i] = adders[i].sum();
+        }
+        return sums;
+    }
+
+    private static double mean(LongAdder total, LongAdder count) {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+}
@@ -0,0 +1,67 @@
+package rbtree;
+
+/**
+ * The JMX view of an RBTreeStats.
+ */
+public interface RBTreeStatsMBean {
+
+    /**
+     * @return the number of searches
+     */
+    long getSearches();
+
+    /**
+     * @return the mean number of keys compared per search
+     */
+    double getComparisonsPerSearch();
+
+    /**
+     * @return the number of inserts
+     */
+    long getInserts();
+
+    /**
+     * @return the mean number of keys compared per insert
+     */
+    double getComparisonsPerInsert();
+
+    /**
+     * @return the number of deletes
+     */
+    long getDeletes();
+
+    /**
+     * @return the mean number of keys compared per delete
+     */
+    double getComparisonsPerDelete();
+
+    /**
+     * @return the number of rotations
+     */
+    long getRotations();
+
+    /**
+     * @return the number of steps of each insert fix-up case, cases 1 to 3 at indexes 0 to 2
+     */
+    long[] getInsertFixUpCases();
+
+    /**
+     * @return the number of steps of each delete fix-up case, cases 1 to 4 at indexes 0 to 3
+     */
+    long[] getDeleteFixUpCases();
+
+    /**
+     * @return the height of the tree, or -1 if the stats were given no tree shape
+     */
+    int getHeight();
+
+    /**
+     * @return the black height of the tree, or -1 if the stats were given no tree shape
+     */
+    int getBlackHeight();
+
+    /**
+     * Sets every counter back to zero.
+     */
+    void reset();
+}
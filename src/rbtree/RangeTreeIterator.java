@@ -0,0 +1,58 @@
+package rbtree;
+
+/**
+ * An iterator that traverses the nodes of a tree in order, from a first node up
+ * to, but not including, a fence node. The bounds are found once, so streaming
+ * through the range costs no key comparisons.
+ * @param <K> the data type of the key for the nodes in the red black tree
+ * @param <V> the data type of the data stored in each node in the red black tree
+ */
+public class RangeTreeIterator<K, V> implements TreeIterator {
+
+    private final RBTree<K, V> tree;
+    private final RBNode<K, V> fence;
+    private RBNode<K, V> nextNode;
+
+    /**
+     * Constructor with three parameters
+     *
+     * @param tree the tree to traverse
+     * @param first the first node to return, or null for an empty range
+     * @param fence the first node past the range, or null if the range runs
+     * to the end of the tree
+     */
+    RangeTreeIterator(RBTree<K, V> tree, RBNode<K, V> first, RBNode<K, V> fence) {
+        this.tree = tree;
+        this.fence = fence;
+        this.nextNode = first == fence ? null : first;
+    }
+
+    /**
+     * Checks if there are any more nodes to traverse to
+     *
+     * @return Returns true if there are more nodes to traverse to. Returns
+     * false if there are no more nodes to traverse to
+     */
+    @Override
+    public boolean hasMore() {
+        return nextNode != null;
+    }
+
+    /**
+     * Retrieves the next node in the range
+     *
+     * @return The next node in the range, or if there are no more nodes to
+     * traverse to, it returns null
+     */
+    @Override
+    public RBNode<K, V> next() {
+        RBNode<K, V> returnNode = nextNode;
+        if (returnNode != null) {
+            nextNode = tree.successor(returnNode);
+            if (nextNode == fence) {
+                nextNode = null;
+            }
+        }
+        return returnNode;
+    }
+}
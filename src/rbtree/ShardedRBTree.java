@@ -0,0 +1,542 @@
+package rbtree;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A thread-safe red black tree split into shards, each a ConcurrentRBTree with
+ * a lock of its own, so that writers to different shards do not contend and
+ * every shard stays shallower than one tree holding everything.
+ * <p>
+ * Keys are routed either by range, shard i holding the keys from boundary i-1
+ * up to but not including boundary i, or by hash. Range routing keeps every
+ * shard a contiguous run of keys and lets the boundaries be moved, with
+ * moveBoundary or rebalance, to even out shards that grew unevenly; moving a
+ * boundary splits a run of nodes off one shard and joins it onto its
+ * neighbour in O(log n), holding the write locks of both, taken in shard
+ * order. Hash routing spreads any key distribution evenly but its boundaries
+ * cannot move.
+ * <p>
+ * A point operation that is routed to a shard just as a boundary moves away
+ * from its key notices, by the shard's bounds or its version, and is routed
+ * again. size adds up the shards one at a time, so it is exact only when no
+ * writer is running. Iterators merge the shards in key order through a heap of
+ * cursors, each reading its shard in batches with nextBatch; like nextBatch,
+ * they are weakly consistent, and start over from the last key returned when a
+ * boundary moves under them.
+ * @param <K> the data type of the key for the nodes in the red black tree
+ * @param <V> the data type of the data stored in each node in the red black tree
+ */
+public class ShardedRBTree<K extends Comparable<K>,V> {
+
+    /**
+     * The number of entries an iterator copies from a shard at a time.
+     */
+    static final int BATCH_SIZE = 256;
+
+    private final Shard<K,V>[] shards;
+    private final boolean hashed;
+    //counts boundary moves, so iterators can tell that their cursors went stale
+    private final AtomicLong moves = new AtomicLong();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private ShardedRBTree(int count, boolean hashed) {
+        this.shards = new Shard[count];
+        this.hashed = hashed;
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard<K,V>();
+        }
+    }
+
+    /**
+     * A tree with one shard more than there are boundaries, routing keys by range.
+     * @param <K> the data type of the keys
+     * @param <V> the data type of the values
+     * @param boundaries the smallest key of every shard but the first, in increasing order
+     * @return a new empty tree
+     * @throws IllegalArgumentException if the boundaries are not strictly increasing
+     */
+    @SafeVarargs
+    public static <K extends Comparable<K>,V> ShardedRBTree<K,V> byRange(K... boundaries) {
+        for (int i = 1; i < boundaries.length; i++) {
+            if (boundaries[i - 1].compareTo(boundaries[i]) >= 0) {
+                throw new IllegalArgumentException("Boundaries must be strictly increasing: "
+                        + boundaries[i - 1] + " >= " + boundaries[i]);
+            }
+        }
+        ShardedRBTree<K,V> tree = new ShardedRBTree<K,V>(boundaries.length + 1, false);
+        for (int i = 0; i < boundaries.length; i++) {
+            tree.shards[i].hi = boundaries[i];
+            tree.shards[i + 1].lo = boundaries[i];
+        }
+        return tree;
+    }
+
+    /**
+     * A tree of count shards, routing keys by their hash codes.
+     * @param <K> the data type of the keys
+     * @param <V> the data type of the values
+     * @param count the number of shards
+     * @return a new empty tree
+     * @throws IllegalArgumentException if count is not positive
+     */
+    public static <K extends Comparable<K>,V> ShardedRBTree<K,V> byHash(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive: " + count);
+        }
+        return new ShardedRBTree<K,V>(count, true);
+    }
+
+    /**
+     * The number of shards.
+     * @return the number of shards
+     */
+    public int shardCount() {
+        return shards.length;
+    }
+
+    /**
+     * The number of nodes in one shard.
+     * @param index the index of the shard
+     * @return the number of nodes in the shard
+     */
+    public int shardSize(int index) {
+        return shards[index].tree.size();
+    }
+
+    /**
+     * The value of the node with key key.
+     * @param key The key of the node
+     * @return The data of the node with key key, or null if there is none
+     */
+    public V get(K key) {
+        while (true) {
+            Shard<K,V> shard = this.route(key);
+            int version = shard.version;
+            if (shard.owns(key)) {
+                V value = shard.tree.get(key);
+                if (shard.version == version) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if the tree has a node with key key.
+     * @param key the key to look for
+     * @return true if a node has key key
+     */
+    public boolean containsKey(K key) {
+        while (true) {
+            Shard<K,V> shard = this.route(key);
+            int version = shard.version;
+            if (shard.owns(key)) {
+                boolean found = shard.tree.containsKey(key);
+                if (shard.version == version) {
+                    return found;
+                }
+            }
+        }
+    }
+
+    /**
+     * The number of nodes in the tree, adding up the shards one at a time.
+     * @return the number of nodes in the tree
+     */
+    public int size() {
+        int size = 0;
+        for (Shard<K,V> shard : shards) {
+            size += shard.tree.size();
+        }
+        return size;
+    }
+
+    /**
+     * Checks if the tree has no nodes.
+     * @return true if the tree is empty
+     */
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    /**
+     * Insert a node with a key of value key and data with the value value.
+     * @param key The key of the new node
+     * @param value The data the new node contains
+     * @return true if the node was inserted, false if a node with key key already exists
+     */
+    public boolean insertNode(K key, V value) {
+        while (true) {
+            Shard<K,V> shard = this.route(key);
+            StampedLock lock = shard.tree.lock();
+            long stamp = lock.writeLock();
+            try {
+                if (shard.owns(key)) {
+                    return shard.tree.tree().insertNode(key, value);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Associates value with key, replacing the value of an existing node with an identical key.
+     * @param key The key of the node
+     * @param value The data the node should contain
+     * @return The previous value of the node with key key, or null if no such node existed
+     */
+    public V put(K key, V value) {
+        while (true) {
+            Shard<K,V> shard = this.route(key);
+            StampedLock lock = shard.tree.lock();
+            long stamp = lock.writeLock();
+            try {
+                if (shard.owns(key)) {
+                    return shard.tree.tree().put(key, value);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Insert a node with key key and data value only if no node with an identical key exists.
+     * @param key The key of the new node
+     * @param value The data the new node contains
+     * @return The value of the existing node with key key, or null if the new node was inserted
+     */
+    public V putIfAbsent(K key, V value) {
+        while (true) {
+            Shard<K,V> shard = this.route(key);
+            StampedLock lock = shard.tree.lock();
+            long stamp = lock.writeLock();
+            try {
+                if (shard.owns(key)) {
+                    return shard.tree.tree().putIfAbsent(key, value);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Delete a node from the red black tree with the key key
+     * @param key the key that is contained in the node you wish to delete from in the tree
+     * @return true if a node was deleted, false if no node has key key
+     */
+    public boolean deleteNode(K key) {
+        while (true) {
+            Shard<K,V> shard = this.route(key);
+            StampedLock lock = shard.tree.lock();
+            long stamp = lock.writeLock();
+            try {
+                if (shard.owns(key)) {
+                    return shard.tree.tree().deleteNode(key);
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Removes every node from every shard, one shard at a time.
+     */
+    public void clear() {
+        for (Shard<K,V> shard : shards) {
+            shard.tree.clear();
+        }
+    }
+
+    /**
+     * Iterates over every entry in key order.
+     * @return a weakly consistent iterator of immutable copies of the entries
+     */
+    public Iterator<Map.Entry<K,V>> iterator() {
+        return new MergeIterator(null, null);
+    }
+
+    /**
+     * Iterates over the entries with keys from lo to hi, both inclusive, in key order.
+     * @param lo the smallest key to visit, or null for no lower bound
+     * @param hi the largest key to visit, or null for no upper bound
+     * @return a weakly consistent iterator of immutable copies of the entries
+     */
+    public Iterator<Map.Entry<K,V>> iterator(K lo, K hi) {
+        return new MergeIterator(lo, hi);
+    }
+
+    /**
+     * Moves the boundary between shard index-1 and shard index to key, moving the nodes between
+     * the old and the new boundary over to the shard that now owns them.
+     * @param index the index of the shard whose smallest key is moved, from 1 to shardCount()-1
+     * @param key the new boundary
+     * @throws IllegalStateException if the tree routes keys by hash
+     * @throws IllegalArgumentException if key does not lie strictly between the neighbouring boundaries
+     */
+    public void moveBoundary(int index, K key) {
+        this.checkRanged();
+        if (index <= 0 || index >= shards.length) {
+            throw new IndexOutOfBoundsException("No boundary " + index + " among " + (shards.length - 1));
+        }
+        Shard<K,V> left = shards[index - 1];
+        Shard<K,V> right = shards[index];
+        long leftStamp = left.tree.lock().writeLock();
+        long rightStamp = right.tree.lock().writeLock();
+        try {
+            if ((left.lo != null && key.compareTo(left.lo) <= 0) || (right.hi != null && key.compareTo(right.hi) >= 0)) {
+                throw new IllegalArgumentException("Boundary " + key + " must lie strictly between "
+                        + left.lo + " and " + right.hi);
+            }
+            this.move(left, right, key);
+        } finally {
+            right.tree.lock().unlockWrite(rightStamp);
+            left.tree.lock().unlockWrite(leftStamp);
+        }
+    }
+
+    /**
+     * Moves every boundary, from the first to the last, so that the shards to its left hold their
+     * share of the nodes as nearly as the nodes of the shard to its right allow. A single pass
+     * evens out shards that grew unevenly; a shard can only take nodes from its right-hand
+     * neighbour, so a pass may leave a surplus piled up at the right end for the next pass.
+     * @throws IllegalStateException if the tree routes keys by hash
+     */
+    public void rebalance() {
+        this.checkRanged();
+        long total = this.size();
+        long placed = 0;
+        for (int index = 1; index < shards.length; index++) {
+            Shard<K,V> left = shards[index - 1];
+            Shard<K,V> right = shards[index];
+            long leftStamp = left.tree.lock().writeLock();
+            long rightStamp = right.tree.lock().writeLock();
+            try {
+                RBTree<K,V> leftTree = left.tree.tree();
+                RBTree<K,V> rightTree = right.tree.tree();
+                long wanted = total * index / shards.length - placed;
+                if (leftTree.size() > wanted && wanted >= 1) {
+                    //hand the nodes past the share of left over to right
+                    this.move(left, right, leftTree.select((int) wanted).getKey());
+                } else if (leftTree.size() < wanted && rightTree.size() > 1) {
+                    //take the smallest nodes of right, leaving it at least one
+                    long taken = Math.min(wanted - leftTree.size(), rightTree.size() - 1);
+                    this.move(left, right, rightTree.select((int) taken).getKey());
+                }
+                placed += left.tree.tree().size();
+            } finally {
+                right.tree.lock().unlockWrite(rightStamp);
+                left.tree.lock().unlockWrite(leftStamp);
+            }
+        }
+    }
+
+    /**
+     * Moves the boundary between two neighbouring shards to key, holding the write locks of both.
+     */
+    private void move(Shard<K,V> left, Shard<K,V> right, K key) {
+        int compare = key.compareTo(right.lo);
+        if (compare < 0) {
+            RBTree<K,V> leftTree = left.tree.tree();
+            RBTree<K,V> moved = leftTree.split(key);
+            right.tree.setTree(RBTree.join(moved, right.tree.tree()));
+        } else if (compare > 0) {
+            RBTree<K,V> rightTree = right.tree.tree();
+            RBTree<K,V> kept = rightTree.split(key);
+            left.tree.setTree(RBTree.join(left.tree.tree(), rightTree));
+            right.tree.setTree(kept);
+        } else {
+            return;
+        }
+        left.hi = key;
+        right.lo = key;
+        left.version++;
+        right.version++;
+        moves.incrementAndGet();
+    }
+
+    private void checkRanged() {
+        if (hashed) {
+            throw new IllegalStateException("The shards of a hashed tree have no boundaries");
+        }
+    }
+
+    /**
+     * The shard key should be in, going by bounds that a moving boundary may have made stale; the
+     * caller checks with owns once it holds the shard.
+     */
+    private Shard<K,V> route(K key) {
+        if (hashed) {
+            int hash = key.hashCode();
+            hash ^= hash >>> 16;
+            return shards[(hash & 0x7fffffff) % shards.length];
+        }
+        //the last shard whose smallest key is at most key
+        int low = 1, high = shards.length - 1, found = 0;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            K lo = shards[middle].lo;
+            if (lo.compareTo(key) <= 0) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return shards[found];
+    }
+
+    /**
+     * One of the trees making up a sharded tree, with the range of keys it holds. The bounds and
+     * the version change only under the write lock of the shard's tree, and together: a reader
+     * that sees the same version before and after its read, and bounds holding its key, read the
+     * right shard.
+     */
+    private static final class Shard<K extends Comparable<K>,V> {
+        final ConcurrentRBTree<K,V> tree = new ConcurrentRBTree<K,V>();
+        //the smallest key of the shard, inclusive, or null for the first shard
+        volatile K lo;
+        //the smallest key of the next shard, exclusive, or null for the last shard
+        volatile K hi;
+        volatile int version;
+
+        boolean owns(K key) {
+            K low = lo, high = hi;
+            return (low == null || low.compareTo(key) <= 0) && (high == null || key.compareTo(high) < 0);
+        }
+    }
+
+    /**
+     * The entries of one shard past the last key returned, copied a batch at a time.
+     */
+    private static final class Cursor<K extends Comparable<K>,V> {
+        final ConcurrentRBTree<K,V> tree;
+        List<Map.Entry<K,V>> batch;
+        int position;
+
+        Cursor(ConcurrentRBTree<K,V> tree) {
+            this.tree = tree;
+        }
+
+        void fill(K from, boolean inclusive) {
+            batch = tree.nextBatch(from, inclusive, BATCH_SIZE);
+            position = 0;
+        }
+
+        Map.Entry<K,V> head() {
+            return position < batch.size() ? batch.get(position) : null;
+        }
+
+        //a short batch means the shard had nothing more when it was read
+        boolean drained() {
+            return batch.size() < BATCH_SIZE;
+        }
+    }
+
+    /**
+     * Merges the shards in key order through a heap of cursors ordered by their next key.
+     */
+    private final class MergeIterator implements Iterator<Map.Entry<K,V>> {
+        private final K lo, hi;
+        private final PriorityQueue<Cursor<K,V>> heap;
+        private K last;
+        private long movesSeen;
+        private Map.Entry<K,V> next;
+
+        MergeIterator(K lo, K hi) {
+            this.lo = lo;
+            this.hi = hi;
+            this.heap = new PriorityQueue<Cursor<K,V>>(shards.length, new Comparator<Cursor<K,V>>() {
+                @Override
+                public int compare(Cursor<K,V> a, Cursor<K,V> b) {
+                    return a.head().getKey().compareTo(b.head().getKey());
+                }
+            });
+            this.restart();
+            this.advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K,V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K,V> entry = next;
+            this.advance();
+            return entry;
+        }
+
+        /**
+         * Refills every cursor from just past the last key returned, until no boundary moves
+         * while they are being filled.
+         */
+        private void restart() {
+            List<Cursor<K,V>> cursors = new ArrayList<Cursor<K,V>>(shards.length);
+            long seen;
+            do {
+                seen = moves.get();
+                cursors.clear();
+                for (Shard<K,V> shard : shards) {
+                    Cursor<K,V> cursor = new Cursor<K,V>(shard.tree);
+                    if (last == null) {
+                        cursor.fill(lo, true);
+                    } else {
+                        cursor.fill(last, false);
+                    }
+                    cursors.add(cursor);
+                }
+            } while (moves.get() != seen);
+            movesSeen = seen;
+            heap.clear();
+            for (Cursor<K,V> cursor : cursors) {
+                if (cursor.head() != null) {
+                    heap.add(cursor);
+                }
+            }
+        }
+
+        private void advance() {
+            Cursor<K,V> cursor = heap.poll();
+            if (cursor == null) {
+                next = null;
+                return;
+            }
+            Map.Entry<K,V> entry = cursor.head();
+            if (hi != null && entry.getKey().compareTo(hi) > 0) {
+                heap.clear();
+                next = null;
+                return;
+            }
+            cursor.position++;
+            next = entry;
+            last = entry.getKey();
+            if (cursor.head() == null && !cursor.drained()) {
+                cursor.fill(last, false);
+                if (moves.get() != movesSeen) {
+                    //nodes moved between shards since the other cursors were filled
+                    this.restart();
+                    return;
+                }
+            }
+            if (cursor.head() != null) {
+                heap.add(cursor);
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package rbtree;
+
+/**
+ * An iterator that traverses a tree in order without a stack. It keeps only the
+ * next node and finds the one after it through the parent pointers, the same
+ * way RBTree.successor does, so an iterator costs O(1) memory however deep the
+ * tree is, and it can start from any node of the tree.
+ * <p>
+ * Each step costs O(1) amortized and O(log n) at worst.
+ */
+public class ThreadedInorderTreeIterator implements TreeIterator {
+
+    private Node nextNode;
+
+    /**
+     * Constructor with one parameter
+     *
+     * @param root the root node of the tree
+     */
+    public ThreadedInorderTreeIterator(Node root) {
+        nextNode = leftMost(root);
+    }
+
+    private ThreadedInorderTreeIterator() {
+    }
+
+    /**
+     * An iterator that resumes an in order traversal at a node.
+     *
+     * @param start the first node to return, or a nil node or null for an
+     * empty traversal
+     * @return the iterator
+     */
+    static ThreadedInorderTreeIterator startingAt(Node start) {
+        ThreadedInorderTreeIterator iterator = new ThreadedInorderTreeIterator();
+        iterator.nextNode = start == null || start.getKey() == null ? null : start;
+        return iterator;
+    }
+
+    /**
+     * Checks if there are any more nodes to traverse to
+     *
+     * @return Returns true if there are more nodes to traverse to. Returns
+     * false if there are no more nodes to traverse to
+     */
+    @Override
+    public boolean hasMore() {
+        return nextNode != null;
+    }
+
+    /**
+     * Retrieves the next node in the in order traversal
+     *
+     * @return The next node in the in order traversal, or if there are no more
+     * nodes to traverse to, it returns null
+     */
+    @Override
+    public Node next() {
+        Node returnNode = nextNode;
+        if (returnNode != null) {
+            nextNode = successor(returnNode);
+        }
+        return returnNode;
+    }
+
+    /**
+     * Find the node with the smallest key in the sub-tree rooted at root
+     *
+     * @param root the root of the sub-tree
+     * @return the left most node, or null if the sub-tree is empty
+     */
+    private static Node leftMost(Node root) {
+        if (root.getKey() == null) {
+            return null;
+        }
+        while (root.getLeftChild().getKey() != null) {
+            root = root.getLeftChild();
+        }
+        return root;
+    }
+
+    /**
+     * Find the node that follows node in order
+     *
+     * @param node the node to find the successor of
+     * @return the successor, or null if node is the last node
+     */
+    private static Node successor(Node node) {
+        Node right = node.getRightChild();
+        if (right.getKey() != null) {
+            return leftMost(right);
+        }
+        //climb until node is in the left sub-tree of parent
+        Node parent = node.getParent();
+        while (parent != null && node == parent.getRightChild()) {
+            node = parent;
+            parent = node.getParent();
+        }
+        return parent;
+    }
+}
@@ -0,0 +1,157 @@
+package rbtree;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.AbstractMap;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The snapshot format behind RBTree.writeTo and RBTree.readFrom. A snapshot
+ * is a header followed by the entries in key order:
+ * <pre>
+ *  int magic, byte version, byte flags, int count, then count times: key, value
+ * </pre>
+ * The keys and values are written by the codecs given. If the DEFLATE flag is
+ * set, everything after the header is compressed with a Deflater.
+ */
+final class TreeSnapshot {
+
+    private static final int MAGIC = 0x52425453; //"RBTS"
+    private static final int VERSION = 1;
+    private static final int DEFLATE = 1;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private TreeSnapshot() {
+    }
+
+    static <K,V> void write(RBTree<K,V> tree, OutputStream out,
+            Codec<K> keyCodec, Codec<V> valueCodec, boolean compress) throws IOException {
+        int expectedModCount = tree.modCount;
+        BufferedOutputStream buffered = new BufferedOutputStream(out, BUFFER_BYTES);
+        DataOutputStream header = new DataOutputStream(buffered);
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        header.writeByte(compress ? DEFLATE : 0);
+        header.writeInt(tree.size());
+        Deflater deflater = null;
+        DeflaterOutputStream deflated = null;
+        DataOutputStream data = header;
+        if (compress) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+            deflated = new DeflaterOutputStream(buffered, deflater, BUFFER_BYTES);
+            data = new DataOutputStream(new BufferedOutputStream(deflated, BUFFER_BYTES));
+        }
+        try {
+            K previousKey = null;
+            V previousValue = null;
+            for (RBNode<K,V> node = tree.firstNode(); node != null; node = tree.successor(node)) {
+                keyCodec.write(previousKey, node.getKey(), data);
+                valueCodec.write(previousValue, node.getValue(), data);
+                previousKey = node.getKey();
+                previousValue = node.getValue();
+            }
+            if (tree.modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            data.flush();
+            if (deflated != null) {
+                //end the compressed stream without closing out
+                deflated.finish();
+                buffered.flush();
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+
+    static <K extends Comparable<K>,V> RBTree<K,V> read(InputStream in,
+            Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_BYTES);
+        DataInputStream header = new DataInputStream(buffered);
+        if (header.readInt() != MAGIC) {
+            throw new IOException("Not a tree snapshot");
+        }
+        int version = header.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        int flags = header.readUnsignedByte();
+        int count = header.readInt();
+        if (count < 0) {
+            throw new IOException("Negative entry count " + count);
+        }
+        Inflater inflater = null;
+        DataInputStream data = header;
+        if ((flags & DEFLATE) != 0) {
+            inflater = new Inflater();
+            data = new DataInputStream(new BufferedInputStream(
+                    new InflaterInputStream(buffered, inflater, BUFFER_BYTES), BUFFER_BYTES));
+        }
+        try {
+            return RBTree.fromSorted(new EntryReader<K,V>(data, keyCodec, valueCodec, count), count);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt snapshot: " + e.getMessage(), e);
+        } finally {
+            if (inflater != null) {
+                inflater.end();
+            }
+        }
+    }
+
+    /**
+     * Decodes the entries one at a time as the builder asks for them, so they are never all held
+     * in memory at once besides in the tree being built.
+     */
+    private static final class EntryReader<K,V> implements Iterator<Map.Entry<K,V>> {
+        private final DataInputStream in;
+        private final Codec<K> keyCodec;
+        private final Codec<V> valueCodec;
+        private int remaining;
+        private K previousKey;
+        private V previousValue;
+
+        EntryReader(DataInputStream in, Codec<K> keyCodec, Codec<V> valueCodec, int count) {
+            this.in = in;
+            this.keyCodec = keyCodec;
+            this.valueCodec = valueCodec;
+            this.remaining = count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return remaining > 0;
+        }
+
+        @Override
+        public Map.Entry<K,V> next() {
+            if (remaining == 0) {
+                throw new NoSuchElementException();
+            }
+            try {
+                previousKey = keyCodec.read(previousKey, in);
+                previousValue = valueCodec.read(previousValue, in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            remaining--;
+            return new AbstractMap.SimpleImmutableEntry<K,V>(previousKey, previousValue);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package rbtree;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * A mutable handle on a sequence of PersistentRBTree versions, for publishing a
+ * tree to readers on other threads. The current version sits in an
+ * AtomicReference: readers take it with one volatile read and then have a
+ * consistent, never-changing tree to themselves for as long as they like, with
+ * no locks and no waiting, while writers build the next version off to the
+ * side by path copying and publish it with a compare-and-set.
+ * <p>
+ * Writers that race retry their update against the newer version, so the
+ * function passed to update may run more than once and must have no side
+ * effects.
+ * @param <K> the data type of the key for the nodes in the red black tree
+ * @param <V> the data type of the data stored in each node in the red black tree
+ */
+public class VersionedRBTree<K extends Comparable<K>,V> {
+
+    private final AtomicReference<PersistentRBTree<K,V>> current;
+
+    /**
+     * A new handle on the empty tree
+     */
+    public VersionedRBTree() {
+        this(PersistentRBTree.<K,V>empty());
+    }
+
+    /**
+     * A new handle on an existing version
+     * @param initial the first version
+     */
+    public VersionedRBTree(PersistentRBTree<K,V> initial) {
+        current = new AtomicReference<PersistentRBTree<K,V>>(initial);
+    }
+
+    /**
+     * The current version, a point-in-time snapshot that later updates do not change.
+     * @return the current version of the tree
+     */
+    public PersistentRBTree<K,V> current() {
+        return current.get();
+    }
+
+    /**
+     * The value of the node with key key in the current version.
+     * @param key The key of the node
+     * @return The data of the node with key key, or null if there is none
+     */
+    public V get(K key) {
+        return current.get().get(key);
+    }
+
+    /**
+     * Checks if the current version has a node with key key.
+     * @param key the key to look for
+     * @return true if a node has key key
+     */
+    public boolean containsKey(K key) {
+        return current.get().containsKey(key);
+    }
+
+    /**
+     * The number of nodes in the current version.
+     * @return the number of nodes in the tree
+     */
+    public int size() {
+        return current.get().size();
+    }
+
+    /**
+     * Publishes a version with key mapped to value.
+     * @param key The key of the node
+     * @param value The data the node should contain
+     * @return The value of the node with key key in the version replaced, or null if there was none
+     */
+    public V put(K key, V value) {
+        while (true) {
+            PersistentRBTree<K,V> version = current.get();
+            if (current.compareAndSet(version, version.put(key, value))) {
+                return version.get(key);
+            }
+        }
+    }
+
+    /**
+     * Publishes a version without key.
+     * @param key the key to remove
+     * @return true if the version replaced had a node with key key
+     */
+    public boolean remove(K key) {
+        while (true) {
+            PersistentRBTree<K,V> version = current.get();
+            PersistentRBTree<K,V> next = version.remove(key);
+            if (next == version) {
+                return false;
+            }
+            if (current.compareAndSet(version, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Publishes the version computed from the current one by update, retrying if another writer
+     * publishes first.
+     * @param update computes the next version; may run more than once
+     * @return the version published
+     */
+    public PersistentRBTree<K,V> update(UnaryOperator<PersistentRBTree<K,V>> update) {
+        while (true) {
+            PersistentRBTree<K,V> version = current.get();
+            PersistentRBTree<K,V> next = update.apply(version);
+            if (next == version || current.compareAndSet(version, next)) {
+                return next;
+            }
+        }
+    }
+}
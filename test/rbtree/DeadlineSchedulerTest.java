@@ -0,0 +1,190 @@
+package rbtree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that DeadlineScheduler runs and cancels its tasks, wakes for an
+ * earlier deadline, survives a rejecting executor, and keeps far-off deadlines
+ * in order.
+ */
+public class DeadlineSchedulerTest {
+
+    @Test(timeout = 10000)
+    public void runsDueTasksAndSkipsCancelledOnes() throws InterruptedException {
+        DeadlineScheduler scheduler = DeadlineScheduler.withVirtualThreads();
+        try {
+            final List<Integer> fired = Collections.synchronizedList(new ArrayList<Integer>());
+            final CountDownLatch done = new CountDownLatch(200);
+            List<DeadlineScheduler.Timer> timers = new ArrayList<DeadlineScheduler.Timer>();
+            for (int i = 0; i < 300; i++) {
+                final int id = i;
+                timers.add(scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        fired.add(id);
+                        done.countDown();
+                    }
+                }, 20 + i % 50, TimeUnit.MILLISECONDS));
+            }
+            for (int i = 200; i < 300; i++) {
+                assertTrue(timers.get(i).cancel());
+            }
+            assertFalse("a timer is cancelled once", timers.get(250).cancel());
+            done.await();
+            Thread.sleep(100);
+            assertEquals(200, fired.size());
+            assertEquals(0, scheduler.size());
+            assertFalse("a timer that fell due cannot be cancelled", timers.get(0).cancel());
+        } finally {
+            scheduler.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void anEarlierDeadlineWakesTheDispatcher() throws InterruptedException {
+        DeadlineScheduler scheduler = DeadlineScheduler.withVirtualThreads();
+        try {
+            final long start = System.nanoTime();
+            final AtomicLong elapsed = new AtomicLong();
+            final CountDownLatch done = new CountDownLatch(1);
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }, 10, TimeUnit.SECONDS);
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    elapsed.set(System.nanoTime() - start);
+                    done.countDown();
+                }
+            }, 10, TimeUnit.MILLISECONDS);
+            done.await();
+            assertTrue("ran after " + elapsed.get() + "ns", elapsed.get() < TimeUnit.SECONDS.toNanos(5));
+        } finally {
+            scheduler.close();
+        }
+        assertEquals("close drops the pending timers", 0, scheduler.size());
+        try {
+            scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }, 1, TimeUnit.SECONDS);
+            fail("schedule after close should fail");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    /**
+     * An executor that rejects one task must cost only that task, not stop the dispatcher.
+     */
+    @Test(timeout = 10000)
+    public void keepsDispatchingAfterARejectedTask() throws InterruptedException {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch ran = new CountDownLatch(10);
+        Executor rejectsFirst = new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                if (calls.incrementAndGet() == 1) {
+                    throw new RejectedExecutionException("Executor is saturated");
+                }
+                task.run();
+            }
+        };
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        };
+        DeadlineScheduler scheduler = DeadlineScheduler.start(rejectsFirst);
+        Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+        final AtomicInteger reported = new AtomicInteger();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread thread, Throwable e) {
+                reported.incrementAndGet();
+            }
+        });
+        try {
+            for (int i = 0; i < 6; i++) {
+                scheduler.schedule(task, 10 + i, TimeUnit.MILLISECONDS);
+            }
+            Thread.sleep(200);
+            for (int i = 0; i < 5; i++) {
+                scheduler.schedule(task, 5, TimeUnit.MILLISECONDS);
+            }
+            ran.await();
+            assertEquals(11, calls.get());
+            assertEquals("the rejection is reported", 1, reported.get());
+            assertEquals(0, scheduler.size());
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(handler);
+            scheduler.close();
+        }
+    }
+
+    /**
+     * Deadlines as far off as a delay allows must still sort after a timer that is overdue,
+     * which compareTo's wrapping difference gets wrong unless schedule clamps them.
+     */
+    @Test(timeout = 10000)
+    public void farOffDeadlinesSortAfterOverdueOnes() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger ran = new AtomicInteger();
+        //blocks the dispatcher on the first task, so the timers due after it stay pending
+        DeadlineScheduler scheduler = DeadlineScheduler.start(new Executor() {
+            @Override
+            public void execute(Runnable task) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                task.run();
+            }
+        });
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                ran.incrementAndGet();
+            }
+        };
+        try {
+            scheduler.schedule(task, 0, TimeUnit.NANOSECONDS);
+            Thread.sleep(50);
+            DeadlineScheduler.Timer overdue = scheduler.schedule(task, 0, TimeUnit.NANOSECONDS);
+            Thread.sleep(50);
+            DeadlineScheduler.Timer far = scheduler.schedule(task, Long.MAX_VALUE, TimeUnit.DAYS);
+            DeadlineScheduler.Timer farther = scheduler.schedule(task, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            assertTrue(overdue.compareTo(far) < 0);
+            assertTrue(far.compareTo(overdue) > 0);
+            assertTrue(overdue.compareTo(farther) < 0);
+            assertTrue(far.compareTo(farther) < 0);
+            assertTrue(far.cancel());
+            assertTrue(farther.cancel());
+            release.countDown();
+            while (ran.get() < 2) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, scheduler.size());
+        } finally {
+            release.countDown();
+            scheduler.close();
+        }
+    }
+}
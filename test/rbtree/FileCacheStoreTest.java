@@ -0,0 +1,97 @@
+package rbtree;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.TreeMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks FileCacheStore behind an RBTreeCache against a TreeMap, and that the
+ * store reopens with the same contents after a torn write.
+ */
+public class FileCacheStoreTest {
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("rbtree", ".store");
+        file.delete();
+    }
+
+    @After
+    public void deleteFile() {
+        file.delete();
+    }
+
+    @Test
+    public void reopensWithTheLastValueOfEveryKey() throws IOException {
+        TreeMap<Integer,String> expected = new TreeMap<Integer,String>();
+        FileCacheStore<Integer,String> store = FileCacheStore.open(file, Codecs.INTEGER, Codecs.STRING, null);
+        RBTreeCache<Integer,String> cache = new RBTreeCache<Integer,String>(4, RBTreeCache.Eviction.LRU, store);
+        Random random = new Random(3);
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(500);
+            if (random.nextInt(5) == 0) {
+                cache.remove(key);
+                expected.remove(key);
+            } else {
+                cache.put(key, "v" + i);
+                expected.put(key, "v" + i);
+            }
+            if (i % 997 == 0) {
+                cache.flush();
+            }
+            int probe = random.nextInt(500);
+            assertEquals("key " + probe, expected.get(probe), cache.get(probe));
+        }
+        cache.close();
+        store.close();
+
+        store = FileCacheStore.open(file, Codecs.INTEGER, Codecs.STRING, null);
+        try {
+            assertEquals(expected.size(), store.size());
+            for (int key = 0; key < 500; key++) {
+                assertEquals("key " + key, expected.get(key), store.load(key));
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void cutsOffATornRecord() throws IOException {
+        FileCacheStore<Integer,String> store = FileCacheStore.open(file, Codecs.INTEGER, Codecs.STRING, null);
+        RBTreeCache<Integer,String> cache = new RBTreeCache<Integer,String>(4, RBTreeCache.Eviction.LRU, store);
+        for (int key = 0; key < 10; key++) {
+            cache.put(key, "v" + key);
+        }
+        cache.close();
+        store.close();
+        RandomAccessFile torn = new RandomAccessFile(file, "rw");
+        try {
+            torn.setLength(torn.length() - 3);
+        } finally {
+            torn.close();
+        }
+
+        store = FileCacheStore.open(file, Codecs.INTEGER, Codecs.STRING, null);
+        try {
+            assertEquals("the last record is lost", 9, store.size());
+            for (int key = 0; key < 9; key++) {
+                assertEquals("v" + key, store.load(key));
+            }
+            cache = new RBTreeCache<Integer,String>(4, RBTreeCache.Eviction.LRU, store);
+            cache.put(9, "again");
+            cache.flush();
+            assertEquals("records follow the last whole one", "again", store.load(9));
+        } finally {
+            store.close();
+        }
+    }
+}
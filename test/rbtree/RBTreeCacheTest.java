@@ -0,0 +1,272 @@
+package rbtree;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks RBTreeCache against a store kept in a TreeMap: the eviction order of
+ * both policies, write-behind with its retry after a failed flush, range
+ * invalidation, expiry, and concurrent writers.
+ */
+public class RBTreeCacheTest {
+
+    /**
+     * A store in memory that counts its loads, keeps every batch written and can be told to fail.
+     */
+    private static final class MemoryStore implements CacheStore<Integer,Integer> {
+        final TreeMap<Integer,Integer> data = new TreeMap<Integer,Integer>();
+        final List<List<Map.Entry<Integer,Integer>>> batches = new ArrayList<List<Map.Entry<Integer,Integer>>>();
+        int loads;
+        boolean failing;
+
+        MemoryStore(int keys) {
+            for (int i = 0; i < keys; i++) {
+                data.put(i, i * 10);
+            }
+        }
+
+        @Override
+        public synchronized Integer load(Integer key) {
+            loads++;
+            return data.get(key);
+        }
+
+        @Override
+        public synchronized void writeAll(List<Map.Entry<Integer,Integer>> entries) throws IOException {
+            if (failing) {
+                throw new IOException("Store is failing");
+            }
+            Integer previous = null;
+            for (Map.Entry<Integer,Integer> entry : entries) {
+                if (previous != null && previous >= entry.getKey()) {
+                    fail("Batch is not in increasing key order: " + previous + ", " + entry.getKey());
+                }
+                previous = entry.getKey();
+                if (entry.getValue() == null) {
+                    data.remove(entry.getKey());
+                } else {
+                    data.put(entry.getKey(), entry.getValue());
+                }
+            }
+            batches.add(entries);
+        }
+
+        synchronized int loads() {
+            return loads;
+        }
+    }
+
+    @Test
+    public void lruEvictsTheLeastRecentlyUsedKey() throws IOException {
+        MemoryStore store = new MemoryStore(100);
+        RBTreeCache<Integer,Integer> cache = new RBTreeCache<Integer,Integer>(3, RBTreeCache.Eviction.LRU, store);
+        assertEquals(Integer.valueOf(10), cache.get(1));
+        assertEquals(Integer.valueOf(20), cache.get(2));
+        assertEquals(Integer.valueOf(30), cache.get(3));
+        cache.get(1);
+        cache.get(4);
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.evictionCount());
+        int loads = store.loads();
+        cache.get(1);
+        cache.get(3);
+        cache.get(4);
+        assertEquals("1, 3 and 4 are cached", loads, store.loads());
+        cache.get(2);
+        assertEquals("2 was evicted", loads + 1, store.loads());
+        assertNull(cache.get(1000));
+    }
+
+    @Test
+    public void lfuEvictsTheLeastFrequentlyUsedKey() throws IOException {
+        MemoryStore store = new MemoryStore(100);
+        RBTreeCache<Integer,Integer> cache = new RBTreeCache<Integer,Integer>(3, RBTreeCache.Eviction.LFU, store);
+        cache.get(1);
+        cache.get(1);
+        cache.get(1);
+        cache.get(2);
+        cache.get(2);
+        cache.get(3);
+        cache.get(4);
+        int loads = store.loads();
+        cache.get(1);
+        cache.get(2);
+        cache.get(4);
+        assertEquals("1, 2 and 4 are cached", loads, store.loads());
+        cache.get(3);
+        assertEquals("3 was evicted", loads + 1, store.loads());
+    }
+
+    /**
+     * A new key must not be evicted as it is admitted, however often the keys already cached
+     * have been used.
+     */
+    @Test
+    public void lfuAdmitsNewKeys() throws IOException {
+        MemoryStore store = new MemoryStore(100);
+        RBTreeCache<Integer,Integer> cache = new RBTreeCache<Integer,Integer>(3, RBTreeCache.Eviction.LFU, store);
+        for (int key = 0; key < 3; key++) {
+            for (int i = 0; i < 3; i++) {
+                cache.get(key);
+            }
+        }
+        long hits = cache.hitCount();
+        long evictions = cache.evictionCount();
+        for (int key = 10; key < 15; key++) {
+            for (int i = 0; i < 5; i++) {
+                cache.get(key);
+            }
+        }
+        assertEquals("every key hits after its first load", 20, cache.hitCount() - hits);
+        assertEquals(5, cache.evictionCount() - evictions);
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void writesAreHeldUntilFlushedInKeyOrder() throws IOException {
+        MemoryStore store = new MemoryStore(100);
+        RBTreeCache<Integer,Integer> cache = new RBTreeCache<Integer,Integer>(3, RBTreeCache.Eviction.LRU, store);
+        cache.put(50, 5000);
+        cache.put(7, 70);
+        cache.put(60, 6000);
+        cache.put(8, 80);
+        cache.remove(9);
+        assertEquals(5, cache.dirtySize());
+        assertEquals("a dirty entry is read after its eviction", Integer.valueOf(5000), cache.get(50));
+        assertNull("a pending removal hides the stored value", cache.get(9));
+        cache.flush();
+        assertEquals(5, store.batches.get(store.batches.size() - 1).size());
+        assertEquals(Integer.valueOf(5000), store.data.get(50));
+        assertFalse(store.data.containsKey(9));
+        assertEquals(0, cache.dirtySize());
+    }
+
+    @Test
+    public void aFailedFlushIsRetriedWithNewerValues() throws IOException {
+        MemoryStore store = new MemoryStore(100);
+        RBTreeCache<Integer,Integer> cache = new RBTreeCache<Integer,Integer>(3, RBTreeCache.Eviction.LRU, store);
+        cache.put(70, 1);
+        store.failing = true;
+        try {
+            cache.flush();
+            fail("flush should fail");
+        } catch (IOException expected) {
+        }
+        cache.put(70, 2);
+        cache.put(71, 3);
+        store.failing = false;
+        cache.flush();
+        assertEquals(Integer.valueOf(2), store.data.get(70));
+        assertEquals(Integer.valueOf(3), store.data.get(71));
+        assertEquals(0, cache.dirtySize());
+    }
+
+    @Test
+    public void invalidateRangeDropsOnlyTheRange() throws IOException {
+        MemoryStore store = new MemoryStore(200);
+        RBTreeCache<Integer,Integer> cache = new RBTreeCache<Integer,Integer>(1000, RBTreeCache.Eviction.LRU, store);
+        for (int i = 0; i < 100; i++) {
+            cache.get(i);
+        }
+        assertEquals(10, cache.invalidateRange(10, 20));
+        assertEquals(90, cache.size());
+        int loads = store.loads();
+        cache.get(9);
+        cache.get(20);
+        assertEquals("keys outside the range are kept", loads, store.loads());
+        cache.get(10);
+        assertEquals("keys inside the range are dropped", loads + 1, store.loads());
+    }
+
+    @Test(timeout = 10000)
+    public void entriesExpireAfterWrite() throws Exception {
+        MemoryStore store = new MemoryStore(100);
+        RBTreeCache<Integer,Integer> cache = new RBTreeCache<Integer,Integer>(100, RBTreeCache.Eviction.LRU, store);
+        cache.setExpireAfterWrite(50, TimeUnit.MILLISECONDS);
+        cache.get(1);
+        cache.get(2);
+        assertEquals(2, cache.size());
+        Thread.sleep(100);
+        assertEquals(0, cache.size());
+        int loads = store.loads();
+        cache.get(1);
+        assertEquals(loads + 1, store.loads());
+    }
+
+    @Test(timeout = 10000)
+    public void writeBehindFlushesFullBatchesAndClose() throws Exception {
+        MemoryStore store = new MemoryStore(0);
+        RBTreeCache<Integer,Integer> cache = new RBTreeCache<Integer,Integer>(10, RBTreeCache.Eviction.LRU, store);
+        cache.startWriteBehind(10, TimeUnit.SECONDS, 100);
+        for (int i = 0; i < 100; i++) {
+            cache.put(1000 - i, i);
+        }
+        while (true) {
+            synchronized (store) {
+                if (!store.batches.isEmpty()) {
+                    break;
+                }
+            }
+            Thread.sleep(10);
+        }
+        synchronized (store) {
+            assertEquals("a full batch is flushed before the delay", 1, store.batches.size());
+            assertEquals(Integer.valueOf(99), store.data.get(901));
+        }
+        cache.put(5, 55);
+        cache.close();
+        assertEquals("close flushes", Integer.valueOf(55), store.data.get(5));
+        try {
+            cache.get(1);
+            fail("get after close should fail");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void concurrentWritersReachTheStore() throws Exception {
+        MemoryStore store = new MemoryStore(0);
+        final RBTreeCache<Integer,Integer> cache = new RBTreeCache<Integer,Integer>(50, RBTreeCache.Eviction.LFU, store);
+        cache.startWriteBehind(1, TimeUnit.MILLISECONDS, 20);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Void>> writers = new ArrayList<Future<Void>>();
+        for (int t = 0; t < 4; t++) {
+            final int base = t * 1000;
+            final Random random = new Random(t);
+            writers.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    for (int i = 0; i < 20000; i++) {
+                        int key = base + random.nextInt(200);
+                        cache.put(key, i);
+                        assertEquals("a writer reads its own write", Integer.valueOf(i), cache.get(key));
+                        if (i % 5000 == 0) {
+                            cache.invalidateRange(base, base + 100);
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> writer : writers) {
+            writer.get();
+        }
+        executor.shutdown();
+        cache.close();
+        assertEquals(800, store.data.size());
+    }
+}
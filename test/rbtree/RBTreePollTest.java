@@ -0,0 +1,85 @@
+package rbtree;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks pollFirst, pollFirstN and removeHeadUntil against a TreeMap, with
+ * RBTree.verify after every call, with and without a node pool.
+ */
+public class RBTreePollTest {
+
+    @Test
+    public void matchesTreeMap() {
+        Random random = new Random(5);
+        for (int pool : new int[] {0, 64}) {
+            for (int round = 0; round < 300; round++) {
+                RBTree<Integer,Integer> tree = new RBTree<Integer,Integer>();
+                tree.setNodePoolCapacity(pool);
+                TreeMap<Integer,Integer> expected = new TreeMap<Integer,Integer>();
+                int size = random.nextInt(2000);
+                for (int i = 0; i < size; i++) {
+                    int key = random.nextInt(5000);
+                    tree.put(key, -key);
+                    expected.put(key, -key);
+                }
+                switch (random.nextInt(3)) {
+                    case 0:
+                        assertEquals(expected.pollFirstEntry(), tree.pollFirst());
+                        break;
+                    case 1:
+                        int count = random.nextInt(size + 5);
+                        List<Map.Entry<Integer,Integer>> polled = new ArrayList<Map.Entry<Integer,Integer>>();
+                        for (int i = 0; i < count && !expected.isEmpty(); i++) {
+                            polled.add(expected.pollFirstEntry());
+                        }
+                        assertEquals(polled, tree.pollFirstN(count));
+                        break;
+                    default:
+                        int bound = random.nextInt(5200) - 100;
+                        RBTree<Integer,Integer> head = tree.removeHeadUntil(bound);
+                        head.verify();
+                        SortedMap<Integer,Integer> expectedHead = expected.headMap(bound, true);
+                        assertEquals(expectedHead.size(), head.size());
+                        ThreadedInorderTreeIterator nodes = head.threadedInorderTraverse();
+                        for (Iterator<Integer> keys = expectedHead.keySet().iterator(); keys.hasNext();) {
+                            assertEquals(keys.next(), ((RBNode<?,?>) nodes.next()).getKey());
+                        }
+                        expectedHead.clear();
+                        break;
+                }
+                tree.verify();
+                assertEquals(expected.size(), tree.size());
+
+                //the tree must stay usable, drawing on the nodes the calls above pooled
+                for (int i = 0; i < 200; i++) {
+                    int key = random.nextInt(5000);
+                    if (random.nextBoolean()) {
+                        tree.put(key, key);
+                        expected.put(key, key);
+                    } else {
+                        tree.deleteNode(key);
+                        expected.remove(key);
+                    }
+                }
+                tree.verify();
+                while (!expected.isEmpty()) {
+                    assertEquals(expected.pollFirstEntry(), tree.pollFirst());
+                }
+                tree.verify();
+                assertNull(tree.pollFirst());
+                assertTrue(tree.pollFirstN(3).isEmpty());
+                assertEquals(0, tree.removeHeadUntil(10).size());
+            }
+        }
+    }
+}